@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.entities;
+
+import com.google.gson.Gson;
+import com.google.gson.annotations.SerializedName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringReader;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static com.kolich.common.entities.KolichCommonEntity.getDefaultGsonBuilder;
+import static com.kolich.havalo.client.entities.HavaloTypeAdapters.registerTypeAdapters;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GsonParsingBenchmark {
+	
+	@Param({"1000", "100000"})
+	private int objects_;
+	
+	/**
+	 * Gson's default, reflection based, adapters.
+	 */
+	private Gson gson_;
+	
+	/**
+	 * The hand-written streaming adapters the client uses.
+	 */
+	private Gson streamingGson_;
+	
+	private String objectList_;
+	private String fileObject_;
+	
+	@Setup
+	public void setup() {
+		gson_ = getDefaultGsonBuilder().create();
+		streamingGson_ = registerTypeAdapters(
+			getDefaultGsonBuilder()).create();
+		objectList_ = getObjectListJson(objects_);
+		fileObject_ = getFileObjectJson(0);
+	}
+	
+	/**
+	 * The listing as it used to be, a tree of reflectively parsed objects.
+	 */
+	@Benchmark
+	public TreeSetObjectList parseObjectList() {
+		return gson_.fromJson(new StringReader(objectList_),
+			TreeSetObjectList.class);
+	}
+	
+	@Benchmark
+	public FileObject parseFileObject() {
+		return gson_.fromJson(new StringReader(fileObject_), FileObject.class);
+	}
+	
+	@Benchmark
+	public ObjectList parseObjectListStreaming() {
+		return streamingGson_.fromJson(new StringReader(objectList_),
+			ObjectList.class);
+	}
+	
+	@Benchmark
+	public FileObject parseFileObjectStreaming() {
+		return streamingGson_.fromJson(new StringReader(fileObject_),
+			FileObject.class);
+	}
+	
+	/**
+	 * An object listing backed by a {@link TreeSet}, the way
+	 * {@link ObjectList} was before it was packed into arrays.
+	 */
+	public static final class TreeSetObjectList {
+		@SerializedName("objects")
+		public Set<FileObject> objects_ = new TreeSet<>();
+	}
+	
+	/**
+	 * Returns a listing of the given number of objects, shaped like a
+	 * real Havalo listing response.
+	 */
+	public static final String getObjectListJson(final int objects) {
+		final StringBuilder sb = new StringBuilder("{\"objects\":[");
+		for(int i = 0; i < objects; i++) {
+			sb.append((i > 0) ? "," : "").append(getFileObjectJson(i));
+		}
+		return sb.append("]}").toString();
+	}
+	
+	private static final String getFileObjectJson(final int i) {
+		return String.format("{\"name\":\"accounts%%2F%08d%%2Fprofile.json\"," +
+			"\"headers\":{\"Content-Type\":[\"application/json\"]," +
+			"\"Content-Length\":[\"%d\"],\"ETag\":[\"%040x\"]," +
+			"\"Last-Modified\":[\"Sun, 19 Oct 2014 04:20:00 GMT\"]}}",
+			i, 1024 + i, (long)i * 2654435761L);
+	}
+	
+}
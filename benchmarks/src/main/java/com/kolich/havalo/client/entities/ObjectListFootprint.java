@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.entities;
+
+import com.google.gson.Gson;
+import com.kolich.havalo.client.entities.GsonParsingBenchmark.TreeSetObjectList;
+
+import java.io.StringReader;
+
+import static com.kolich.common.entities.KolichCommonEntity.getDefaultGsonBuilder;
+import static com.kolich.havalo.client.entities.GsonParsingBenchmark.getObjectListJson;
+import static com.kolich.havalo.client.entities.HavaloTypeAdapters.registerTypeAdapters;
+
+/**
+ * Compares the retained heap of a large listing held in a compact
+ * {@link ObjectList} against the same listing held as a {@link java.util.TreeSet}
+ * of {@link FileObject}'s.  JMH doesn't measure retained memory, so this is
+ * a plain main; run it with a fixed heap for stable numbers:
+ * <code>
+ * java -Xms2g -Xmx2g -cp benchmarks.jar \
+ *    com.kolich.havalo.client.entities.ObjectListFootprint 1000000
+ * </code>
+ */
+public final class ObjectListFootprint {
+	
+	public static void main(final String[] args) throws Exception {
+		final int objects = (args.length > 0) ?
+			Integer.parseInt(args[0]) : 1000000;
+		final String json = getObjectListJson(objects);
+		final Gson gson = getDefaultGsonBuilder().create();
+		final Gson streaming = registerTypeAdapters(
+			getDefaultGsonBuilder()).create();
+		long before = getUsedHeap();
+		final TreeSetObjectList tree = gson.fromJson(new StringReader(json),
+			TreeSetObjectList.class);
+		final long treeBytes = getUsedHeap() - before;
+		before = getUsedHeap();
+		final ObjectList compact = streaming.fromJson(new StringReader(json),
+			ObjectList.class);
+		final long compactBytes = getUsedHeap() - before;
+		System.out.println(String.format("%-10s %12s %14s", "listing",
+			"bytes", "bytes/object"));
+		System.out.println(String.format("%-10s %12d %14.1f", "TreeSet",
+			treeBytes, (double)treeBytes / tree.objects_.size()));
+		System.out.println(String.format("%-10s %12d %14.1f", "compact",
+			compactBytes, (double)compactBytes / compact.size()));
+	}
+	
+	private static final long getUsedHeap() throws InterruptedException {
+		final Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		// A few rounds, until the collector has settled down.
+		for(int i = 0; i < 5; i++) {
+			System.gc();
+			Thread.sleep(100L);
+			used = Math.min(used,
+				runtime.totalMemory() - runtime.freeMemory());
+		}
+		return used;
+	}
+	
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.service;
+
+import com.kolich.common.functional.either.Either;
+import com.kolich.havalo.client.HavaloClientException;
+import com.kolich.havalo.client.embedded.HavaloEmbeddedServer;
+import com.kolich.havalo.client.entities.FileObject;
+import com.kolich.havalo.client.entities.ObjectList;
+import com.kolich.http.common.response.HttpFailure;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.http.Header;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * Drives a real {@link HavaloClient} against a {@link HavaloEmbeddedServer} on
+ * loopback, measuring the full client-side cost of each call (signing,
+ * HTTP, entity conversion) without any network or storage latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+	
+	private static final int LISTING_SIZE = 1000;
+	
+	@Param({"1024", "1048576"})
+	private int objectSize_;
+	
+	private HavaloEmbeddedServer server_;
+	private HavaloClient client_;
+	private byte[] object_;
+	
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		server_ = new HavaloEmbeddedServer.Builder().build().start();
+		client_ = new HavaloClient(server_.getAdminCredentials().getKey(),
+			server_.getAdminCredentials().getSecret(), server_.getApiUrl());
+		object_ = new byte[objectSize_];
+		new Random(0L).nextBytes(object_);
+		for(int i = 0; i < LISTING_SIZE; i++) {
+			check(client_.putObject(object_, "listing", Integer.toString(i)));
+		}
+	}
+	
+	@TearDown(Level.Trial)
+	public void teardown() {
+		server_.close();
+	}
+	
+	@Benchmark
+	public FileObject put() {
+		return check(client_.putObject(object_, "benchmark", "object"));
+	}
+	
+	@Benchmark
+	public List<Header> get() {
+		return check(client_.getObject(NullOutputStream.NULL_OUTPUT_STREAM,
+			"listing", "0"));
+	}
+	
+	@Benchmark
+	public ObjectList list() {
+		return check(client_.listObjects("listing"));
+	}
+	
+	private static final <S> S check(final Either<HttpFailure,S> result) {
+		if(!result.success()) {
+			throw new HavaloClientException("Benchmark request failed: " +
+				result.left().getStatusCode(), result.left().getCause());
+		}
+		return result.right();
+	}
+	
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.service;
+
+import org.apache.http.client.methods.HttpGet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.util.UUID;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * Lives in the service package to reach the package private path
+ * building internals of {@link HavaloClient}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathBenchmark {
+	
+	private static final String[] PATH = new String[]{"accounts",
+		"1b7ef1f5-9a42-4c3b-8d31-6d5ab4a6e2c1", "profile pictures",
+		"silly/path+dog.jpg"};
+	
+	private HavaloClient client_;
+	private String action_;
+	private HavaloKey key_;
+	private HavaloKeyCache cache_;
+	
+	@Setup
+	public void setup() {
+		client_ = new HavaloClient(UUID.randomUUID(), "secret",
+			"http://localhost:8080/havalo/api");
+		action_ = "object";
+		key_ = HavaloKey.of(PATH);
+		cache_ = new HavaloKeyCache(1024);
+	}
+	
+	@Benchmark
+	public String varargsToPrefixString() {
+		return HavaloAbstractService.varargsToPrefixString(PATH);
+	}
+	
+	@Benchmark
+	public String buildPath() {
+		return HavaloClient.buildPath(action_, PATH);
+	}
+	
+	@Benchmark
+	public URI getFinalEndpoint() {
+		return client_.getFinalEndpoint(new HttpGet(
+			HavaloClient.buildPath(action_, PATH)));
+	}
+	
+	/**
+	 * The full cost of a varargs path per request: building the key, and
+	 * the request URI from it.
+	 */
+	@Benchmark
+	public URI getFinalEndpointFromVarargs() {
+		return client_.getFinalEndpoint(new HttpGet(
+			client_.getUrl(action_, HavaloKey.of(PATH))));
+	}
+	
+	/**
+	 * The cost per request when reusing a key.
+	 */
+	@Benchmark
+	public URI getFinalEndpointFromKey() {
+		return client_.getFinalEndpoint(new HttpGet(
+			client_.getUrl(action_, key_)));
+	}
+	
+	@Benchmark
+	public HavaloKey keyCacheHit() {
+		return cache_.get(PATH);
+	}
+	
+}
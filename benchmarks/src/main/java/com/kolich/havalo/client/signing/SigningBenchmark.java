@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.signing;
+
+import com.kolich.havalo.client.service.HavaloClientCredentials;
+import com.kolich.havalo.client.service.HavaloClientSigner;
+import com.kolich.havalo.client.signing.algorithms.HMACSHA256Signer;
+import org.apache.http.client.methods.HttpGet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SigningBenchmark {
+	
+	private static final String STRING_TO_SIGN = "PUT\n" +
+		"Sun, 19 Oct 2014 04:20:00 GMT\n" +
+		"application/json\n" +
+		"/havalo/api/object/foobar%2Fbaz%2F0.json";
+	
+	private static final String REQUEST_URI =
+		"http://localhost:8080/havalo/api/object/foobar%2Fbaz%2F0.json";
+	
+	private HavaloCredentials credentials_;
+	private HMACSHA256Signer algorithm_;
+	private HMACSHA256Signer cachedKeyAlgorithm_;
+	private HavaloClientSigner signer_;
+	
+	@Setup
+	public void setup() {
+		credentials_ = new HavaloClientCredentials(UUID.randomUUID(),
+			"Crb7s5coXNbEnQIYr9cxNqShozksHitLgCrb7s5coXNbEnQIYr9cxNqSh");
+		algorithm_ = new HMACSHA256Signer();
+		cachedKeyAlgorithm_ = new HMACSHA256Signer(credentials_);
+		signer_ = new HavaloClientSigner(credentials_, algorithm_);
+	}
+	
+	@Benchmark
+	public String sign() {
+		return algorithm_.sign(credentials_, STRING_TO_SIGN);
+	}
+	
+	@Benchmark
+	public String signCachedKey() {
+		return cachedKeyAlgorithm_.sign(credentials_, STRING_TO_SIGN);
+	}
+	
+	@Benchmark
+	public HttpGet signHttpRequest() {
+		final HttpGet request = new HttpGet(REQUEST_URI);
+		signer_.signHttpRequest(request);
+		return request;
+	}
+	
+}
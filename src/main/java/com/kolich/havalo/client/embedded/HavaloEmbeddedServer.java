@@ -0,0 +1,812 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.embedded;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.kolich.havalo.client.HavaloClientException;
+import com.kolich.havalo.client.service.HavaloClientCredentials;
+import com.kolich.havalo.client.signing.HavaloCredentials;
+import com.kolich.havalo.client.signing.algorithms.HMACSHA256Signer;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.GZIPOutputStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.kolich.common.DefaultCharacterEncoding.UTF_8;
+import static com.kolich.common.entities.KolichCommonEntity.getDefaultGsonBuilder;
+import static org.apache.commons.codec.binary.StringUtils.getBytesUtf8;
+import static org.apache.commons.io.IOUtils.copyLarge;
+import static org.apache.commons.io.IOUtils.toByteArray;
+import static org.apache.http.HttpHeaders.*;
+import static org.apache.http.HttpStatus.*;
+
+/**
+ * A lightweight, in-process stand-in for the Havalo API, for testing and
+ * benchmarking the client without any outside service.  Implements the
+ * authenticate, repository and object endpoints, verifies the
+ * "Havalo key:signature" Authorization header on every request, honors
+ * ETag/If-Match semantics and serves "startsWith" listings, optionally
+ * paginated with "limit" and "marker".  Objects are
+ * kept in memory, or optionally in temporary files.  Latency and errors
+ * can be injected into every request, and adjusted while the server is
+ * running.  Unless disabled with {@link Builder#setNoDelay(boolean)}, the
+ * JVM-wide "sun.net.httpserver.nodelay" system property is set when the
+ * server is built (if it isn't set already), which turns off Nagle's
+ * algorithm for every JDK HTTP server started in this JVM from then on.
+ */
+public final class HavaloEmbeddedServer implements Closeable {
+	
+	private static final String DEFAULT_API_PATH = "/havalo/api";
+	
+	private static final String API_ACTION_AUTHENTICATE = "authenticate";
+	private static final String API_ACTION_REPOSITORY = "repository";
+	private static final String API_ACTION_OBJECT = "object";
+	
+	private static final String API_PARAM_STARTSWITH = "startsWith";
+	private static final String API_PARAM_LIMIT = "limit";
+	private static final String API_PARAM_MARKER = "marker";
+	
+	private static final String AUTHORIZATION_PREFIX = "Havalo ";
+	private static final String GZIP_ENCODING = "gzip";
+	private static final String JSON_CONTENT_TYPE =
+		"application/json; charset=UTF-8";
+	private static final String SHA1_ALGORITHM = "SHA-1";
+	
+	private static final String SERVER_THREAD_NAME = "havalo-embedded-%d";
+	
+	/**
+	 * The JDK server leaves Nagle's algorithm on by default, which adds
+	 * ~40ms to nearly every loopback response (headers and body go out in
+	 * separate segments, and the client delays its ACK).  Read once, when
+	 * the first JDK server in this JVM starts.
+	 */
+	private static final String JDK_SERVER_NODELAY_PROPERTY =
+		"sun.net.httpserver.nodelay";
+	
+	private final HttpServer server_;
+	private final ExecutorService executor_;
+	private final String apiPath_;
+	private final File storageDir_;
+	private final HavaloCredentials admin_;
+	
+	private final Gson gson_;
+	private final HMACSHA256Signer signer_;
+	
+	/**
+	 * All repositories, keyed by their access key.
+	 */
+	private final Map<UUID,Repository> repositories_;
+	
+	private volatile long latencyMs_;
+	private volatile long latencyJitterMs_;
+	private volatile double errorRate_;
+	private volatile int errorStatus_;
+	
+	private final boolean ascendingListings_;
+	
+	private HavaloEmbeddedServer(final Builder builder) throws IOException {
+		apiPath_ = builder.apiPath_;
+		storageDir_ = builder.storageDir_;
+		admin_ = new HavaloClientCredentials(builder.adminKey_,
+			builder.adminSecret_);
+		latencyMs_ = builder.latencyMs_;
+		latencyJitterMs_ = builder.latencyJitterMs_;
+		errorRate_ = builder.errorRate_;
+		errorStatus_ = builder.errorStatus_;
+		ascendingListings_ = builder.ascendingListings_;
+		gson_ = getDefaultGsonBuilder().create();
+		signer_ = new HMACSHA256Signer();
+		repositories_ = new ConcurrentHashMap<>();
+		repositories_.put(admin_.getKey(), new Repository(admin_, true));
+		if(builder.noDelay_ &&
+			System.getProperty(JDK_SERVER_NODELAY_PROPERTY) == null) {
+			System.setProperty(JDK_SERVER_NODELAY_PROPERTY, "true");
+		}
+		executor_ = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+			.setNameFormat(SERVER_THREAD_NAME).setDaemon(true).build());
+		server_ = HttpServer.create(new InetSocketAddress(builder.host_,
+			builder.port_), 0);
+		server_.createContext(apiPath_, this::handle);
+		server_.setExecutor(executor_);
+	}
+	
+	public HavaloEmbeddedServer start() {
+		server_.start();
+		return this;
+	}
+	
+	/**
+	 * Stops the server and deletes any objects it stored on disk.
+	 */
+	@Override
+	public void close() {
+		server_.stop(0);
+		executor_.shutdownNow();
+		for(final Repository repository : repositories_.values()) {
+			repository.clear();
+		}
+	}
+	
+	/**
+	 * Returns the API endpoint URL to hand to a
+	 * {@link com.kolich.havalo.client.service.HavaloClient}.
+	 */
+	public String getApiUrl() {
+		final InetSocketAddress address = server_.getAddress();
+		return "http://" + address.getHostString() + ":" +
+			address.getPort() + apiPath_;
+	}
+	
+	/**
+	 * Returns the credentials of the administrator repository, the only
+	 * repository allowed to create or delete other repositories.
+	 */
+	public HavaloCredentials getAdminCredentials() {
+		return admin_;
+	}
+	
+	/**
+	 * Delays every request by the given fixed latency, plus a random
+	 * amount between zero and the given jitter.
+	 */
+	public void setLatency(final long latencyMs, final long jitterMs) {
+		checkArgument(latencyMs >= 0L && jitterMs >= 0L, "Latency and " +
+			"jitter cannot be negative!");
+		latencyMs_ = latencyMs;
+		latencyJitterMs_ = jitterMs;
+	}
+	
+	/**
+	 * Fails the given fraction (0.0 to 1.0) of requests with the given HTTP
+	 * status code, before they're even authenticated.
+	 */
+	public void setErrorRate(final double errorRate, final int errorStatus) {
+		checkArgument(errorRate >= 0.0d && errorRate <= 1.0d, "Error rate " +
+			"must be between 0.0 and 1.0 inclusive!");
+		errorRate_ = errorRate;
+		errorStatus_ = errorStatus;
+	}
+	
+	private void handle(final HttpExchange exchange) throws IOException {
+		try {
+			injectLatency();
+			if(errorRate_ > 0.0d &&
+				ThreadLocalRandom.current().nextDouble() < errorRate_) {
+				respond(exchange, errorStatus_);
+				return;
+			}
+			final Repository repository = authenticate(exchange);
+			if(repository == null) {
+				respond(exchange, SC_UNAUTHORIZED);
+				return;
+			}
+			// Everything after the API path, "/object/foo%252Fbar" ...
+			final String[] path = exchange.getRequestURI().getRawPath()
+				.substring(apiPath_.length()).split("/", 3);
+			final String action = (path.length > 1) ? path[1] : "";
+			final String resource = (path.length > 2) ?
+				URLDecoder.decode(path[2], UTF_8) : null;
+			final String method = exchange.getRequestMethod();
+			if(API_ACTION_AUTHENTICATE.equals(action) &&
+				"POST".equals(method)) {
+				respondJson(exchange, SC_OK, keyPair(repository.credentials_));
+			} else if(API_ACTION_REPOSITORY.equals(action)) {
+				handleRepository(exchange, repository, method, resource);
+			} else if(API_ACTION_OBJECT.equals(action)) {
+				handleObject(exchange, repository, method, resource);
+			} else {
+				respond(exchange, SC_NOT_FOUND);
+			}
+		} catch (Exception e) {
+			respond(exchange, SC_INTERNAL_SERVER_ERROR);
+		} finally {
+			exchange.close();
+		}
+	}
+	
+	private void handleRepository(final HttpExchange exchange,
+		final Repository repository, final String method,
+		final String resource) throws IOException {
+		if("GET".equals(method) && resource == null) {
+			final String startsWith = getQueryParameter(exchange,
+				API_PARAM_STARTSWITH);
+			final String limit = getQueryParameter(exchange,
+				API_PARAM_LIMIT);
+			final String prefix = (startsWith == null) ? "" : startsWith;
+			if(limit == null) {
+				respondJson(exchange, SC_OK, objectList(
+					repository.list(prefix)));
+				return;
+			}
+			final int max;
+			try {
+				max = Integer.parseInt(limit);
+			} catch (NumberFormatException e) {
+				respond(exchange, SC_BAD_REQUEST);
+				return;
+			}
+			if(max <= 0) {
+				respond(exchange, SC_BAD_REQUEST);
+				return;
+			}
+			respondJson(exchange, SC_OK, objectList(repository.list(prefix,
+				getQueryParameter(exchange, API_PARAM_MARKER), max)));
+		} else if("POST".equals(method) && resource == null) {
+			if(!repository.admin_) {
+				respond(exchange, SC_FORBIDDEN);
+				return;
+			}
+			final HavaloCredentials credentials = new HavaloClientCredentials(
+				UUID.randomUUID(), newSecret());
+			repositories_.put(credentials.getKey(),
+				new Repository(credentials, false));
+			respondJson(exchange, SC_OK, keyPair(credentials));
+		} else if("DELETE".equals(method) && resource != null) {
+			final UUID key;
+			try {
+				key = UUID.fromString(resource);
+			} catch (IllegalArgumentException e) {
+				respond(exchange, SC_NOT_FOUND);
+				return;
+			}
+			final Repository toDelete = repositories_.get(key);
+			if(!repository.admin_ || (toDelete != null && toDelete.admin_)) {
+				respond(exchange, SC_FORBIDDEN);
+			} else if(toDelete == null) {
+				respond(exchange, SC_NOT_FOUND);
+			} else {
+				repositories_.remove(key).clear();
+				respond(exchange, SC_NO_CONTENT);
+			}
+		} else {
+			respond(exchange, SC_METHOD_NOT_ALLOWED);
+		}
+	}
+	
+	private void handleObject(final HttpExchange exchange,
+		final Repository repository, final String method,
+		final String name) throws IOException {
+		if(name == null || name.isEmpty()) {
+			respond(exchange, SC_NOT_FOUND);
+			return;
+		}
+		final String ifMatch = exchange.getRequestHeaders()
+			.getFirst(IF_MATCH);
+		switch(method) {
+			case "GET":
+			case "HEAD": {
+				final StoredObject object = repository.objects_.get(name);
+				if(object == null) {
+					respond(exchange, SC_NOT_FOUND);
+				} else {
+					respondObject(exchange, object, "GET".equals(method));
+				}
+				break;
+			}
+			case "PUT": {
+				final StoredObject object = store(name,
+					exchange.getRequestBody(),
+					exchange.getRequestHeaders().getFirst(CONTENT_TYPE));
+				final StoredObject previous;
+				synchronized(repository) {
+					previous = repository.objects_.get(name);
+					if(ifMatch != null && (previous == null ||
+						!ifMatch.equals(previous.eTag_))) {
+						object.delete();
+						respond(exchange, SC_CONFLICT);
+						return;
+					}
+					repository.objects_.put(name, object);
+				}
+				if(previous != null) {
+					previous.delete();
+				}
+				respondJson(exchange, SC_OK, fileObject(name, object));
+				break;
+			}
+			case "DELETE": {
+				final StoredObject previous;
+				synchronized(repository) {
+					previous = repository.objects_.get(name);
+					if(previous == null) {
+						respond(exchange, SC_NOT_FOUND);
+						return;
+					} else if(ifMatch != null &&
+						!ifMatch.equals(previous.eTag_)) {
+						respond(exchange, SC_CONFLICT);
+						return;
+					}
+					repository.objects_.remove(name);
+				}
+				previous.delete();
+				respond(exchange, SC_NO_CONTENT);
+				break;
+			}
+			default:
+				respond(exchange, SC_METHOD_NOT_ALLOWED);
+		}
+	}
+	
+	/**
+	 * Verifies the Authorization request header, and returns the matching
+	 * repository, or null if the request isn't properly signed.  The
+	 * signature is computed exactly like
+	 * {@link com.kolich.havalo.client.service.HavaloClientSigner} does.
+	 */
+	private Repository authenticate(final HttpExchange exchange) {
+		final Headers headers = exchange.getRequestHeaders();
+		final String authorization = headers.getFirst(AUTHORIZATION);
+		final String date = headers.getFirst(DATE);
+		if(authorization == null || date == null ||
+			!authorization.startsWith(AUTHORIZATION_PREFIX)) {
+			return null;
+		}
+		final String[] keyAndSignature = authorization.substring(
+			AUTHORIZATION_PREFIX.length()).split(":", 2);
+		if(keyAndSignature.length != 2) {
+			return null;
+		}
+		final Repository repository;
+		try {
+			repository = repositories_.get(
+				UUID.fromString(keyAndSignature[0]));
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+		if(repository == null) {
+			return null;
+		}
+		final String contentType = headers.getFirst(CONTENT_TYPE);
+		final String toSign = exchange.getRequestMethod().toUpperCase() +
+			"\n" + date + "\n" + ((contentType == null) ? "" : contentType) +
+			"\n" + exchange.getRequestURI().getRawPath();
+		final String expected = signer_.sign(repository.credentials_, toSign);
+		return MessageDigest.isEqual(getBytesUtf8(expected),
+			getBytesUtf8(keyAndSignature[1])) ? repository : null;
+	}
+	
+	/**
+	 * Consumes the given request body into a new object, computing its
+	 * SHA-1 ETag along the way.
+	 */
+	private StoredObject store(final String name, final InputStream body,
+		final String contentType) throws IOException {
+		final MessageDigest sha1;
+		try {
+			sha1 = MessageDigest.getInstance(SHA1_ALGORITHM);
+		} catch (Exception e) {
+			throw new HavaloClientException(e);
+		}
+		final InputStream is = new DigestInputStream(body, sha1);
+		final byte[] data;
+		final File file;
+		final long length;
+		if(storageDir_ == null) {
+			data = toByteArray(is);
+			file = null;
+			length = data.length;
+		} else {
+			data = null;
+			file = File.createTempFile("havalo", ".obj", storageDir_);
+			try(final OutputStream os = new FileOutputStream(file)) {
+				length = copyLarge(is, os);
+			}
+		}
+		final Map<String,List<String>> headers = new LinkedHashMap<>();
+		final String eTag = Hex.encodeHexString(sha1.digest());
+		headers.put(ETAG, Arrays.asList(eTag));
+		if(contentType != null) {
+			headers.put(CONTENT_TYPE, Arrays.asList(contentType));
+		}
+		return new StoredObject(data, file, length, eTag, headers);
+	}
+	
+	private void injectLatency() throws InterruptedException {
+		final long jitter = latencyJitterMs_;
+		final long latency = latencyMs_ + ((jitter > 0L) ?
+			ThreadLocalRandom.current().nextLong(jitter + 1L) : 0L);
+		if(latency > 0L) {
+			Thread.sleep(latency);
+		}
+	}
+	
+	private JsonObject keyPair(final HavaloCredentials credentials) {
+		final JsonObject keyPair = new JsonObject();
+		keyPair.addProperty("key", credentials.getKey().toString());
+		keyPair.addProperty("secret", credentials.getSecret());
+		return keyPair;
+	}
+	
+	private JsonObject fileObject(final String name,
+		final StoredObject object) {
+		final JsonObject headers = new JsonObject();
+		for(final Map.Entry<String,List<String>> e :
+			object.headers_.entrySet()) {
+			final JsonArray values = new JsonArray();
+			for(final String value : e.getValue()) {
+				values.add(new JsonPrimitive(value));
+			}
+			headers.add(e.getKey(), values);
+		}
+		final JsonObject fileObject = new JsonObject();
+		fileObject.addProperty("name", name);
+		fileObject.add("headers", headers);
+		return fileObject;
+	}
+	
+	private JsonObject objectList(final Map<String,StoredObject> objects) {
+		final JsonArray array = new JsonArray();
+		for(final Map.Entry<String,StoredObject> e : objects.entrySet()) {
+			array.add(fileObject(e.getKey(), e.getValue()));
+		}
+		final JsonObject objectList = new JsonObject();
+		objectList.add("objects", array);
+		return objectList;
+	}
+	
+	private void respondJson(final HttpExchange exchange, final int status,
+		final JsonObject json) throws IOException {
+		final byte[] body = getBytesUtf8(gson_.toJson(json));
+		final Headers headers = exchange.getResponseHeaders();
+		headers.set(CONTENT_TYPE, JSON_CONTENT_TYPE);
+		final String acceptEncoding = exchange.getRequestHeaders()
+			.getFirst(ACCEPT_ENCODING);
+		if(acceptEncoding != null && acceptEncoding.contains(GZIP_ENCODING)) {
+			headers.set(CONTENT_ENCODING, GZIP_ENCODING);
+			exchange.sendResponseHeaders(status, 0L); // Chunked
+			try(final OutputStream os = new GZIPOutputStream(
+				exchange.getResponseBody())) {
+				os.write(body);
+			}
+		} else {
+			exchange.sendResponseHeaders(status, body.length);
+			try(final OutputStream os = exchange.getResponseBody()) {
+				os.write(body);
+			}
+		}
+	}
+	
+	private void respondObject(final HttpExchange exchange,
+		final StoredObject object, final boolean sendBody)
+		throws IOException {
+		final Headers headers = exchange.getResponseHeaders();
+		for(final Map.Entry<String,List<String>> e :
+			object.headers_.entrySet()) {
+			headers.put(e.getKey(), new ArrayList<>(e.getValue()));
+		}
+		if(!sendBody) {
+			// The JDK server refuses to send a Content-Length on a HEAD
+			// response on its own, so set it ourselves.
+			headers.set(CONTENT_LENGTH, Long.toString(object.length_));
+			sendEmptyResponse(exchange, SC_OK);
+			return;
+		} else if(object.length_ == 0L) {
+			sendEmptyResponse(exchange, SC_OK);
+			return;
+		}
+		exchange.sendResponseHeaders(SC_OK, object.length_);
+		try(final InputStream is = object.open();
+			final OutputStream os = exchange.getResponseBody()) {
+			copyLarge(is, os);
+		}
+	}
+	
+	private static final void respond(final HttpExchange exchange,
+		final int status) throws IOException {
+		sendEmptyResponse(exchange, status);
+	}
+	
+	/**
+	 * Sends a response without a body.  The JDK server only keeps the
+	 * connection alive if the request body was read to the end, which it
+	 * does on its own when a response body is closed, but not when there
+	 * is no response body at all.
+	 */
+	private static final void sendEmptyResponse(final HttpExchange exchange,
+		final int status) throws IOException {
+		exchange.getRequestBody().close();
+		exchange.sendResponseHeaders(status, -1L);
+	}
+	
+	private static final String getQueryParameter(
+		final HttpExchange exchange, final String name) throws IOException {
+		final String query = exchange.getRequestURI().getRawQuery();
+		if(query != null) {
+			for(final String pair : query.split("&")) {
+				final String[] kv = pair.split("=", 2);
+				if(kv.length == 2 && name.equals(kv[0])) {
+					return URLDecoder.decode(kv[1], UTF_8);
+				}
+			}
+		}
+		return null;
+	}
+	
+	private static final String newSecret() {
+		final byte[] secret = new byte[48];
+		ThreadLocalRandom.current().nextBytes(secret);
+		return Hex.encodeHexString(secret);
+	}
+	
+	private final class Repository {
+		private final HavaloCredentials credentials_;
+		private final boolean admin_;
+		private final NavigableMap<String,StoredObject> objects_;
+		private Repository(final HavaloCredentials credentials,
+			final boolean admin) {
+			credentials_ = credentials;
+			admin_ = admin;
+			objects_ = new ConcurrentSkipListMap<>();
+		}
+		/**
+		 * Returns all objects whose name starts with the given prefix.
+		 */
+		private Map<String,StoredObject> list(final String prefix) {
+			final Map<String,StoredObject> result = new LinkedHashMap<>();
+			for(final Map.Entry<String,StoredObject> e :
+				objects_.tailMap(prefix, true).entrySet()) {
+				if(!e.getKey().startsWith(prefix)) {
+					break;
+				}
+				result.put(e.getKey(), e.getValue());
+			}
+			return result;
+		}
+		/**
+		 * Returns a page of at most limit objects whose name starts with
+		 * the given prefix, in FileObject (reverse name) order, or in name
+		 * order if so configured, starting right after the marker, or from
+		 * the top if the marker is null.
+		 */
+		private Map<String,StoredObject> list(final String prefix,
+			final String marker, final int limit) {
+			if(ascendingListings_) {
+				final NavigableMap<String,StoredObject> range =
+					(marker != null && marker.compareTo(prefix) >= 0) ?
+						objects_.tailMap(marker, false) :
+						objects_.tailMap(prefix, true);
+				final Map<String,StoredObject> result = new LinkedHashMap<>();
+				for(final Map.Entry<String,StoredObject> e :
+					range.entrySet()) {
+					if(!e.getKey().startsWith(prefix) ||
+						result.size() >= limit) {
+						break;
+					}
+					result.put(e.getKey(), e.getValue());
+				}
+				return result;
+			}
+			// Every name with the prefix sorts before the prefix with its
+			// last (incrementable) character incremented.
+			String end = null;
+			int last = prefix.length() - 1;
+			while(last >= 0 && prefix.charAt(last) == Character.MAX_VALUE) {
+				last--;
+			}
+			if(last >= 0) {
+				end = prefix.substring(0, last) +
+					(char)(prefix.charAt(last) + 1);
+			}
+			if(marker != null && (end == null || marker.compareTo(end) < 0)) {
+				end = marker;
+			}
+			if(end != null && end.compareTo(prefix) <= 0) {
+				return Collections.emptyMap();
+			}
+			final NavigableMap<String,StoredObject> range = (end == null) ?
+				objects_.tailMap(prefix, true) :
+				objects_.subMap(prefix, true, end, false);
+			final Map<String,StoredObject> result = new LinkedHashMap<>();
+			for(final Map.Entry<String,StoredObject> e :
+				range.descendingMap().entrySet()) {
+				if(result.size() >= limit) {
+					break;
+				}
+				result.put(e.getKey(), e.getValue());
+			}
+			return result;
+		}
+		private void clear() {
+			for(final StoredObject object : objects_.values()) {
+				object.delete();
+			}
+			objects_.clear();
+		}
+	}
+	
+	private static final class StoredObject {
+		private final byte[] data_;
+		private final File file_;
+		private final long length_;
+		private final String eTag_;
+		private final Map<String,List<String>> headers_;
+		private StoredObject(final byte[] data, final File file,
+			final long length, final String eTag,
+			final Map<String,List<String>> headers) {
+			data_ = data;
+			file_ = file;
+			length_ = length;
+			eTag_ = eTag;
+			headers_ = headers;
+		}
+		private InputStream open() throws IOException {
+			return (file_ == null) ? new ByteArrayInputStream(data_) :
+				new FileInputStream(file_);
+		}
+		private void delete() {
+			if(file_ != null) {
+				FileUtils.deleteQuietly(file_);
+			}
+		}
+	}
+	
+	public static final class Builder {
+		
+		private String host_ = "127.0.0.1";
+		private int port_ = 0;
+		private String apiPath_ = DEFAULT_API_PATH;
+		private UUID adminKey_ = UUID.randomUUID();
+		private String adminSecret_ = newSecret();
+		private File storageDir_ = null;
+		private long latencyMs_ = 0L;
+		private long latencyJitterMs_ = 0L;
+		private double errorRate_ = 0.0d;
+		private int errorStatus_ = SC_SERVICE_UNAVAILABLE;
+		private boolean noDelay_ = true;
+		private boolean ascendingListings_ = false;
+		
+		/**
+		 * The address and port to listen on, defaults to an ephemeral
+		 * port on the loopback interface.
+		 */
+		public Builder setAddress(final String host, final int port) {
+			host_ = checkNotNull(host, "The host cannot be null!");
+			port_ = port;
+			return this;
+		}
+		
+		/**
+		 * The path the API is served under, defaults to "/havalo/api".
+		 */
+		public Builder setApiPath(final String apiPath) {
+			apiPath_ = checkNotNull(apiPath, "The API path cannot be null!");
+			return this;
+		}
+		
+		/**
+		 * The credentials of the administrator repository, defaults to a
+		 * random key and secret.
+		 */
+		public Builder setAdminCredentials(final UUID key,
+			final String secret) {
+			adminKey_ = checkNotNull(key, "The admin key cannot be null!");
+			adminSecret_ = checkNotNull(secret, "The admin secret cannot " +
+				"be null!");
+			return this;
+		}
+		
+		/**
+		 * Stores objects as files in the given directory instead of in
+		 * memory, useful for large objects.
+		 */
+		public Builder setStorageDirectory(final File storageDir) {
+			storageDir_ = storageDir;
+			return this;
+		}
+		
+		/**
+		 * Stores objects as files in a new temporary directory instead of
+		 * in memory.
+		 */
+		public Builder setTempFileStorage() throws IOException {
+			final File dir = Files.createTempDirectory("havalo").toFile();
+			dir.deleteOnExit();
+			return setStorageDirectory(dir);
+		}
+		
+		public Builder setLatency(final long latencyMs, final long jitterMs) {
+			latencyMs_ = latencyMs;
+			latencyJitterMs_ = jitterMs;
+			return this;
+		}
+		
+		public Builder setErrorRate(final double errorRate,
+			final int errorStatus) {
+			errorRate_ = errorRate;
+			errorStatus_ = errorStatus;
+			return this;
+		}
+		
+		/**
+		 * Whether to turn off Nagle's algorithm, defaults to true.  The
+		 * JDK server only reads this from the JVM-wide
+		 * "sun.net.httpserver.nodelay" system property, once, so enabling
+		 * it sets that property and affects every JDK HTTP server in the
+		 * JVM.  Disable it to leave the system properties untouched.
+		 */
+		public Builder setNoDelay(final boolean noDelay) {
+			noDelay_ = noDelay;
+			return this;
+		}
+		
+		/**
+		 * Lists paginated ("limit" and "marker") listings in ascending
+		 * name order, like most object stores, instead of Havalo's
+		 * FileObject (reverse name) order.  Off by default.
+		 */
+		public Builder setAscendingListings(final boolean ascending) {
+			ascendingListings_ = ascending;
+			return this;
+		}
+		
+		public HavaloEmbeddedServer build() {
+			try {
+				return new HavaloEmbeddedServer(this);
+			} catch (IOException e) {
+				throw new HavaloClientException("Failed to create " +
+					"embedded server.", e);
+			}
+		}
+		
+	}
+	
+}
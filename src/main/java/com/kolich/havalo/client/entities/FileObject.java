@@ -30,6 +30,7 @@ import com.google.common.collect.Maps;
 import com.google.gson.annotations.SerializedName;
 
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -48,12 +49,21 @@ public final class FileObject implements Serializable, Comparable<FileObject> {
 		headers_ = Maps.newLinkedHashMap();
 	}
 	
+	// For the FileObjectTypeAdapter, the headers are already immutable
+	FileObject(final String name, final Map<String, List<String>> headers) {
+		name_ = name;
+		headers_ = headers;
+	}
+	
 	public String getName() {
 		return name_;
 	}
-		
+	
+	/**
+	 * Returns a read-only view of all headers, not a copy.
+	 */
 	public Map<String, List<String>> getAllHeaders() {
-		return Maps.newLinkedHashMap(headers_);
+		return Collections.unmodifiableMap(headers_);
 	}
 		
 	public List<String> getHeader(String name) {
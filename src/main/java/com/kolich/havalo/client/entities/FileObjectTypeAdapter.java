@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.entities;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.http.HttpHeaders.*;
+
+/**
+ * Streams a {@link FileObject} to and from JSON without reflection.  The
+ * resulting objects are immutable, and share a single instance of each
+ * common header name, which adds up on listings of many thousands of
+ * objects.
+ */
+final class FileObjectTypeAdapter extends TypeAdapter<FileObject> {
+	
+	private static final String NAME = "name";
+	private static final String HEADERS = "headers";
+	
+	private static final Map<String,String> COMMON_HEADER_NAMES;
+	static {
+		final Map<String,String> names = new LinkedHashMap<>();
+		for(final String name : new String[]{CONTENT_TYPE, CONTENT_LENGTH,
+			ETAG, LAST_MODIFIED, CONTENT_ENCODING}) {
+			names.put(name, name);
+		}
+		COMMON_HEADER_NAMES = ImmutableMap.copyOf(names);
+	}
+	
+	@Override
+	public FileObject read(final JsonReader in) throws IOException {
+		if(in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		String name = null;
+		Map<String,List<String>> headers = Collections.emptyMap();
+		in.beginObject();
+		while(in.hasNext()) {
+			switch(in.nextName()) {
+				case NAME:
+					if(in.peek() == JsonToken.NULL) {
+						in.nextNull();
+					} else {
+						name = in.nextString();
+					}
+					break;
+				case HEADERS:
+					headers = readHeaders(in);
+					break;
+				default:
+					in.skipValue();
+			}
+		}
+		in.endObject();
+		return new FileObject(name, headers);
+	}
+	
+	@Override
+	public void write(final JsonWriter out, final FileObject object)
+		throws IOException {
+		if(object == null) {
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		out.name(NAME).value(object.getName());
+		out.name(HEADERS).beginObject();
+		for(final Map.Entry<String,List<String>> e :
+			object.getAllHeaders().entrySet()) {
+			out.name(e.getKey()).beginArray();
+			for(final String value : e.getValue()) {
+				out.value(value);
+			}
+			out.endArray();
+		}
+		out.endObject();
+		out.endObject();
+	}
+	
+	private static final Map<String,List<String>> readHeaders(
+		final JsonReader in) throws IOException {
+		if(in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return Collections.emptyMap();
+		}
+		final Map<String,List<String>> headers = new LinkedHashMap<>();
+		in.beginObject();
+		while(in.hasNext()) {
+			final String read = in.nextName();
+			final String common = COMMON_HEADER_NAMES.get(read);
+			headers.put((common != null) ? common : read, readValues(in));
+		}
+		in.endObject();
+		return Collections.unmodifiableMap(headers);
+	}
+	
+	/**
+	 * Reads an array of header values, tolerating a bare string.  Headers
+	 * almost always have a single value, which gets a singleton list.
+	 */
+	private static final List<String> readValues(final JsonReader in)
+		throws IOException {
+		final JsonToken token = in.peek();
+		if(token == JsonToken.NULL) {
+			in.nextNull();
+			return Collections.emptyList();
+		} else if(token != JsonToken.BEGIN_ARRAY) {
+			return Collections.singletonList(in.nextString());
+		}
+		in.beginArray();
+		if(!in.hasNext()) {
+			in.endArray();
+			return Collections.emptyList();
+		}
+		final String first = in.nextString();
+		if(!in.hasNext()) {
+			in.endArray();
+			return Collections.singletonList(first);
+		}
+		final List<String> values = new ArrayList<>(2);
+		values.add(first);
+		while(in.hasNext()) {
+			values.add(in.nextString());
+		}
+		in.endArray();
+		return Collections.unmodifiableList(values);
+	}
+	
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.entities;
+
+import com.google.gson.GsonBuilder;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Registers the hand-written, streaming Gson type adapters for the Havalo
+ * entities, which are considerably faster and allocate less than Gson's
+ * default reflection based ones, especially on large object listings.
+ */
+public final class HavaloTypeAdapters {
+	
+	private HavaloTypeAdapters() {}
+	
+	/**
+	 * Registers the type adapters with, and returns, the given builder.
+	 */
+	public static final GsonBuilder registerTypeAdapters(
+		final GsonBuilder builder) {
+		checkNotNull(builder, "The Gson builder cannot be null!");
+		final FileObjectTypeAdapter fileObjectAdapter =
+			new FileObjectTypeAdapter();
+		return builder
+			.registerTypeAdapter(FileObject.class, fileObjectAdapter)
+			.registerTypeAdapter(ObjectList.class,
+				new ObjectListTypeAdapter(fileObjectAdapter));
+	}
+	
+}
@@ -23,42 +23,319 @@
  * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
  * OTHER DEALINGS IN THE SOFTWARE.
  */
-
 package com.kolich.havalo.client.entities;
 
-import com.google.gson.annotations.SerializedName;
-
 import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public final class ObjectList implements Serializable {
-	
-	private static final long serialVersionUID = 6785074165873456209L;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
-	@SerializedName("objects")
-	private Set<FileObject> objects_;
-				
-	// For GSON
+/**
+ * An immutable, compact, listing of objects.  Instead of a tree of
+ * {@link FileObject}'s, each with its own name string and header map, the
+ * object names are packed back to back, sorted, into a single byte array
+ * and every header name and value is interned into a dictionary shared by
+ * the whole listing.  {@link FileObject}'s are only created on access, and
+ * are iterated in their natural (reverse name) order.  Since the names are
+ * sorted, looking up an object by name or prefix is a binary search.
+ */
+public final class ObjectList implements Serializable, Iterable<FileObject> {
+	
+	private static final long serialVersionUID = -2911093856207461740L;
+	
+	private static final int[] EMPTY_OFFSETS = new int[]{0};
+	
+	/**
+	 * Every distinct header name and value in the listing.
+	 */
+	private final String[] dictionary_;
+	
+	/**
+	 * The UTF-8 encoded object names, in ascending order, back to back.
+	 * The name of the i-th object runs from nameOffsets_[i] up to, but not
+	 * including, nameOffsets_[i+1].
+	 */
+	private final byte[] names_;
+	private final int[] nameOffsets_;
+	
+	/**
+	 * The headers of the i-th object, from headerOffsets_[i] up to, but not
+	 * including, headerOffsets_[i+1], as a run of header name dictionary
+	 * index, value count, and then each value's dictionary index.
+	 */
+	private final int[] headers_;
+	private final int[] headerOffsets_;
+	
+	/**
+	 * The range of (ascending) objects visible through this list, which
+	 * lets prefix lookups share the storage of the listing they came from.
+	 */
+	private final int from_;
+	private final int to_;
+	
+	/**
+	 * The name of the last object in the order the listing arrived in,
+	 * or null if there is none.
+	 */
+	private final String lastListed_;
+	
+	/**
+	 * A read-only set view of the objects, created on first use.
+	 */
+	private transient Set<FileObject> view_;
+	
+	/**
+	 * An empty listing.  Note that an {@link ObjectList} can only be read
+	 * from JSON with the adapters registered by {@link HavaloTypeAdapters}.
+	 */
 	public ObjectList() {
-		objects_ = new TreeSet<>();
+		this(new String[0], new byte[0], EMPTY_OFFSETS, new int[0],
+			EMPTY_OFFSETS, 0, 0, null);
+	}
+	
+	private ObjectList(final String[] dictionary, final byte[] names,
+		final int[] nameOffsets, final int[] headers,
+		final int[] headerOffsets, final int from, final int to,
+		final String lastListed) {
+		dictionary_ = dictionary;
+		names_ = names;
+		nameOffsets_ = nameOffsets;
+		headers_ = headers;
+		headerOffsets_ = headerOffsets;
+		from_ = from;
+		to_ = to;
+		lastListed_ = lastListed;
 	}
 	
+	/**
+	 * Returns a read-only, sorted, view of the objects, not a copy.
+	 */
 	public Set<FileObject> getObjectList() {
-		return new TreeSet<>(objects_);
+		Set<FileObject> view = view_;
+		if(view == null) {
+			view_ = view = new ObjectSet();
+		}
+		return view;
+	}
+	
+	public int size() {
+		return to_ - from_;
+	}
+	
+	public boolean isEmpty() {
+		return to_ == from_;
+	}
+	
+	/**
+	 * Returns the object at the given position, in {@link FileObject}
+	 * order, creating it on each call.
+	 */
+	public FileObject get(final int index) {
+		return getSlotObject(toSlot(index));
+	}
+	
+	/**
+	 * Returns the name of the object at the given position, in
+	 * {@link FileObject} order, without creating the object.
+	 */
+	public String getName(final int index) {
+		return getSlotName(toSlot(index));
+	}
+	
+	/**
+	 * Returns the name of the last object in the order the API listed
+	 * them, whatever that order was, which is the marker to continue a
+	 * paginated listing from.  Null if the listing is empty, or is a
+	 * prefix view of another listing.
+	 */
+	public String getLastListedName() {
+		return lastListed_;
+	}
+	
+	/**
+	 * Returns the object with the given name, or null if there's no such
+	 * object in this list.
+	 */
+	public FileObject getObject(final String name) {
+		if(name == null) {
+			return null;
+		}
+		final int slot = lowerBound(name);
+		return (slot < to_ && name.equals(getSlotName(slot))) ?
+			getSlotObject(slot) : null;
+	}
+	
+	/**
+	 * Returns the objects whose name starts with the given prefix, in a
+	 * list that shares the storage of this one.
+	 */
+	public ObjectList getObjectsWithPrefix(final String prefix) {
+		if(prefix == null || prefix.isEmpty()) {
+			return this;
+		}
+		final int from = lowerBound(prefix);
+		// Every name with the prefix sorts right after the prefix itself,
+		// so the end of the range is the first name without it.
+		int lo = from, hi = to_;
+		while(lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if(getSlotName(mid).startsWith(prefix)) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return new ObjectList(dictionary_, names_, nameOffsets_, headers_,
+			headerOffsets_, from, lo, null);
+	}
+	
+	@Override
+	public Iterator<FileObject> iterator() {
+		return new Iterator<FileObject>() {
+			private int slot_ = to_;
+			@Override
+			public boolean hasNext() {
+				return slot_ > from_;
+			}
+			@Override
+			public FileObject next() {
+				if(slot_ <= from_) {
+					throw new NoSuchElementException();
+				}
+				return getSlotObject(--slot_);
+			}
+		};
 	}
 	
-	// Straight from Eclipse
+	/**
+	 * Returns a spliterator over the objects that splits evenly by
+	 * position, and so parallel streams over large listings scale well.
+	 */
+	@Override
+	public Spliterator<FileObject> spliterator() {
+		return new ObjectSpliterator(0, size());
+	}
+	
+	public Stream<FileObject> stream() {
+		return StreamSupport.stream(spliterator(), false);
+	}
+	
+	public Stream<FileObject> parallelStream() {
+		return StreamSupport.stream(spliterator(), true);
+	}
+	
+	/**
+	 * Maps a position in {@link FileObject} order, which is reverse name
+	 * order, to the slot in the (ascending) storage that holds it.
+	 */
+	private final int toSlot(final int index) {
+		if(index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Index: " + index +
+				", Size: " + size());
+		}
+		return to_ - 1 - index;
+	}
+	
+	private final String getSlotName(final int slot) {
+		final int offset = nameOffsets_[slot];
+		return new String(names_, offset, nameOffsets_[slot + 1] - offset,
+			UTF_8);
+	}
+	
+	private final FileObject getSlotObject(final int slot) {
+		final int end = headerOffsets_[slot + 1];
+		Map<String,List<String>> headers = Collections.emptyMap();
+		if(headerOffsets_[slot] < end) {
+			headers = new LinkedHashMap<>();
+			for(int i = headerOffsets_[slot]; i < end;) {
+				final String name = dictionary_[headers_[i++]];
+				final int count = headers_[i++];
+				final List<String> values;
+				if(count == 0) {
+					values = Collections.emptyList();
+				} else if(count == 1) {
+					values = Collections.singletonList(
+						dictionary_[headers_[i]]);
+				} else {
+					final String[] v = new String[count];
+					for(int j = 0; j < count; j++) {
+						v[j] = dictionary_[headers_[i + j]];
+					}
+					values = Collections.unmodifiableList(Arrays.asList(v));
+				}
+				headers.put(name, values);
+				i += count;
+			}
+			headers = Collections.unmodifiableMap(headers);
+		}
+		return new FileObject(getSlotName(slot), headers);
+	}
+	
+	/**
+	 * Returns the first slot whose name is greater than or equal to the
+	 * given name, or to_ if there is none.
+	 */
+	private final int lowerBound(final String name) {
+		int lo = from_, hi = to_;
+		while(lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if(getSlotName(mid).compareTo(name) < 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+	
+	private final boolean nameEquals(final int slot, final ObjectList other,
+		final int otherSlot) {
+		final int offset = nameOffsets_[slot],
+			length = nameOffsets_[slot + 1] - offset;
+		final int otherOffset = other.nameOffsets_[otherSlot];
+		if(length != other.nameOffsets_[otherSlot + 1] - otherOffset) {
+			return false;
+		}
+		for(int i = 0; i < length; i++) {
+			if(names_[offset + i] != other.names_[otherOffset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Two listings are equal if they hold objects with the same names, the
+	 * same as {@link FileObject#equals(Object)}.
+	 */
 	@Override
 	public int hashCode() {
-		final int prime = 31;
 		int result = 1;
-		result = prime * result
-				+ ((objects_ == null) ? 0 : objects_.hashCode());
+		for(int slot = from_; slot < to_; slot++) {
+			final int offset = nameOffsets_[slot];
+			for(int i = offset; i < nameOffsets_[slot + 1]; i++) {
+				result = 31 * result + names_[i];
+			}
+			result = 31 * result + 1;
+		}
 		return result;
 	}
-
-	// Straight from Eclipse
+	
 	@Override
 	public boolean equals(Object obj) {
 		if (this == obj)
@@ -68,12 +345,234 @@ public final class ObjectList implements Serializable {
 		if (getClass() != obj.getClass())
 			return false;
 		ObjectList other = (ObjectList) obj;
-		if (objects_ == null) {
-			if (other.objects_ != null)
-				return false;
-		} else if (!objects_.equals(other.objects_))
+		if (size() != other.size())
 			return false;
+		for (int i = 0; i < size(); i++) {
+			if (!nameEquals(from_ + i, other, other.from_ + i))
+				return false;
+		}
 		return true;
 	}
 	
+	private final class ObjectSet extends AbstractSet<FileObject> {
+		@Override
+		public Iterator<FileObject> iterator() {
+			return ObjectList.this.iterator();
+		}
+		@Override
+		public Spliterator<FileObject> spliterator() {
+			return ObjectList.this.spliterator();
+		}
+		@Override
+		public int size() {
+			return ObjectList.this.size();
+		}
+		@Override
+		public boolean contains(final Object o) {
+			return (o instanceof FileObject) &&
+				getObject(((FileObject)o).getName()) != null;
+		}
+	}
+	
+	private final class ObjectSpliterator implements Spliterator<FileObject> {
+		private int index_;
+		private final int end_;
+		private ObjectSpliterator(final int index, final int end) {
+			index_ = index;
+			end_ = end;
+		}
+		@Override
+		public boolean tryAdvance(final Consumer<? super FileObject> action) {
+			if(index_ >= end_) {
+				return false;
+			}
+			action.accept(get(index_++));
+			return true;
+		}
+		@Override
+		public Spliterator<FileObject> trySplit() {
+			final int mid = (index_ + end_) >>> 1;
+			if(mid <= index_) {
+				return null;
+			}
+			final Spliterator<FileObject> prefix =
+				new ObjectSpliterator(index_, mid);
+			index_ = mid;
+			return prefix;
+		}
+		@Override
+		public long estimateSize() {
+			return end_ - index_;
+		}
+		@Override
+		public int characteristics() {
+			return ORDERED | SORTED | DISTINCT | SIZED | SUBSIZED |
+				NONNULL | IMMUTABLE;
+		}
+		@Override
+		public Comparator<? super FileObject> getComparator() {
+			// Natural, FileObject, order.
+			return null;
+		}
+	}
+	
+	/**
+	 * Collects objects one name and header at a time, and packs them into
+	 * an {@link ObjectList}.  Like a set, the first of any objects with the
+	 * same name wins.
+	 */
+	static final class Builder {
+		
+		private final Map<String,Integer> dictionary_ = new HashMap<>();
+		private final List<String> words_ = new ArrayList<>();
+		private final List<String> names_ = new ArrayList<>();
+		
+		private int[] headers_ = new int[64];
+		private int headerLength_ = 0;
+		private int[] headerOffsets_ = new int[16];
+		
+		/**
+		 * The position of the value count of the current header.
+		 */
+		private int countPosition_ = -1;
+		
+		/**
+		 * Starts a new object, its headers follow.
+		 */
+		Builder addObject(final String name) {
+			if(names_.size() == headerOffsets_.length) {
+				headerOffsets_ = Arrays.copyOf(headerOffsets_,
+					headerOffsets_.length * 2);
+			}
+			headerOffsets_[names_.size()] = headerLength_;
+			names_.add(name);
+			countPosition_ = -1;
+			return this;
+		}
+		
+		/**
+		 * Starts a new header on the current object, its values follow.
+		 */
+		Builder addHeader(final String name) {
+			if(names_.isEmpty()) {
+				throw new IllegalStateException("No object to add a " +
+					"header to!");
+			}
+			append(intern(name));
+			countPosition_ = headerLength_;
+			append(0);
+			return this;
+		}
+		
+		/**
+		 * Adds a value to the current header.
+		 */
+		Builder addHeaderValue(final String value) {
+			if(countPosition_ < 0) {
+				throw new IllegalStateException("No header to add a " +
+					"value to!");
+			}
+			append(intern(value));
+			headers_[countPosition_]++;
+			return this;
+		}
+		
+		ObjectList build() {
+			final int count = names_.size();
+			final int[] order = getSortOrder();
+			final String[] names = new String[count];
+			final byte[][] encoded = new byte[count][];
+			int objects = 0, nameLength = 0, headerLength = 0;
+			for(final int i : order) {
+				final String name = names_.get(i);
+				if(objects > 0 && name.equals(names[objects - 1])) {
+					continue;
+				}
+				names[objects] = name;
+				order[objects] = i;
+				encoded[objects] = name.getBytes(UTF_8);
+				nameLength += encoded[objects].length;
+				headerLength += getHeaderEnd(i) - headerOffsets_[i];
+				objects++;
+			}
+			final byte[] packedNames = new byte[nameLength];
+			final int[] nameOffsets = new int[objects + 1];
+			final int[] packedHeaders = new int[headerLength];
+			final int[] headerOffsets = new int[objects + 1];
+			for(int slot = 0; slot < objects; slot++) {
+				final byte[] name = encoded[slot];
+				System.arraycopy(name, 0, packedNames, nameOffsets[slot],
+					name.length);
+				nameOffsets[slot + 1] = nameOffsets[slot] + name.length;
+				final int i = order[slot], from = headerOffsets_[i],
+					length = getHeaderEnd(i) - from;
+				System.arraycopy(headers_, from, packedHeaders,
+					headerOffsets[slot], length);
+				headerOffsets[slot + 1] = headerOffsets[slot] + length;
+			}
+			return new ObjectList(words_.toArray(new String[words_.size()]),
+				packedNames, nameOffsets, packedHeaders, headerOffsets, 0,
+				objects, (count == 0) ? null : names_.get(count - 1));
+		}
+		
+		/**
+		 * Returns the order the objects should be stored in, ascending by
+		 * name.  Listings almost always arrive already sorted one way or
+		 * the other, so sorting is usually avoided altogether.
+		 */
+		private final int[] getSortOrder() {
+			final int count = names_.size();
+			final int[] order = new int[count];
+			boolean ascending = true, descending = true;
+			for(int i = 1; i < count && (ascending || descending); i++) {
+				final int c = names_.get(i - 1).compareTo(names_.get(i));
+				ascending &= c < 0;
+				descending &= c > 0;
+			}
+			if(ascending || descending) {
+				for(int i = 0; i < count; i++) {
+					order[i] = ascending ? i : count - 1 - i;
+				}
+				return order;
+			}
+			// A stable sort, so the first of any duplicates comes first.
+			final Integer[] boxed = new Integer[count];
+			for(int i = 0; i < count; i++) {
+				boxed[i] = i;
+			}
+			Arrays.sort(boxed, new Comparator<Integer>() {
+				@Override
+				public int compare(final Integer a, final Integer b) {
+					return names_.get(a).compareTo(names_.get(b));
+				}
+			});
+			for(int i = 0; i < count; i++) {
+				order[i] = boxed[i];
+			}
+			return order;
+		}
+		
+		private final int getHeaderEnd(final int i) {
+			return (i + 1 < names_.size()) ? headerOffsets_[i + 1] :
+				headerLength_;
+		}
+		
+		private final int intern(final String word) {
+			Integer index = dictionary_.get(word);
+			if(index == null) {
+				dictionary_.put(word, index = words_.size());
+				words_.add(word);
+			}
+			return index;
+		}
+		
+		private final void append(final int value) {
+			if(headerLength_ == headers_.length) {
+				headers_ = Arrays.copyOf(headers_, headers_.length * 2);
+			}
+			headers_[headerLength_++] = value;
+		}
+		
+	}
+	
 }
@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.entities;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streams an {@link ObjectList} to and from JSON without reflection.  On
+ * read, each object goes straight into the compact listing, without ever
+ * creating a {@link FileObject} or a map of its headers.
+ */
+final class ObjectListTypeAdapter extends TypeAdapter<ObjectList> {
+	
+	private static final String OBJECTS = "objects";
+	private static final String NAME = "name";
+	private static final String HEADERS = "headers";
+	
+	private final FileObjectTypeAdapter fileObjectAdapter_;
+	
+	ObjectListTypeAdapter(final FileObjectTypeAdapter fileObjectAdapter) {
+		fileObjectAdapter_ = fileObjectAdapter;
+	}
+	
+	@Override
+	public ObjectList read(final JsonReader in) throws IOException {
+		if(in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		final ObjectList.Builder builder = new ObjectList.Builder();
+		final Headers headers = new Headers();
+		in.beginObject();
+		while(in.hasNext()) {
+			if(OBJECTS.equals(in.nextName()) &&
+				in.peek() == JsonToken.BEGIN_ARRAY) {
+				in.beginArray();
+				while(in.hasNext()) {
+					readObject(in, builder, headers);
+				}
+				in.endArray();
+			} else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return builder.build();
+	}
+	
+	/**
+	 * Reads a single object into the builder.  The name may come after the
+	 * headers, so the headers are held in a reusable scratch space until
+	 * the end of the object.  Objects without a name are dropped.
+	 */
+	private static final void readObject(final JsonReader in,
+		final ObjectList.Builder builder, final Headers headers)
+		throws IOException {
+		if(in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return;
+		}
+		String name = null;
+		headers.clear();
+		in.beginObject();
+		while(in.hasNext()) {
+			switch(in.nextName()) {
+				case NAME:
+					if(in.peek() == JsonToken.NULL) {
+						in.nextNull();
+					} else {
+						name = in.nextString();
+					}
+					break;
+				case HEADERS:
+					readHeaders(in, headers);
+					break;
+				default:
+					in.skipValue();
+			}
+		}
+		in.endObject();
+		if(name != null) {
+			builder.addObject(name);
+			headers.addTo(builder);
+		}
+	}
+	
+	private static final void readHeaders(final JsonReader in,
+		final Headers headers) throws IOException {
+		if(in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return;
+		}
+		in.beginObject();
+		while(in.hasNext()) {
+			headers.addHeader(in.nextName());
+			// Tolerate a bare string, or null, in place of the array.
+			final JsonToken token = in.peek();
+			if(token == JsonToken.NULL) {
+				in.nextNull();
+			} else if(token != JsonToken.BEGIN_ARRAY) {
+				headers.addValue(in.nextString());
+			} else {
+				in.beginArray();
+				while(in.hasNext()) {
+					headers.addValue(in.nextString());
+				}
+				in.endArray();
+			}
+		}
+		in.endObject();
+	}
+	
+	@Override
+	public void write(final JsonWriter out, final ObjectList list)
+		throws IOException {
+		if(list == null) {
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		out.name(OBJECTS).beginArray();
+		for(final FileObject object : list.getObjectList()) {
+			fileObjectAdapter_.write(out, object);
+		}
+		out.endArray();
+		out.endObject();
+	}
+	
+	/**
+	 * The headers of the object being read, as each header name followed
+	 * by its values, along with the number of values of each header.
+	 */
+	private static final class Headers {
+		private final List<String> words_ = new ArrayList<>();
+		private int[] counts_ = new int[8];
+		private int headers_ = 0;
+		private void clear() {
+			words_.clear();
+			headers_ = 0;
+		}
+		private void addHeader(final String name) {
+			if(headers_ == counts_.length) {
+				counts_ = Arrays.copyOf(counts_, counts_.length * 2);
+			}
+			counts_[headers_++] = 0;
+			words_.add(name);
+		}
+		private void addValue(final String value) {
+			counts_[headers_ - 1]++;
+			words_.add(value);
+		}
+		private void addTo(final ObjectList.Builder builder) {
+			for(int h = 0, w = 0; h < headers_; h++) {
+				builder.addHeader(words_.get(w++));
+				for(int v = 0; v < counts_[h]; v++) {
+					builder.addHeaderValue(words_.get(w++));
+				}
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.events;
+
+import com.kolich.havalo.client.service.HavaloOperation;
+
+import java.net.URI;
+
+/**
+ * A read-only view of a single in flight, or completed, API request and
+ * the {@link System#nanoTime()} timestamps at which it reached each phase
+ * of its lifecycle.  The phases, in order:
+ * <ol>
+ * <li>start: the request was created</li>
+ * <li>signing: the request is about to be prepared and signed</li>
+ * <li>signed: the request was signed and is handed to the HttpClient,
+ * which leases a connection from its pool (connecting if needed), sends
+ * the request and waits for the response</li>
+ * <li>response: the response status line and headers were received</li>
+ * <li>converting: the response entity is about to be consumed and
+ * converted (streaming the body, Gson parsing, etc.)</li>
+ * <li>converted: the entity conversion finished</li>
+ * <li>complete: the request is complete, and the connection released</li>
+ * </ol>
+ * Phases not (yet) reached report {@link #NOT_REACHED}.
+ */
+public interface HavaloRequestEvent {
+	
+	public static final long NOT_REACHED = Long.MIN_VALUE;
+	
+	/**
+	 * Indicates there was no HTTP response (yet).
+	 */
+	public static final int NO_STATUS = -1;
+	
+	public HavaloOperation getOperation();
+	
+	/**
+	 * Returns the HTTP request method, or null if the request was never
+	 * prepared.
+	 */
+	public String getMethod();
+	
+	/**
+	 * Returns the final request URI, or null if the request was never
+	 * signed.
+	 */
+	public URI getUri();
+	
+	public int getStatusCode();
+	
+	/**
+	 * Returns true if the operation completed successfully, only
+	 * meaningful once the request is complete.
+	 */
+	public boolean isSuccess();
+	
+	public long getStartNanos();
+	
+	public long getSigningNanos();
+	
+	public long getSignedNanos();
+	
+	public long getResponseNanos();
+	
+	public long getConvertingNanos();
+	
+	public long getConvertedNanos();
+	
+	public long getCompleteNanos();
+	
+}
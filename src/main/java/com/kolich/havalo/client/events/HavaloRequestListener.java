@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.events;
+
+/**
+ * Called by a {@link com.kolich.havalo.client.service.HavaloClient} as each
+ * request moves through the phases of its lifecycle, see
+ * {@link HavaloRequestEvent}.  Listeners are called synchronously on the
+ * thread making the request, so they must be thread-safe and cheap.  Each
+ * callback has an empty default implementation, override the ones you
+ * care about.
+ */
+public interface HavaloRequestListener {
+	
+	public default void onStart(final HavaloRequestEvent event) {}
+	
+	public default void onSigned(final HavaloRequestEvent event) {}
+	
+	public default void onResponse(final HavaloRequestEvent event) {}
+	
+	public default void onConverted(final HavaloRequestEvent event) {}
+	
+	public default void onComplete(final HavaloRequestEvent event) {}
+	
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.events;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.kolich.havalo.client.events.HavaloRequestEvent.NOT_REACHED;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Logs a warning, with the full phase breakdown, for every request that
+ * took at least a given amount of time to complete.
+ */
+public final class HavaloSlowRequestLogger implements HavaloRequestListener {
+	
+	private static final Logger logger__ =
+		LoggerFactory.getLogger(HavaloSlowRequestLogger.class);
+	
+	private final long thresholdNanos_;
+	
+	public HavaloSlowRequestLogger(final long thresholdMs) {
+		checkArgument(thresholdMs >= 0L, "Slow request threshold cannot " +
+			"be negative!");
+		thresholdNanos_ = MILLISECONDS.toNanos(thresholdMs);
+	}
+	
+	@Override
+	public void onComplete(final HavaloRequestEvent e) {
+		final long total = e.getCompleteNanos() - e.getStartNanos();
+		if(total < thresholdNanos_ || !logger__.isWarnEnabled()) {
+			return;
+		}
+		logger__.warn(String.format("Slow Havalo request: %s %s %s -> %d " +
+			"(%s) in %s [setup=%s, signing=%s, send+wait=%s, " +
+			"convert=%s, release=%s]", e.getOperation(), e.getMethod(),
+			e.getUri(), e.getStatusCode(), e.isSuccess() ? "success" :
+				"failure", millis(total),
+			phase(e.getStartNanos(), e.getSigningNanos()),
+			phase(e.getSigningNanos(), e.getSignedNanos()),
+			phase(e.getSignedNanos(), e.getResponseNanos()),
+			phase(e.getConvertingNanos(), e.getConvertedNanos()),
+			phase(e.getConvertedNanos(), e.getCompleteNanos())));
+	}
+	
+	private static final String phase(final long from, final long to) {
+		return (from == NOT_REACHED || to == NOT_REACHED) ? "-" :
+			millis(to - from);
+	}
+	
+	private static final String millis(final long nanos) {
+		return String.format("%.3fms", nanos / 1000000.0d);
+	}
+	
+}
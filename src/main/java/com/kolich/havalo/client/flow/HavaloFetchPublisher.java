@@ -0,0 +1,261 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.flow;
+
+import com.kolich.common.functional.either.Either;
+import com.kolich.common.functional.either.Left;
+import com.kolich.havalo.client.entities.FileObject;
+import com.kolich.havalo.client.service.HavaloClient;
+import com.kolich.havalo.client.service.HavaloKey;
+import com.kolich.havalo.client.service.HavaloObject;
+import com.kolich.http.common.response.HttpFailure;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.kolich.havalo.client.flow.HavaloFlow.addDemand;
+
+/**
+ * Fetches the body of every {@link FileObject} published upstream, usually
+ * by a {@link HavaloListingPublisher}, with {@link HavaloClient#getObject(HavaloKey)},
+ * and publishes the results in the same order.  Objects are only
+ * requested from upstream, and so only fetched, as the subscriber asks for
+ * results, and at most maxInFlight are fetched (or held, fetched but not
+ * yet delivered) at once.  That way the whole pipeline is held back by its
+ * slowest subscriber, and memory is bounded by maxInFlight objects.  A
+ * failed fetch, for example an object deleted since it was listed, is
+ * published as a failure and doesn't end the stream; an upstream error
+ * does, once every object before it has been published.
+ */
+public final class HavaloFetchPublisher
+	implements HavaloFlow.Publisher<Either<HttpFailure,HavaloObject>> {
+	
+	private final HavaloClient client_;
+	private final Executor executor_;
+	private final HavaloFlow.Publisher<? extends FileObject> upstream_;
+	private final int maxInFlight_;
+	
+	public HavaloFetchPublisher(final HavaloClient client,
+		final Executor executor,
+		final HavaloFlow.Publisher<? extends FileObject> upstream,
+		final int maxInFlight) {
+		checkArgument(maxInFlight > 0, "Max in flight must be greater " +
+			"than zero!");
+		client_ = checkNotNull(client, "The client cannot be null!");
+		executor_ = checkNotNull(executor, "The executor cannot be null!");
+		upstream_ = checkNotNull(upstream, "The upstream cannot be null!");
+		maxInFlight_ = maxInFlight;
+	}
+	
+	public HavaloFetchPublisher(final HavaloClient client,
+		final HavaloFlow.Publisher<? extends FileObject> upstream,
+		final int maxInFlight) {
+		this(client, HavaloFlow.DEFAULT_EXECUTOR, upstream, maxInFlight);
+	}
+	
+	@Override
+	public void subscribe(final HavaloFlow.Subscriber<? super
+		Either<HttpFailure,HavaloObject>> subscriber) {
+		checkNotNull(subscriber, "The subscriber cannot be null!");
+		final FetchSubscription subscription =
+			new FetchSubscription(subscriber);
+		subscriber.onSubscribe(subscription);
+		upstream_.subscribe(subscription);
+	}
+	
+	private final class FetchSubscription implements HavaloFlow.Subscription,
+		HavaloFlow.Subscriber<FileObject> {
+		
+		private final HavaloFlow.Subscriber<? super
+			Either<HttpFailure,HavaloObject>> subscriber_;
+		
+		/**
+		 * Fetches, in upstream order, completed or not.
+		 */
+		private final Queue<CompletableFuture<Either<HttpFailure,HavaloObject>>>
+			fetches_ = new ConcurrentLinkedQueue<>();
+		
+		private final AtomicLong demand_ = new AtomicLong(0L);
+		
+		/**
+		 * Serializes every signal to the subscriber, and every request
+		 * upstream, onto one drain at a time.
+		 */
+		private final AtomicInteger wip_ = new AtomicInteger(0);
+		
+		private volatile HavaloFlow.Subscription upstream_ = null;
+		private volatile boolean upstreamDone_ = false;
+		private volatile Throwable error_ = null;
+		private volatile boolean cancelled_ = false;
+		
+		// Only touched from within drain().
+		private int outstanding_ = 0;
+		private boolean done_ = false;
+		
+		private FetchSubscription(final HavaloFlow.Subscriber<? super
+			Either<HttpFailure,HavaloObject>> subscriber) {
+			subscriber_ = subscriber;
+		}
+		
+		// Downstream
+		
+		@Override
+		public void request(final long n) {
+			if(n <= 0L) {
+				error_ = new IllegalArgumentException("Requested " +
+					"non-positive number of objects: " + n);
+				upstreamDone_ = true;
+				fetches_.clear();
+			} else {
+				long d;
+				while(!demand_.compareAndSet(d = demand_.get(),
+					addDemand(d, n))) {
+					// Lost the race, try again.
+				}
+			}
+			drain();
+		}
+		
+		@Override
+		public void cancel() {
+			cancelled_ = true;
+			final HavaloFlow.Subscription upstream = upstream_;
+			if(upstream != null) {
+				upstream.cancel();
+			}
+		}
+		
+		// Upstream
+		
+		@Override
+		public void onSubscribe(final HavaloFlow.Subscription subscription) {
+			if(upstream_ != null || cancelled_) {
+				subscription.cancel();
+				return;
+			}
+			upstream_ = subscription;
+			drain();
+		}
+		
+		@Override
+		public void onNext(final FileObject object) {
+			final HavaloKey key = HavaloKey.fromName(object.getName());
+			final CompletableFuture<Either<HttpFailure,HavaloObject>> fetch =
+				new CompletableFuture<>();
+			fetches_.add(fetch);
+			executor_.execute(() -> {
+				try {
+					fetch.complete(client_.getObject(key));
+				} catch (Exception e) {
+					fetch.complete(Left.left(new HttpFailure(e)));
+				}
+				drain();
+			});
+		}
+		
+		@Override
+		public void onError(final Throwable throwable) {
+			error_ = throwable;
+			upstreamDone_ = true;
+			drain();
+		}
+		
+		@Override
+		public void onComplete() {
+			upstreamDone_ = true;
+			drain();
+		}
+		
+		private void drain() {
+			if(wip_.getAndIncrement() != 0) {
+				return;
+			}
+			int missed = 1;
+			do {
+				if(!done_) {
+					emit();
+				}
+				missed = wip_.addAndGet(-missed);
+			} while(missed != 0);
+		}
+		
+		private void emit() {
+			if(cancelled_) {
+				done_ = true;
+				fetches_.clear();
+				return;
+			}
+			final long requested = demand_.get();
+			long emitted = 0L;
+			CompletableFuture<Either<HttpFailure,HavaloObject>> head;
+			while(emitted != requested && (head = fetches_.peek()) != null &&
+				head.isDone()) {
+				fetches_.poll();
+				outstanding_--;
+				subscriber_.onNext(head.join());
+				emitted++;
+				if(cancelled_) {
+					return;
+				}
+			}
+			if(requested != Long.MAX_VALUE && emitted > 0L) {
+				demand_.addAndGet(-emitted);
+			}
+			if(upstreamDone_ && fetches_.isEmpty()) {
+				done_ = true;
+				if(error_ != null) {
+					final HavaloFlow.Subscription upstream = upstream_;
+					if(upstream != null) {
+						upstream.cancel();
+					}
+					subscriber_.onError(error_);
+				} else {
+					subscriber_.onComplete();
+				}
+				return;
+			}
+			// Ask upstream for more, but never for more than is wanted
+			// downstream, or than may be fetched at once.
+			final HavaloFlow.Subscription upstream = upstream_;
+			if(upstream != null && !upstreamDone_) {
+				final long wanted = Math.min(maxInFlight_,
+					demand_.get()) - outstanding_;
+				if(wanted > 0L) {
+					outstanding_ += (int)wanted;
+					upstream.request(wanted);
+				}
+			}
+		}
+		
+	}
+	
+}
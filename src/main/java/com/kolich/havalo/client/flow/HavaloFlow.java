@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.flow;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The Reactive Streams interfaces, with the same methods as (the Java 9
+ * and later) <code>java.util.concurrent.Flow</code>, for the client's Java
+ * 8 target.  They are distinct types though, so bridging a publisher here
+ * to a <code>Flow.Publisher</code>, or an
+ * <code>org.reactivestreams.Publisher</code>, takes a small adapter that
+ * wraps the subscriber on the way in and the subscription on the way out,
+ * each method simply delegating to its counterpart; see the README.
+ */
+public final class HavaloFlow {
+	
+	private static final String FLOW_THREAD_NAME = "havalo-flow-%d";
+	
+	/**
+	 * Runs every publisher that isn't given its own executor.  Publishers
+	 * only ever run as much work as their subscribers have asked for.
+	 */
+	static final ExecutorService DEFAULT_EXECUTOR =
+		Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+			.setNameFormat(FLOW_THREAD_NAME).setDaemon(true).build());
+	
+	private HavaloFlow() {}
+	
+	public interface Publisher<T> {
+		void subscribe(Subscriber<? super T> subscriber);
+	}
+	
+	public interface Subscriber<T> {
+		void onSubscribe(Subscription subscription);
+		void onNext(T item);
+		void onError(Throwable throwable);
+		void onComplete();
+	}
+	
+	public interface Subscription {
+		void request(long n);
+		void cancel();
+	}
+	
+	/**
+	 * Adds n to the given demand, capped at Long.MAX_VALUE, which means
+	 * unbounded.
+	 */
+	static final long addDemand(final long demand, final long n) {
+		final long sum = demand + n;
+		return (sum < 0L) ? Long.MAX_VALUE : sum;
+	}
+	
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.flow;
+
+import com.kolich.common.functional.either.Either;
+import com.kolich.havalo.client.HavaloClientException;
+import com.kolich.havalo.client.entities.FileObject;
+import com.kolich.havalo.client.entities.ObjectList;
+import com.kolich.havalo.client.service.HavaloClient;
+import com.kolich.havalo.client.service.HavaloKey;
+import com.kolich.http.common.response.HttpFailure;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.kolich.havalo.client.flow.HavaloFlow.addDemand;
+
+/**
+ * Publishes every object whose name starts with a prefix, one page of
+ * {@link HavaloClient#listObjects(int, String, HavaloKey)} at a time, paged
+ * exactly like a {@link com.kolich.havalo.client.service.HavaloListingIterator}:
+ * pages come in the order the API lists them, objects within a page in
+ * {@link FileObject} (reverse name) order.  A page is only requested once
+ * the subscriber has asked for more objects than are left on the current
+ * page, so a slow subscriber holds back the listing itself.  A failed page
+ * request, or an API that ignores the listing marker, is signalled as a
+ * {@link HavaloClientException}.  Every subscriber gets its own listing.
+ */
+public final class HavaloListingPublisher
+	implements HavaloFlow.Publisher<FileObject> {
+	
+	private final HavaloClient client_;
+	private final Executor executor_;
+	private final int pageSize_;
+	private final HavaloKey prefix_;
+	
+	public HavaloListingPublisher(final HavaloClient client,
+		final Executor executor, final int pageSize, final HavaloKey prefix) {
+		checkArgument(pageSize > 0, "Page size must be greater than zero!");
+		client_ = checkNotNull(client, "The client cannot be null!");
+		executor_ = checkNotNull(executor, "The executor cannot be null!");
+		pageSize_ = pageSize;
+		prefix_ = prefix;
+	}
+	
+	public HavaloListingPublisher(final HavaloClient client,
+		final int pageSize, final HavaloKey prefix) {
+		this(client, HavaloFlow.DEFAULT_EXECUTOR, pageSize, prefix);
+	}
+	
+	public HavaloListingPublisher(final HavaloClient client,
+		final int pageSize, final String... path) {
+		this(client, pageSize, (path == null || path.length == 0) ? null :
+			HavaloKey.of(path));
+	}
+	
+	@Override
+	public void subscribe(
+		final HavaloFlow.Subscriber<? super FileObject> subscriber) {
+		checkNotNull(subscriber, "The subscriber cannot be null!");
+		subscriber.onSubscribe(new ListingSubscription(subscriber));
+	}
+	
+	private final class ListingSubscription
+		implements HavaloFlow.Subscription, Runnable {
+		
+		private final HavaloFlow.Subscriber<? super FileObject> subscriber_;
+		
+		private final AtomicLong demand_ = new AtomicLong(0L);
+		
+		/**
+		 * Serializes every signal to the subscriber onto one run of
+		 * {@link #run()} at a time.
+		 */
+		private final AtomicInteger wip_ = new AtomicInteger(0);
+		
+		private volatile boolean cancelled_ = false;
+		private volatile Throwable invalid_ = null;
+		
+		// Only touched from within run().
+		private ObjectList page_ = null;
+		private int index_ = 0;
+		private String marker_ = null;
+		private boolean last_ = false;
+		private boolean done_ = false;
+		
+		private ListingSubscription(
+			final HavaloFlow.Subscriber<? super FileObject> subscriber) {
+			subscriber_ = subscriber;
+		}
+		
+		@Override
+		public void request(final long n) {
+			if(n <= 0L) {
+				invalid_ = new IllegalArgumentException("Requested " +
+					"non-positive number of objects: " + n);
+			} else {
+				long d;
+				while(!demand_.compareAndSet(d = demand_.get(),
+					addDemand(d, n))) {
+					// Lost the race, try again.
+				}
+			}
+			schedule();
+		}
+		
+		@Override
+		public void cancel() {
+			cancelled_ = true;
+		}
+		
+		private void schedule() {
+			if(wip_.getAndIncrement() == 0) {
+				executor_.execute(this);
+			}
+		}
+		
+		@Override
+		public void run() {
+			int missed = 1;
+			do {
+				if(!done_ && !cancelled_) {
+					drain();
+				}
+				missed = wip_.addAndGet(-missed);
+			} while(missed != 0);
+		}
+		
+		private void drain() {
+			if(invalid_ != null) {
+				terminate(invalid_);
+				return;
+			}
+			final long requested = demand_.get();
+			long emitted = 0L;
+			while(!cancelled_) {
+				if(page_ == null || index_ >= page_.size()) {
+					if(last_) {
+						terminate(null);
+						return;
+					} else if(emitted == requested) {
+						// Don't fetch the next page until it's wanted.
+						break;
+					}
+					try {
+						nextPage();
+					} catch (Exception e) {
+						terminate(e);
+						return;
+					}
+					continue;
+				} else if(emitted == requested) {
+					break;
+				}
+				subscriber_.onNext(page_.get(index_++));
+				emitted++;
+			}
+			if(requested != Long.MAX_VALUE) {
+				demand_.addAndGet(-emitted);
+			}
+		}
+		
+		private void nextPage() {
+			final Either<HttpFailure,ObjectList> page =
+				client_.listObjects(pageSize_, marker_, prefix_);
+			if(!page.success()) {
+				throw new HavaloClientException("Failed to list objects " +
+					"(status=" + page.left().getStatusCode() + ")",
+					page.left().getCause());
+			}
+			if(marker_ != null && page.right().getObject(marker_) != null) {
+				throw new HavaloClientException("Page of objects did not " +
+					"start after its marker, the API does not honor " +
+					"listing markers: " + marker_);
+			}
+			page_ = page.right();
+			index_ = 0;
+			// A page larger than asked for means the limit was ignored,
+			// and so everything has been listed already.
+			last_ = page_.size() != pageSize_;
+			marker_ = page_.getLastListedName();
+		}
+		
+		private void terminate(final Throwable error) {
+			done_ = true;
+			page_ = null;
+			if(error == null) {
+				subscriber_.onComplete();
+			} else {
+				subscriber_.onError(error);
+			}
+		}
+		
+	}
+	
+}
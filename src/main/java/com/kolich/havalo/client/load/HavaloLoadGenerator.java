@@ -0,0 +1,512 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.load;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.kolich.common.functional.either.Either;
+import com.kolich.havalo.client.HavaloClientException;
+import com.kolich.havalo.client.embedded.HavaloEmbeddedServer;
+import com.kolich.havalo.client.metrics.LatencyHistogram;
+import com.kolich.havalo.client.service.HavaloClient;
+import com.kolich.http.common.response.HttpFailure;
+import org.apache.http.Header;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.commons.io.output.NullOutputStream.NULL_OUTPUT_STREAM;
+
+/**
+ * Drives a configurable mix of reads, writes, listings and deletes through
+ * a {@link HavaloClient} and reports throughput and latency percentiles.
+ * Keys are chosen uniformly or following a Zipfian distribution, object
+ * sizes are fixed or uniformly distributed.
+ * 
+ * Runs closed-loop by default, where each worker thread issues its next
+ * request as soon as the previous one completes.  Given a target rate the
+ * run is open-loop instead: requests are scheduled at fixed intervals, and
+ * latency is measured from when a request was supposed to be sent, so a
+ * stalled server shows up in the percentiles rather than silently slowing
+ * the request rate (coordinated omission).
+ * 
+ * Can also be run from the command line, see {@link #main(String[])}.
+ */
+public final class HavaloLoadGenerator {
+	
+	private static final String LOAD_THREAD_NAME = "havalo-load-%d";
+	
+	/**
+	 * Keys are spread over this many "directories", listings only ever
+	 * list one of them.
+	 */
+	private static final int LIST_BUCKETS = 100;
+	
+	private static final Header[] NO_HEADERS = new Header[0];
+	
+	private final HavaloClient client_;
+	private final Map<HavaloLoadOperation,Integer> mix_;
+	private final int totalWeight_;
+	private final int minSize_;
+	private final int maxSize_;
+	private final int keys_;
+	private final ZipfianGenerator zipfian_;
+	private final String prefix_;
+	private final int concurrency_;
+	private final double rate_;
+	private final long warmupNanos_;
+	private final long durationNanos_;
+	private final boolean preload_;
+	
+	private final byte[] payload_;
+	
+	private HavaloLoadGenerator(final Builder builder) {
+		client_ = checkNotNull(builder.client_, "The client cannot be null!");
+		mix_ = new EnumMap<>(builder.mix_);
+		int totalWeight = 0;
+		for(final int weight : mix_.values()) {
+			totalWeight += weight;
+		}
+		checkArgument(totalWeight > 0, "The operation mix cannot be empty!");
+		totalWeight_ = totalWeight;
+		minSize_ = builder.minSize_;
+		maxSize_ = builder.maxSize_;
+		keys_ = builder.keys_;
+		zipfian_ = (builder.theta_ > 0.0d) ?
+			new ZipfianGenerator(keys_, builder.theta_) : null;
+		prefix_ = builder.prefix_;
+		concurrency_ = builder.concurrency_;
+		rate_ = builder.rate_;
+		warmupNanos_ = builder.warmupNanos_;
+		durationNanos_ = builder.durationNanos_;
+		preload_ = builder.preload_;
+		payload_ = new byte[maxSize_];
+		new Random(0L).nextBytes(payload_);
+	}
+	
+	/**
+	 * Runs the workload to completion, blocking the calling thread for the
+	 * warmup plus the measured duration (and the preload, if enabled).
+	 */
+	public HavaloLoadReport run() throws InterruptedException {
+		if(preload_) {
+			preload();
+		}
+		final Map<HavaloLoadOperation,LatencyHistogram> latencies =
+			new EnumMap<>(HavaloLoadOperation.class);
+		final Map<HavaloLoadOperation,LongAdder> errors =
+			new EnumMap<>(HavaloLoadOperation.class);
+		for(final HavaloLoadOperation operation : mix_.keySet()) {
+			latencies.put(operation, new LatencyHistogram());
+			errors.put(operation, new LongAdder());
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(
+			concurrency_, new ThreadFactoryBuilder()
+				.setNameFormat(LOAD_THREAD_NAME).setDaemon(true).build());
+		final long start = System.nanoTime();
+		final long measureFrom = start + warmupNanos_;
+		final long end = measureFrom + durationNanos_;
+		// Open-loop only: the next request "ticket", each ticket is due at
+		// start + ticket * interval.
+		final AtomicLong tickets = new AtomicLong(0L);
+		final double intervalNanos = (rate_ > 0.0d) ?
+			SECONDS.toNanos(1L) / rate_ : 0.0d;
+		try {
+			final List<Future<?>> workers = new ArrayList<>(concurrency_);
+			for(int i = 0; i < concurrency_; i++) {
+				workers.add(executor.submit(() -> {
+					final Random random = ThreadLocalRandom.current();
+					while(!Thread.currentThread().isInterrupted()) {
+						final long due;
+						if(rate_ > 0.0d) {
+							due = start + (long)(tickets.getAndIncrement() *
+								intervalNanos);
+							if(due >= end) {
+								break;
+							}
+							final long wait = due - System.nanoTime();
+							if(wait > 0L) {
+								LockSupport.parkNanos(wait);
+							}
+						} else if((due = System.nanoTime()) >= end) {
+							break;
+						}
+						final HavaloLoadOperation operation =
+							nextOperation(random);
+						final boolean success = execute(operation, random);
+						final long latency = System.nanoTime() - due;
+						if(due >= measureFrom) {
+							latencies.get(operation).record(latency);
+							if(!success) {
+								errors.get(operation).increment();
+							}
+						}
+					}
+					return null;
+				}));
+			}
+			for(final Future<?> worker : workers) {
+				worker.get();
+			}
+		} catch (ExecutionException e) {
+			throw new HavaloClientException("Load generator worker failed.",
+				e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		final Map<HavaloLoadOperation,Long> errorCounts =
+			new EnumMap<>(HavaloLoadOperation.class);
+		for(final Map.Entry<HavaloLoadOperation,LongAdder> e :
+			errors.entrySet()) {
+			errorCounts.put(e.getKey(), e.getValue().sum());
+		}
+		return new HavaloLoadReport(durationNanos_, concurrency_, rate_,
+			latencies, errorCounts);
+	}
+	
+	/**
+	 * Writes every key once, so reads don't start out as 404's.
+	 */
+	private void preload() {
+		final Random random = new Random(0L);
+		for(int key = 0; key < keys_; key++) {
+			final Either<HttpFailure,?> put = put(key, random);
+			if(!put.success()) {
+				throw new HavaloClientException("Failed to preload key " +
+					key + ": " + put.left().getStatusCode(),
+					put.left().getCause());
+			}
+		}
+	}
+	
+	private boolean execute(final HavaloLoadOperation operation,
+		final Random random) {
+		final int key = nextKey(random);
+		final Either<HttpFailure,?> result;
+		switch(operation) {
+			case READ:
+				result = client_.getObject(NULL_OUTPUT_STREAM, getPath(key));
+				break;
+			case WRITE:
+				result = put(key, random);
+				break;
+			case LIST:
+				result = client_.listObjects(prefix_, getBucket(key));
+				break;
+			case DELETE:
+				result = client_.deleteObject(getPath(key));
+				break;
+			default:
+				throw new IllegalStateException("Unknown operation: " +
+					operation);
+		}
+		return result.success();
+	}
+	
+	private Either<HttpFailure,?> put(final int key, final Random random) {
+		final int size = (maxSize_ > minSize_) ?
+			minSize_ + random.nextInt(maxSize_ - minSize_ + 1) : minSize_;
+		return client_.putObject(new ByteArrayInputStream(payload_, 0, size),
+			size, NO_HEADERS, getPath(key));
+	}
+	
+	private HavaloLoadOperation nextOperation(final Random random) {
+		int pick = random.nextInt(totalWeight_);
+		for(final Map.Entry<HavaloLoadOperation,Integer> e :
+			mix_.entrySet()) {
+			if((pick -= e.getValue()) < 0) {
+				return e.getKey();
+			}
+		}
+		throw new IllegalStateException("Operation weights changed?");
+	}
+	
+	private int nextKey(final Random random) {
+		return (zipfian_ != null) ? zipfian_.next(random) :
+			random.nextInt(keys_);
+	}
+	
+	private String[] getPath(final int key) {
+		return new String[]{prefix_, getBucket(key), "key-" + key};
+	}
+	
+	private static final String getBucket(final int key) {
+		return String.format("%02d", key % LIST_BUCKETS);
+	}
+	
+	public static final class Builder {
+		
+		private HavaloClient client_ = null;
+		private final Map<HavaloLoadOperation,Integer> mix_ =
+			new EnumMap<>(HavaloLoadOperation.class);
+		private int minSize_ = 1024;
+		private int maxSize_ = 1024;
+		private int keys_ = 1000;
+		private double theta_ = 0.0d;
+		private String prefix_ = "loadgen";
+		private int concurrency_ = 8;
+		private double rate_ = 0.0d;
+		private long warmupNanos_ = SECONDS.toNanos(10L);
+		private long durationNanos_ = SECONDS.toNanos(60L);
+		private boolean preload_ = true;
+		
+		public Builder setClient(final HavaloClient client) {
+			client_ = client;
+			return this;
+		}
+		
+		/**
+		 * Sets the relative weight of an operation in the mix, zero
+		 * removes it.  Defaults to reads only.
+		 */
+		public Builder setWeight(final HavaloLoadOperation operation,
+			final int weight) {
+			checkNotNull(operation, "The operation cannot be null!");
+			checkArgument(weight >= 0, "Weight cannot be negative!");
+			if(weight == 0) {
+				mix_.remove(operation);
+			} else {
+				mix_.put(operation, weight);
+			}
+			return this;
+		}
+		
+		/**
+		 * Written objects are uniformly sized between min and max bytes,
+		 * inclusive.
+		 */
+		public Builder setObjectSize(final int minSize, final int maxSize) {
+			checkArgument(minSize >= 0 && maxSize >= minSize, "Invalid " +
+				"object size range!");
+			minSize_ = minSize;
+			maxSize_ = maxSize;
+			return this;
+		}
+		
+		public Builder setObjectSize(final int size) {
+			return setObjectSize(size, size);
+		}
+		
+		/**
+		 * The number of distinct keys, chosen uniformly.
+		 */
+		public Builder setKeys(final int keys) {
+			checkArgument(keys > 0, "Key count must be greater than zero!");
+			keys_ = keys;
+			theta_ = 0.0d;
+			return this;
+		}
+		
+		/**
+		 * The number of distinct keys, chosen following a Zipfian
+		 * distribution with the given skew.
+		 */
+		public Builder setZipfianKeys(final int keys, final double theta) {
+			setKeys(keys);
+			theta_ = theta;
+			return this;
+		}
+		
+		/**
+		 * The path prefix every key is written under.
+		 */
+		public Builder setPrefix(final String prefix) {
+			prefix_ = checkNotNull(prefix, "The prefix cannot be null!");
+			return this;
+		}
+		
+		/**
+		 * The number of worker threads, and so the maximum number of
+		 * requests in flight.
+		 */
+		public Builder setConcurrency(final int concurrency) {
+			checkArgument(concurrency > 0, "Concurrency must be greater " +
+				"than zero!");
+			concurrency_ = concurrency;
+			return this;
+		}
+		
+		/**
+		 * The target request rate in operations per second across all
+		 * workers, or zero to run closed-loop.
+		 */
+		public Builder setRate(final double rate) {
+			checkArgument(rate >= 0.0d, "Rate cannot be negative!");
+			rate_ = rate;
+			return this;
+		}
+		
+		public Builder setWarmup(final long warmup,
+			final TimeUnit unit) {
+			warmupNanos_ = unit.toNanos(warmup);
+			return this;
+		}
+		
+		public Builder setDuration(final long duration,
+			final TimeUnit unit) {
+			durationNanos_ = unit.toNanos(duration);
+			return this;
+		}
+		
+		/**
+		 * Whether to write every key once before the run starts, on by
+		 * default.
+		 */
+		public Builder setPreload(final boolean preload) {
+			preload_ = preload;
+			return this;
+		}
+		
+		public HavaloLoadGenerator build() {
+			if(mix_.isEmpty()) {
+				mix_.put(HavaloLoadOperation.READ, 1);
+			}
+			return new HavaloLoadGenerator(this);
+		}
+		
+	}
+	
+	/**
+	 * Usage, every argument is optional:
+	 * 
+	 * <pre>
+	 * --url=http://localhost:8080/havalo/api --key=... --secret=...
+	 *     Endpoint and credentials, defaults to a local embedded server.
+	 * --mix=read:80,write:15,list:4,delete:1
+	 * --size=1024 or --size=1024:65536
+	 * --keys=1000
+	 * --distribution=uniform or --distribution=zipfian[:0.99]
+	 * --concurrency=8
+	 * --rate=500          Operations per second, omit to run closed-loop.
+	 * --warmup=10         Seconds.
+	 * --duration=60       Seconds.
+	 * --preload=true
+	 * --json              Print the report as JSON.
+	 * </pre>
+	 */
+	public static void main(final String[] args) throws Exception {
+		String url = null, key = null, secret = null;
+		String distribution = "uniform";
+		int keys = 1000;
+		int concurrency = 8;
+		boolean json = false;
+		final Builder builder = new Builder();
+		for(final String arg : args) {
+			final String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+			final String value = (kv.length > 1) ? kv[1] : "";
+			switch(kv[0]) {
+				case "url": url = value; break;
+				case "key": key = value; break;
+				case "secret": secret = value; break;
+				case "mix":
+					for(final String op : value.split(",")) {
+						final String[] weight = op.split(":", 2);
+						builder.setWeight(HavaloLoadOperation.valueOf(
+							weight[0].toUpperCase()),
+							Integer.parseInt(weight[1]));
+					}
+					break;
+				case "size": {
+					final String[] size = value.split(":", 2);
+					builder.setObjectSize(Integer.parseInt(size[0]),
+						Integer.parseInt(size[size.length - 1]));
+					break;
+				}
+				case "keys": keys = Integer.parseInt(value); break;
+				case "distribution": distribution = value; break;
+				case "concurrency":
+					concurrency = Integer.parseInt(value);
+					break;
+				case "rate": builder.setRate(Double.parseDouble(value)); break;
+				case "warmup":
+					builder.setWarmup(Long.parseLong(value), SECONDS);
+					break;
+				case "duration":
+					builder.setDuration(Long.parseLong(value), SECONDS);
+					break;
+				case "preload":
+					builder.setPreload(Boolean.parseBoolean(value));
+					break;
+				case "json": json = true; break;
+				default:
+					throw new IllegalArgumentException("Unknown argument: " +
+						arg);
+			}
+		}
+		if(distribution.startsWith("zipfian")) {
+			final String[] theta = distribution.split(":", 2);
+			builder.setZipfianKeys(keys, (theta.length > 1) ?
+				Double.parseDouble(theta[1]) :
+				ZipfianGenerator.DEFAULT_THETA);
+		} else {
+			builder.setKeys(keys);
+		}
+		builder.setConcurrency(concurrency);
+		HavaloEmbeddedServer embedded = null;
+		if(url == null) {
+			embedded = new HavaloEmbeddedServer.Builder().build().start();
+			url = embedded.getApiUrl();
+			key = embedded.getAdminCredentials().getKey().toString();
+			secret = embedded.getAdminCredentials().getSecret();
+		}
+		// Size the connection pool so it never limits concurrency.
+		final CloseableHttpClient httpClient = HttpClients.custom()
+			.useSystemProperties()
+			.setMaxConnTotal(concurrency)
+			.setMaxConnPerRoute(concurrency)
+			.build();
+		try {
+			final HavaloLoadReport report = builder
+				.setClient(new HavaloClient(httpClient, key, secret, url))
+				.build().run();
+			System.out.println(json ? report.toJson() : report.toString());
+		} finally {
+			httpClient.close();
+			if(embedded != null) {
+				embedded.close();
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.load;
+
+import com.google.gson.GsonBuilder;
+import com.kolich.havalo.client.metrics.LatencyHistogram;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * The results of a {@link HavaloLoadGenerator} run: throughput, error
+ * counts and latency percentiles for each operation and for all operations
+ * combined, printable as plain text or JSON.  Latencies are reported in
+ * milliseconds.
+ */
+public final class HavaloLoadReport {
+	
+	private static final String TOTAL = "TOTAL";
+	
+	private static final double NANOS_PER_MS = MILLISECONDS.toNanos(1L);
+	
+	private static final String TEXT_HEADER_FORMAT =
+		"%-20s %10s %8s %10s %9s %9s %9s %9s %9s%n";
+	private static final String TEXT_ROW_FORMAT =
+		"%-20s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n";
+	
+	private final long durationNanos_;
+	private final int concurrency_;
+	private final double targetRate_;
+	private final Map<String,OperationReport> operations_;
+	private final OperationReport total_;
+	
+	/**
+	 * Latencies and error counts are keyed by operation, typically a
+	 * {@link HavaloLoadOperation} or a
+	 * {@link com.kolich.havalo.client.service.HavaloOperation}, and
+	 * reported in iteration order.
+	 */
+	public <K extends Enum<K>> HavaloLoadReport(final long durationNanos,
+		final int concurrency, final double targetRate,
+		final Map<K,LatencyHistogram> latencies, final Map<K,Long> errors) {
+		durationNanos_ = durationNanos;
+		concurrency_ = concurrency;
+		targetRate_ = targetRate;
+		final LatencyHistogram total = new LatencyHistogram();
+		long totalErrors = 0L;
+		final Map<String,OperationReport> operations = new LinkedHashMap<>();
+		for(final Map.Entry<K,LatencyHistogram> e : latencies.entrySet()) {
+			final long opErrors = errors.containsKey(e.getKey()) ?
+				errors.get(e.getKey()) : 0L;
+			operations.put(e.getKey().name(), new OperationReport(
+				e.getValue(), opErrors, durationNanos));
+			total.merge(e.getValue());
+			totalErrors += opErrors;
+		}
+		operations_ = Collections.unmodifiableMap(operations);
+		total_ = new OperationReport(total, totalErrors, durationNanos);
+	}
+	
+	public double getDurationSeconds() {
+		return (double)durationNanos_ / SECONDS.toNanos(1L);
+	}
+	
+	public int getConcurrency() {
+		return concurrency_;
+	}
+	
+	/**
+	 * The target request rate, in operations per second, or zero if the
+	 * run was closed-loop.
+	 */
+	public double getTargetRate() {
+		return targetRate_;
+	}
+	
+	public Map<String,OperationReport> getOperations() {
+		return operations_;
+	}
+	
+	public OperationReport getTotal() {
+		return total_;
+	}
+	
+	public String toJson() {
+		final Map<String,Object> json = new LinkedHashMap<>();
+		json.put("durationSeconds", getDurationSeconds());
+		json.put("concurrency", concurrency_);
+		json.put("targetRate", targetRate_);
+		final Map<String,Object> operations = new LinkedHashMap<>();
+		for(final Map.Entry<String,OperationReport> e :
+			operations_.entrySet()) {
+			operations.put(e.getKey(), e.getValue().toMap());
+		}
+		operations.put(TOTAL, total_.toMap());
+		json.put("operations", operations);
+		return new GsonBuilder().setPrettyPrinting().create().toJson(json);
+	}
+	
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(String.format("Duration: %.1fs, concurrency: %d, " +
+			"target rate: %s%n", getDurationSeconds(), concurrency_,
+			(targetRate_ > 0.0d) ? String.format("%.1f ops/s", targetRate_) :
+				"closed-loop"));
+		sb.append(String.format(TEXT_HEADER_FORMAT, "op", "count",
+			"errors", "ops/s", "mean", "p50", "p99", "p999", "max"));
+		for(final Map.Entry<String,OperationReport> e :
+			operations_.entrySet()) {
+			e.getValue().appendRow(sb, e.getKey());
+		}
+		total_.appendRow(sb, TOTAL);
+		return sb.toString();
+	}
+	
+	public static final class OperationReport {
+		
+		private final long count_;
+		private final long errors_;
+		private final double throughput_;
+		private final double meanMs_;
+		private final double p50Ms_;
+		private final double p99Ms_;
+		private final double p999Ms_;
+		private final double maxMs_;
+		
+		private OperationReport(final LatencyHistogram latencies,
+			final long errors, final long durationNanos) {
+			count_ = latencies.getCount();
+			errors_ = errors;
+			throughput_ = (durationNanos > 0L) ?
+				(double)count_ * SECONDS.toNanos(1L) / durationNanos : 0.0d;
+			meanMs_ = latencies.getMean() / NANOS_PER_MS;
+			p50Ms_ = toMillis(latencies.getValueAtPercentile(50.0d));
+			p99Ms_ = toMillis(latencies.getValueAtPercentile(99.0d));
+			p999Ms_ = toMillis(latencies.getValueAtPercentile(99.9d));
+			maxMs_ = toMillis(latencies.getMax());
+		}
+		
+		public long getCount() {
+			return count_;
+		}
+		
+		public long getErrors() {
+			return errors_;
+		}
+		
+		/**
+		 * Completed operations per second over the measured duration.
+		 */
+		public double getThroughput() {
+			return throughput_;
+		}
+		
+		public double getMeanMs() {
+			return meanMs_;
+		}
+		
+		public double getP50Ms() {
+			return p50Ms_;
+		}
+		
+		public double getP99Ms() {
+			return p99Ms_;
+		}
+		
+		public double getP999Ms() {
+			return p999Ms_;
+		}
+		
+		public double getMaxMs() {
+			return maxMs_;
+		}
+		
+		private Map<String,Object> toMap() {
+			final Map<String,Object> map = new LinkedHashMap<>();
+			map.put("count", count_);
+			map.put("errors", errors_);
+			map.put("throughput", throughput_);
+			map.put("meanMs", meanMs_);
+			map.put("p50Ms", p50Ms_);
+			map.put("p99Ms", p99Ms_);
+			map.put("p999Ms", p999Ms_);
+			map.put("maxMs", maxMs_);
+			return map;
+		}
+		
+		private void appendRow(final StringBuilder sb, final String name) {
+			sb.append(String.format(TEXT_ROW_FORMAT, name, count_, errors_,
+				throughput_, meanMs_, p50Ms_, p99Ms_, p999Ms_, maxMs_));
+		}
+		
+		private static final double toMillis(final long nanos) {
+			return nanos / NANOS_PER_MS;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.load;
+
+import java.util.Random;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Draws integers in [0, n) following a Zipfian distribution, where item 0
+ * is the most popular, item 1 the second most popular, and so on.  Uses
+ * the constant time rejection-free method from Gray et al, "Quickly
+ * Generating Billion-Record Synthetic Databases", the same one YCSB uses.
+ * Computing zeta(n) is O(n), but only happens once, at construction.
+ */
+public final class ZipfianGenerator {
+	
+	public static final double DEFAULT_THETA = 0.99d;
+	
+	private final int items_;
+	private final double theta_;
+	private final double zetaN_;
+	private final double alpha_;
+	private final double eta_;
+	private final double half_;
+	
+	public ZipfianGenerator(final int items, final double theta) {
+		checkArgument(items > 0, "Item count must be greater than zero!");
+		checkArgument(theta > 0.0d && theta < 1.0d, "Theta must be " +
+			"between 0.0 and 1.0 exclusive!");
+		items_ = items;
+		theta_ = theta;
+		zetaN_ = zeta(items, theta);
+		alpha_ = 1.0d / (1.0d - theta);
+		eta_ = (1.0d - Math.pow(2.0d / items, 1.0d - theta)) /
+			(1.0d - zeta(2, theta) / zetaN_);
+		half_ = 1.0d + Math.pow(0.5d, theta);
+	}
+	
+	public ZipfianGenerator(final int items) {
+		this(items, DEFAULT_THETA);
+	}
+	
+	public int next(final Random random) {
+		final double u = random.nextDouble();
+		final double uz = u * zetaN_;
+		if(uz < 1.0d) {
+			return 0;
+		} else if(uz < half_) {
+			return Math.min(1, items_ - 1);
+		}
+		final int next = (int)(items_ *
+			Math.pow(eta_ * u - eta_ + 1.0d, alpha_));
+		return Math.min(next, items_ - 1);
+	}
+	
+	public int getItems() {
+		return items_;
+	}
+	
+	public double getTheta() {
+		return theta_;
+	}
+	
+	private static final double zeta(final int n, final double theta) {
+		double sum = 0.0d;
+		for(int i = 1; i <= n; i++) {
+			sum += 1.0d / Math.pow(i, theta);
+		}
+		return sum;
+	}
+	
+}
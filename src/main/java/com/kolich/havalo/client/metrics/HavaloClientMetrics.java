@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.metrics;
+
+import com.kolich.havalo.client.HavaloClientException;
+import com.kolich.havalo.client.service.HavaloKey;
+import com.kolich.havalo.client.service.HavaloOperation;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The default {@link HavaloMetricsListener}: keeps request and error
+ * counts, status code counts, bytes sent and received and a latency
+ * histogram for each {@link HavaloOperation}, and the number of update
+ * conflicts.  Recording is lock-free.
+ * The per-operation metrics can optionally be exposed over JMX.
+ */
+public final class HavaloClientMetrics implements HavaloMetricsListener {
+	
+	private static final String JMX_DOMAIN = "com.kolich.havalo.client";
+	private static final String JMX_TYPE = "HavaloClientMetrics";
+	
+	private final Map<HavaloOperation,OperationMetrics> metrics_;
+	
+	private final LongAdder updateConflicts_;
+	
+	/**
+	 * The names of the MBeans registered by this instance, if any.
+	 */
+	private final List<ObjectName> registered_;
+	
+	public HavaloClientMetrics() {
+		metrics_ = new EnumMap<>(HavaloOperation.class);
+		for(final HavaloOperation operation : HavaloOperation.values()) {
+			metrics_.put(operation, new OperationMetrics());
+		}
+		registered_ = new ArrayList<>();
+		updateConflicts_ = new LongAdder();
+	}
+	
+	@Override
+	public void onRequest(final HavaloOperation operation,
+		final int statusCode, final boolean success, final long latencyNanos,
+		final long bytesSent, final long bytesReceived) {
+		metrics_.get(operation).record(statusCode, success, latencyNanos,
+			bytesSent, bytesReceived);
+	}
+	
+	@Override
+	public void onUpdateConflict(final HavaloKey key) {
+		updateConflicts_.increment();
+	}
+	
+	public OperationMetrics getOperationMetrics(
+		final HavaloOperation operation) {
+		return metrics_.get(checkNotNull(operation,
+			"The operation cannot be null!"));
+	}
+	
+	/**
+	 * Returns the number of times an update lost a race against another
+	 * writer, across every client reporting to this instance.
+	 */
+	public long getUpdateConflictCount() {
+		return updateConflicts_.sum();
+	}
+	
+	/**
+	 * Registers one MBean per operation with the platform MBean server,
+	 * under "com.kolich.havalo.client:type=HavaloClientMetrics,
+	 * name=[name],operation=[operation]".
+	 * @param name distinguishes this client from any other registered
+	 * clients in the same JVM
+	 */
+	public synchronized void registerMBeans(final String name) {
+		checkNotNull(name, "The MBean name cannot be null!");
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			for(final Map.Entry<HavaloOperation,OperationMetrics> e :
+				metrics_.entrySet()) {
+				final ObjectName objectName = new ObjectName(String.format(
+					"%s:type=%s,name=%s,operation=%s", JMX_DOMAIN, JMX_TYPE,
+					ObjectName.quote(name), e.getKey().name()));
+				server.registerMBean(e.getValue(), objectName);
+				registered_.add(objectName);
+			}
+		} catch (Exception e) {
+			unregisterMBeans();
+			throw new HavaloClientException("Failed to register client " +
+				"metrics MBeans: " + name, e);
+		}
+	}
+	
+	/**
+	 * Unregisters any MBeans registered by {@link #registerMBeans(String)}.
+	 */
+	public synchronized void unregisterMBeans() {
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for(final ObjectName objectName : registered_) {
+			try {
+				server.unregisterMBean(objectName);
+			} catch (Exception e) {
+				// Already gone, nothing to do.
+			}
+		}
+		registered_.clear();
+	}
+	
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.metrics;
+
+import com.kolich.havalo.client.service.HavaloKey;
+import com.kolich.havalo.client.service.HavaloOperation;
+
+/**
+ * Notified by a {@link com.kolich.havalo.client.service.HavaloClient} once
+ * every API request completes, successfully or not.  Implementations are
+ * called on the thread that made the request, so they must be thread-safe
+ * and should return as quickly as possible.
+ */
+public interface HavaloMetricsListener {
+	
+	/**
+	 * Indicates there was no HTTP response, usually because the request
+	 * failed with an I/O error before the response status was received.
+	 */
+	public static final int NO_STATUS = -1;
+	
+	/**
+	 * Called when a request completes.
+	 * @param operation the API operation
+	 * @param statusCode the HTTP response status code, or
+	 * {@link #NO_STATUS} if there was no response
+	 * @param success true if the operation was successful
+	 * @param latencyNanos the wall clock time the request took, including
+	 * signing, sending and consuming the response body
+	 * @param bytesSent the number of request body bytes sent
+	 * @param bytesReceived the number of response body bytes received
+	 */
+	public void onRequest(final HavaloOperation operation,
+		final int statusCode, final boolean success, final long latencyNanos,
+		final long bytesSent, final long bytesReceived);
+	
+	/**
+	 * Called when an update of the object at the given key lost a race
+	 * against another writer (its conditional PUT was rejected with a
+	 * 409 Conflict) and is about to be retried, or given up on.
+	 * @param key the object being updated
+	 */
+	public default void onUpdateConflict(final HavaloKey key) {}
+	
+}
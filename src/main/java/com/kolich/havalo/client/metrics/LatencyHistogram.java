@@ -0,0 +1,187 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A lock-free, fixed memory, log-linear histogram of non-negative long
+ * values (in the spirit of HdrHistogram).  Values are bucketed by their
+ * power of two magnitude, and each magnitude is further split into
+ * {@link #SUB_BUCKETS} linear sub-buckets; any recorded value is therefore
+ * reported back within roughly 3% of its real value.  Recording is a
+ * handful of atomic increments, no locks and no allocation, so it's safe
+ * to call from any number of threads on a hot path.
+ */
+public final class LatencyHistogram {
+	
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	
+	/**
+	 * Enough buckets to cover every positive long value.
+	 */
+	private static final int BUCKETS =
+		(Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+	
+	private final AtomicLongArray counts_;
+	private final LongAdder count_;
+	private final LongAdder sum_;
+	private final AtomicLong max_;
+	
+	public LatencyHistogram() {
+		counts_ = new AtomicLongArray(BUCKETS);
+		count_ = new LongAdder();
+		sum_ = new LongAdder();
+		max_ = new AtomicLong(0L);
+	}
+	
+	/**
+	 * Records a single value, negative values are recorded as zero.
+	 */
+	public void record(final long value) {
+		final long v = Math.max(0L, value);
+		counts_.incrementAndGet(getBucket(v));
+		count_.increment();
+		sum_.add(v);
+		long max;
+		while(v > (max = max_.get()) && !max_.compareAndSet(max, v)) {
+			// Lost the race to another writer, try again.
+		}
+	}
+	
+	/**
+	 * Adds all values recorded by the other histogram into this one.
+	 */
+	public void merge(final LatencyHistogram other) {
+		for(int i = 0; i < BUCKETS; i++) {
+			final long c = other.counts_.get(i);
+			if(c > 0L) {
+				counts_.addAndGet(i, c);
+			}
+		}
+		count_.add(other.count_.sum());
+		sum_.add(other.sum_.sum());
+		final long v = other.max_.get();
+		long max;
+		while(v > (max = max_.get()) && !max_.compareAndSet(max, v)) {
+			// Lost the race to another writer, try again.
+		}
+	}
+	
+	public long getCount() {
+		return count_.sum();
+	}
+	
+	public long getMax() {
+		return max_.get();
+	}
+	
+	public double getMean() {
+		final long count = count_.sum();
+		return (count == 0L) ? 0.0d : (double)sum_.sum() / count;
+	}
+	
+	/**
+	 * Returns the value at the given percentile (0.0 to 100.0 inclusive)
+	 * of all recorded values, or zero if nothing has been recorded yet.
+	 * The result is the highest value equivalent to the bucket that holds
+	 * the percentile, capped at the max recorded value.  Note this walks
+	 * the buckets while they're being recorded into, and so it's only an
+	 * approximation under concurrent writes.
+	 */
+	public long getValueAtPercentile(final double percentile) {
+		checkArgument(percentile >= 0.0d && percentile <= 100.0d,
+			"Percentile must be between 0.0 and 100.0 inclusive!");
+		long total = 0L;
+		for(int i = 0; i < BUCKETS; i++) {
+			total += counts_.get(i);
+		}
+		if(total == 0L) {
+			return 0L;
+		}
+		final long target = Math.max(1L,
+			(long)Math.ceil((percentile / 100.0d) * total));
+		long seen = 0L;
+		for(int i = 0; i < BUCKETS; i++) {
+			if((seen += counts_.get(i)) >= target) {
+				return Math.min(getHighestEquivalentValue(i), max_.get());
+			}
+		}
+		return max_.get();
+	}
+	
+	/**
+	 * Returns the number of recorded values that fell into each bucket,
+	 * along with the lowest value of each bucket.  Returned as pairs, the
+	 * lowest value of bucket i at [i*2] and its count at [i*2+1], only
+	 * for non-empty buckets.
+	 */
+	public long[] getBucketCounts() {
+		final long[] pairs = new long[BUCKETS * 2];
+		int n = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			final long c = counts_.get(i);
+			if(c > 0L) {
+				pairs[n++] = getLowestEquivalentValue(i);
+				pairs[n++] = c;
+			}
+		}
+		final long[] result = new long[n];
+		System.arraycopy(pairs, 0, result, 0, n);
+		return result;
+	}
+	
+	private static final int getBucket(final long value) {
+		if(value < SUB_BUCKETS) {
+			return (int)value;
+		}
+		final int magnitude = (Long.SIZE - 1) -
+			Long.numberOfLeadingZeros(value);
+		final int shift = magnitude - SUB_BUCKET_BITS;
+		return ((shift + 1) << SUB_BUCKET_BITS) +
+			(int)((value >>> shift) & (SUB_BUCKETS - 1));
+	}
+	
+	private static final long getLowestEquivalentValue(final int bucket) {
+		if(bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		final int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+		return ((long)(SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1)))) << shift;
+	}
+	
+	private static final long getHighestEquivalentValue(final int bucket) {
+		return (bucket + 1 < BUCKETS) ?
+			getLowestEquivalentValue(bucket + 1) - 1L : Long.MAX_VALUE;
+	}
+	
+}
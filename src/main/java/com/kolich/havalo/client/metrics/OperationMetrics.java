@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Lock-free counters and a latency histogram for a single API operation.
+ */
+public final class OperationMetrics implements OperationMetricsMXBean {
+	
+	/**
+	 * HTTP status codes are three digits, anything else is bucketed
+	 * along with {@link HavaloMetricsListener#NO_STATUS}.
+	 */
+	private static final int MAX_STATUS_CODE = 999;
+	
+	private final LongAdder requests_;
+	private final LongAdder errors_;
+	private final LongAdder bytesSent_;
+	private final LongAdder bytesReceived_;
+	
+	/**
+	 * Response counts indexed by status code, index zero holds the
+	 * requests that got no (valid) status code at all.
+	 */
+	private final AtomicLongArray statusCodes_;
+	
+	/**
+	 * Latencies, in nanoseconds.
+	 */
+	private final LatencyHistogram latency_;
+	
+	public OperationMetrics() {
+		requests_ = new LongAdder();
+		errors_ = new LongAdder();
+		bytesSent_ = new LongAdder();
+		bytesReceived_ = new LongAdder();
+		statusCodes_ = new AtomicLongArray(MAX_STATUS_CODE + 1);
+		latency_ = new LatencyHistogram();
+	}
+	
+	public void record(final int statusCode, final boolean success,
+		final long latencyNanos, final long bytesSent,
+		final long bytesReceived) {
+		requests_.increment();
+		if(!success) {
+			errors_.increment();
+		}
+		statusCodes_.incrementAndGet((statusCode > 0 &&
+			statusCode <= MAX_STATUS_CODE) ? statusCode : 0);
+		latency_.record(latencyNanos);
+		bytesSent_.add(bytesSent);
+		bytesReceived_.add(bytesReceived);
+	}
+	
+	/**
+	 * Returns the underlying latency histogram, in nanoseconds.
+	 */
+	public LatencyHistogram getLatencyHistogram() {
+		return latency_;
+	}
+	
+	@Override
+	public long getRequestCount() {
+		return requests_.sum();
+	}
+	
+	@Override
+	public long getErrorCount() {
+		return errors_.sum();
+	}
+	
+	@Override
+	public long getBytesSent() {
+		return bytesSent_.sum();
+	}
+	
+	@Override
+	public long getBytesReceived() {
+		return bytesReceived_.sum();
+	}
+	
+	@Override
+	public Map<Integer,Long> getStatusCodeCounts() {
+		final Map<Integer,Long> counts = new TreeMap<>();
+		for(int i = 0, l = statusCodes_.length(); i < l; i++) {
+			final long count = statusCodes_.get(i);
+			if(count > 0L) {
+				counts.put((i == 0) ? HavaloMetricsListener.NO_STATUS : i,
+					count);
+			}
+		}
+		return counts;
+	}
+	
+	@Override
+	public double getLatencyMeanMicros() {
+		return latency_.getMean() / 1000.0d;
+	}
+	
+	@Override
+	public long getLatencyP50Micros() {
+		return toMicros(latency_.getValueAtPercentile(50.0d));
+	}
+	
+	@Override
+	public long getLatencyP99Micros() {
+		return toMicros(latency_.getValueAtPercentile(99.0d));
+	}
+	
+	@Override
+	public long getLatencyP999Micros() {
+		return toMicros(latency_.getValueAtPercentile(99.9d));
+	}
+	
+	@Override
+	public long getLatencyMaxMicros() {
+		return toMicros(latency_.getMax());
+	}
+	
+	private static final long toMicros(final long nanos) {
+		return NANOSECONDS.toMicros(nanos);
+	}
+	
+}
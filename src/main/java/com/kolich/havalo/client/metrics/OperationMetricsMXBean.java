@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the metrics recorded for a single API operation.  Latencies
+ * are reported in microseconds.
+ */
+public interface OperationMetricsMXBean {
+	
+	public long getRequestCount();
+	
+	public long getErrorCount();
+	
+	public long getBytesSent();
+	
+	public long getBytesReceived();
+	
+	/**
+	 * Returns the number of responses received, keyed by HTTP status code.
+	 * Requests that never got a response are counted under
+	 * {@link HavaloMetricsListener#NO_STATUS}.
+	 */
+	public Map<Integer,Long> getStatusCodeCounts();
+	
+	public double getLatencyMeanMicros();
+	
+	public long getLatencyP50Micros();
+	
+	public long getLatencyP99Micros();
+	
+	public long getLatencyP999Micros();
+	
+	public long getLatencyMaxMicros();
+	
+}
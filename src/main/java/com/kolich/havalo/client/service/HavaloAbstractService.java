@@ -61,12 +61,47 @@ public abstract class HavaloAbstractService {
 	 */
 	protected final URI apiEndpoint_;
 	
+	/**
+	 * The scheme, authority and path of the API endpoint, the part of
+	 * every request URL before the resource path.  Computed once, as it
+	 * never changes.
+	 */
+	protected final String apiBase_;
+	
 	public HavaloAbstractService(HavaloAbstractSigner signer, String apiEndpoint) {
 		checkNotNull(signer, "The signer cannot be null!");
 		checkNotNull(apiEndpoint, "The service client API endpoint cannot " +
 			"be null!");
 		signer_ = signer;
 		apiEndpoint_ = URI.create(apiEndpoint);
+		apiBase_ = getApiBase(apiEndpoint_);
+	}
+	
+	/**
+	 * For services that share an already parsed API endpoint, and its
+	 * base, with others.
+	 */
+	protected HavaloAbstractService(HavaloAbstractSigner signer,
+		URI apiEndpoint, String apiBase) {
+		signer_ = checkNotNull(signer, "The signer cannot be null!");
+		apiEndpoint_ = checkNotNull(apiEndpoint, "The service client API " +
+			"endpoint cannot be null!");
+		apiBase_ = checkNotNull(apiBase, "The service client API base " +
+			"cannot be null!");
+	}
+	
+	/**
+	 * Returns the scheme, authority and path of the given API endpoint.
+	 */
+	protected static final String getApiBase(final URI apiEndpoint) {
+		return
+			// Havalo API endpoints usually start with https://
+			apiEndpoint.getScheme() + HTTP_SCHEME_SLASHES +
+			// Returns the decoded authority component of this endpoint URI.
+			// The authority of a URI is basically the hostname, otherwise
+			// called the endpoint here.
+			apiEndpoint.getAuthority() +
+			apiEndpoint.getPath();
 	}
 	
 	/**
@@ -81,7 +116,8 @@ public abstract class HavaloAbstractService {
 		signer_.signHttpRequest(request);
 	}
 	
-	private final URI getFinalEndpoint(final HttpRequestBase request) {
+	// Package private so the benchmarks can exercise it directly.
+	final URI getFinalEndpoint(final HttpRequestBase request) {
 		URI endPointURI = request.getURI();
 		// If the request URI already starts with https:// then we don't
 		// have to build a full endpoint URL anymore since its already
@@ -89,13 +125,7 @@ public abstract class HavaloAbstractService {
 		// doing and have built a complete and proper URL to the API.
 		if(!isComplete(endPointURI)) {
 			endPointURI = URI.create(
-				// Havalo API endpoints usually start with https://	
-				apiEndpoint_.getScheme() + HTTP_SCHEME_SLASHES +
-				// Returns the decoded authority component of this endpoint URI.
-				// The authority of a URI is basically the hostname, otherwise
-				// called the endpoint here.
-				apiEndpoint_.getAuthority() +
-				apiEndpoint_.getPath() +
+				apiBase_ +
 				// Returns the decoded path component of the request URI.
 				// The path of a URI is the piece of the URI after the hostname,
 				// not including the query parameters.
@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.kolich.common.functional.either.Either;
+import com.kolich.common.functional.either.Left;
+import com.kolich.havalo.client.HavaloClientException;
+import com.kolich.http.common.response.HttpFailure;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Runs one request per key, with at most a bounded number in flight at
+ * any one time, behind the batch methods of {@link HavaloClient}.
+ */
+final class HavaloBatch {
+	
+	private static final Logger logger__ =
+		LoggerFactory.getLogger(HavaloBatch.class);
+	
+	private static final String BATCH_THREAD_NAME = "havalo-batch-%d";
+	
+	/**
+	 * Shared by every batch, each batch bounds its own concurrency.
+	 */
+	private static final ExecutorService EXECUTOR =
+		Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+			.setNameFormat(BATCH_THREAD_NAME).setDaemon(true).build());
+	
+	private HavaloBatch() {}
+	
+	/**
+	 * Runs the request for every distinct key, at most maxInFlight at a
+	 * time, and returns the results in key order once every request has
+	 * completed or the timeout passes, whichever comes first.  Keys that
+	 * have no result by then get a failure caused by a
+	 * {@link TimeoutException}.  Their requests already in flight are not
+	 * aborted: they run to completion in the background, holding their
+	 * pooled connections until then, and their results are ignored.  Run
+	 * the batch on a client with a timeout to bound them too.  A request
+	 * that throws gets a failure caused by what it threw.  If given, the
+	 * listener is called with each result as it comes in, one at a time,
+	 * and never after this method has returned; anything it throws is
+	 * logged and otherwise ignored.  Being interrupted while waiting is
+	 * treated as the timeout passing.
+	 */
+	static <T> Map<HavaloKey,Either<HttpFailure,T>> execute(
+		final Collection<HavaloKey> keys, final int maxInFlight,
+		final long timeoutNanos,
+		final Function<HavaloKey,Either<HttpFailure,T>> request,
+		final BiConsumer<HavaloKey,Either<HttpFailure,T>> listener) {
+		checkNotNull(keys, "The keys cannot be null!");
+		checkArgument(maxInFlight > 0, "Max in flight must be greater " +
+			"than zero!");
+		final List<HavaloKey> distinct = new ArrayList<>(
+			new LinkedHashSet<>(keys));
+		final Map<HavaloKey,Either<HttpFailure,T>> results = new HashMap<>();
+		final AtomicInteger next = new AtomicInteger(0);
+		final CountDownLatch done = new CountDownLatch(distinct.size());
+		// Guards the results, and whether the batch is still accepting them.
+		final Object lock = new Object();
+		final boolean[] expired = {false};
+		final Runnable worker = () -> {
+			int i;
+			while((i = next.getAndIncrement()) < distinct.size()) {
+				synchronized(lock) {
+					if(expired[0]) {
+						return;
+					}
+				}
+				final HavaloKey key = distinct.get(i);
+				try {
+					Either<HttpFailure,T> result;
+					try {
+						result = request.apply(key);
+					} catch (Exception e) {
+						result = Left.left(new HttpFailure(e));
+					} catch (Error e) {
+						result = Left.left(new HttpFailure(
+							new HavaloClientException("Batch request " +
+								"failed: " + key, e)));
+					}
+					synchronized(lock) {
+						if(!expired[0]) {
+							results.put(key, result);
+							deliver(listener, key, result);
+						}
+					}
+				} finally {
+					// Always, so that nothing can leave the caller
+					// waiting on a key forever.
+					done.countDown();
+				}
+			}
+		};
+		for(int i = 0, l = Math.min(maxInFlight, distinct.size()); i < l; i++) {
+			EXECUTOR.execute(worker);
+		}
+		try {
+			if(timeoutNanos > 0L) {
+				done.await(timeoutNanos, NANOSECONDS);
+			} else {
+				done.await();
+			}
+		} catch (InterruptedException e) {
+			// Give up waiting, like a deadline, but keep the interrupt.
+			Thread.currentThread().interrupt();
+		} finally {
+			synchronized(lock) {
+				expired[0] = true;
+			}
+		}
+		final Map<HavaloKey,Either<HttpFailure,T>> ordered =
+			new LinkedHashMap<>();
+		for(final HavaloKey key : distinct) {
+			Either<HttpFailure,T> result = results.get(key);
+			if(result == null) {
+				result = Left.left(new HttpFailure(new TimeoutException(
+					"Batch deadline passed before " + key + " completed.")));
+			}
+			ordered.put(key, result);
+		}
+		return ordered;
+	}
+	
+	private static final <T> void deliver(
+		final BiConsumer<HavaloKey,Either<HttpFailure,T>> listener,
+		final HavaloKey key, final Either<HttpFailure,T> result) {
+		if(listener == null) {
+			return;
+		}
+		try {
+			listener.accept(key, result);
+		} catch (Exception e) {
+			logger__.warn("Batch listener failed on result for: " +
+				key, e);
+		}
+	}
+	
+}
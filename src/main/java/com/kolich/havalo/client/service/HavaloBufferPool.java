@@ -0,0 +1,376 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.service;
+
+import com.kolich.havalo.client.HavaloClientException;
+
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A bounded pool of fixed size transfer buffers, shared by every streaming
+ * path of a {@link HavaloClient}: object downloads, uploads, read-aheads
+ * and spools.  Buffers are either heap or direct; note that since the
+ * streams on both ends of a transfer are plain {@link InputStream}'s and
+ * {@link OutputStream}'s, direct buffers are staged through a small per
+ * thread array and only pay off when the caller itself works with
+ * channels.  Acquiring and releasing is lock-free.  A buffer that's never
+ * released is simply collected, and shows up as a miss later on.
+ */
+public final class HavaloBufferPool implements HavaloBufferPoolMXBean {
+	
+	private static final String JMX_DOMAIN = "com.kolich.havalo.client";
+	private static final String JMX_TYPE = "HavaloBufferPool";
+	
+	private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	private static final int DEFAULT_MAX_POOLED = 64;
+	
+	/**
+	 * The size of the per thread array direct buffers are staged through.
+	 */
+	private static final int STAGING_SIZE = 8 * 1024;
+	
+	private static final ThreadLocal<byte[]> STAGING =
+		ThreadLocal.withInitial(() -> new byte[STAGING_SIZE]);
+	
+	/**
+	 * Used by every client that isn't configured with its own pool.
+	 */
+	private static final HavaloBufferPool DEFAULT = new Builder().build();
+	
+	private final int bufferSize_;
+	private final int maxPooled_;
+	private final boolean direct_;
+	
+	private final Queue<ByteBuffer> pool_;
+	private final AtomicInteger pooled_;
+	
+	private final LongAdder hits_;
+	private final LongAdder misses_;
+	private final LongAdder discards_;
+	
+	private ObjectName registered_ = null;
+	
+	private HavaloBufferPool(final Builder builder) {
+		bufferSize_ = builder.bufferSize_;
+		maxPooled_ = builder.maxPooled_;
+		direct_ = builder.direct_;
+		pool_ = new ConcurrentLinkedQueue<>();
+		pooled_ = new AtomicInteger(0);
+		hits_ = new LongAdder();
+		misses_ = new LongAdder();
+		discards_ = new LongAdder();
+	}
+	
+	/**
+	 * Returns the pool shared by every client without one of its own:
+	 * 64KB heap buffers, at most 64 of them idle.
+	 */
+	public static final HavaloBufferPool getDefault() {
+		return DEFAULT;
+	}
+	
+	/**
+	 * Returns a cleared buffer from the pool, or a newly allocated one if
+	 * the pool is empty.  Hand it back with {@link #release(ByteBuffer)}
+	 * once done with it, and don't touch it after that.
+	 */
+	public ByteBuffer acquire() {
+		final ByteBuffer buffer = pool_.poll();
+		if(buffer != null) {
+			pooled_.decrementAndGet();
+			hits_.increment();
+			return buffer;
+		}
+		misses_.increment();
+		return (direct_) ? ByteBuffer.allocateDirect(bufferSize_) :
+			ByteBuffer.allocate(bufferSize_);
+	}
+	
+	/**
+	 * Returns a buffer to the pool.  Buffers that didn't come from a pool
+	 * like this one are ignored, as are any beyond the max pooled count.
+	 */
+	public void release(final ByteBuffer buffer) {
+		if(buffer == null || buffer.capacity() != bufferSize_ ||
+			buffer.isDirect() != direct_ || buffer.isReadOnly()) {
+			return;
+		}
+		if(pooled_.incrementAndGet() > maxPooled_) {
+			pooled_.decrementAndGet();
+			discards_.increment();
+			return;
+		}
+		buffer.clear();
+		pool_.offer(buffer);
+	}
+	
+	/**
+	 * Copies the input stream to the output stream, through a pooled
+	 * buffer, until the end of the input.  Closes neither stream.
+	 * @return the number of bytes copied
+	 */
+	public long copy(final InputStream input, final OutputStream output)
+		throws IOException {
+		final ByteBuffer buffer = acquire();
+		try {
+			long count = 0L;
+			int n;
+			while((n = read(input, buffer)) >= 0) {
+				buffer.flip();
+				write(buffer, output);
+				buffer.clear();
+				count += n;
+			}
+			return count;
+		} finally {
+			release(buffer);
+		}
+	}
+	
+	/**
+	 * Reads from the stream into the remaining space of the buffer, with a
+	 * single call to the stream, advancing the position of the buffer.
+	 * @return the number of bytes read, or -1 at the end of the stream
+	 */
+	static final int read(final InputStream input, final ByteBuffer buffer)
+		throws IOException {
+		final int n;
+		if(buffer.hasArray()) {
+			n = input.read(buffer.array(),
+				buffer.arrayOffset() + buffer.position(),
+				buffer.remaining());
+			if(n > 0) {
+				buffer.position(buffer.position() + n);
+			}
+		} else {
+			final byte[] staging = STAGING.get();
+			n = input.read(staging, 0,
+				Math.min(staging.length, buffer.remaining()));
+			if(n > 0) {
+				buffer.put(staging, 0, n);
+			}
+		}
+		return n;
+	}
+	
+	/**
+	 * Reads from the stream until the buffer is full, or the end of the
+	 * stream.
+	 * @return the number of bytes read, less than the space that was left
+	 * in the buffer only at the end of the stream
+	 */
+	static final int fill(final InputStream input, final ByteBuffer buffer)
+		throws IOException {
+		final int start = buffer.position();
+		while(buffer.hasRemaining() && read(input, buffer) >= 0) {
+			// Keep reading.
+		}
+		return buffer.position() - start;
+	}
+	
+	/**
+	 * Writes the remaining content of the buffer to the stream, advancing
+	 * the position of the buffer to its limit.
+	 */
+	static final void write(final ByteBuffer buffer, final OutputStream output)
+		throws IOException {
+		if(buffer.hasArray()) {
+			output.write(buffer.array(),
+				buffer.arrayOffset() + buffer.position(),
+				buffer.remaining());
+			buffer.position(buffer.limit());
+		} else {
+			final byte[] staging = STAGING.get();
+			while(buffer.hasRemaining()) {
+				final int n = Math.min(staging.length, buffer.remaining());
+				buffer.get(staging, 0, n);
+				output.write(staging, 0, n);
+			}
+		}
+	}
+	
+	/**
+	 * Returns a stream over the remaining content of the given buffer,
+	 * which doesn't change the position of the buffer itself.
+	 */
+	static final InputStream newInputStream(final ByteBuffer buffer) {
+		return new ByteBufferInputStream(buffer.duplicate());
+	}
+	
+	@Override
+	public int getBufferSize() {
+		return bufferSize_;
+	}
+	
+	@Override
+	public boolean isDirect() {
+		return direct_;
+	}
+	
+	@Override
+	public int getMaxPooled() {
+		return maxPooled_;
+	}
+	
+	@Override
+	public int getPooledCount() {
+		return pooled_.get();
+	}
+	
+	@Override
+	public long getHitCount() {
+		return hits_.sum();
+	}
+	
+	@Override
+	public long getMissCount() {
+		return misses_.sum();
+	}
+	
+	@Override
+	public long getDiscardCount() {
+		return discards_.sum();
+	}
+	
+	/**
+	 * Registers this pool with the platform MBean server, under
+	 * "com.kolich.havalo.client:type=HavaloBufferPool,name=[name]".
+	 */
+	public synchronized void registerMBean(final String name) {
+		checkNotNull(name, "The MBean name cannot be null!");
+		unregisterMBean();
+		try {
+			final ObjectName objectName = new ObjectName(String.format(
+				"%s:type=%s,name=%s", JMX_DOMAIN, JMX_TYPE,
+				ObjectName.quote(name)));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+				objectName);
+			registered_ = objectName;
+		} catch (Exception e) {
+			throw new HavaloClientException("Failed to register buffer " +
+				"pool MBean: " + name, e);
+		}
+	}
+	
+	/**
+	 * Unregisters the MBean registered by {@link #registerMBean(String)}.
+	 */
+	public synchronized void unregisterMBean() {
+		if(registered_ != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+					registered_);
+			} catch (Exception e) {
+				// Already gone, nothing to do.
+			}
+			registered_ = null;
+		}
+	}
+	
+	private static final class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer_;
+		private ByteBufferInputStream(final ByteBuffer buffer) {
+			buffer_ = buffer;
+		}
+		@Override
+		public int read() {
+			return (buffer_.hasRemaining()) ? (buffer_.get() & 0xff) : -1;
+		}
+		@Override
+		public int read(final byte[] b, final int off, final int len) {
+			if(off < 0 || len < 0 || len > b.length - off) {
+				throw new IndexOutOfBoundsException();
+			} else if(len == 0) {
+				return 0;
+			} else if(!buffer_.hasRemaining()) {
+				return -1;
+			}
+			final int n = Math.min(len, buffer_.remaining());
+			buffer_.get(b, off, n);
+			return n;
+		}
+		@Override
+		public int available() {
+			return buffer_.remaining();
+		}
+	}
+	
+	public static final class Builder {
+		
+		private int bufferSize_ = DEFAULT_BUFFER_SIZE;
+		private int maxPooled_ = DEFAULT_MAX_POOLED;
+		private boolean direct_ = false;
+		
+		/**
+		 * The size of every buffer in the pool, 64KB by default.  Larger
+		 * buffers, up to 1MB or so, mean fewer system calls per transfer
+		 * on fast networks.
+		 */
+		public Builder setBufferSize(final int bufferSize) {
+			checkArgument(bufferSize > 0, "Buffer size must be greater " +
+				"than zero!");
+			bufferSize_ = bufferSize;
+			return this;
+		}
+		
+		/**
+		 * The most idle buffers the pool holds on to, 64 by default; any
+		 * more are dropped on release.  Roughly the number of concurrent
+		 * transfers, plus read-aheads and spools.
+		 */
+		public Builder setMaxPooled(final int maxPooled) {
+			checkArgument(maxPooled >= 0, "Max pooled cannot be negative!");
+			maxPooled_ = maxPooled;
+			return this;
+		}
+		
+		/**
+		 * Allocates direct, rather than heap, buffers.  Off by default.
+		 */
+		public Builder setDirect(final boolean direct) {
+			direct_ = direct;
+			return this;
+		}
+		
+		public HavaloBufferPool build() {
+			return new HavaloBufferPool(this);
+		}
+		
+	}
+	
+}
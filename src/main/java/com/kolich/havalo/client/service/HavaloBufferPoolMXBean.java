@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.service;
+
+/**
+ * JMX view of a {@link HavaloBufferPool}, for sizing it.
+ */
+public interface HavaloBufferPoolMXBean {
+	
+	public int getBufferSize();
+	
+	public boolean isDirect();
+	
+	public int getMaxPooled();
+	
+	/**
+	 * Returns the number of idle buffers currently held by the pool.
+	 */
+	public int getPooledCount();
+	
+	/**
+	 * Returns the number of buffers handed out from the pool.
+	 */
+	public long getHitCount();
+	
+	/**
+	 * Returns the number of buffers that had to be allocated because the
+	 * pool was empty.
+	 */
+	public long getMissCount();
+	
+	/**
+	 * Returns the number of buffers dropped on release because the pool
+	 * was already full.
+	 */
+	public long getDiscardCount();
+	
+}
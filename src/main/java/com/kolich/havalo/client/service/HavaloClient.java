@@ -26,62 +26,192 @@
 
 package com.kolich.havalo.client.service;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.kolich.common.functional.either.Either;
+import com.kolich.common.functional.either.Left;
+import com.kolich.common.functional.either.Right;
+import com.kolich.havalo.client.HavaloClientException;
 import com.kolich.havalo.client.entities.FileObject;
 import com.kolich.havalo.client.entities.KeyPair;
 import com.kolich.havalo.client.entities.ObjectList;
+import com.kolich.havalo.client.events.HavaloRequestEvent;
+import com.kolich.havalo.client.events.HavaloRequestListener;
+import com.kolich.havalo.client.metrics.HavaloMetricsListener;
 import com.kolich.havalo.client.signing.HavaloAbstractSigner;
+import com.kolich.havalo.client.trace.HavaloTraceRecorder;
 import com.kolich.http.HttpClient4Closure;
 import com.kolich.http.common.response.HttpFailure;
 import com.kolich.http.common.response.HttpSuccess;
-import com.kolich.http.helpers.EntityConverterClosures.CustomEntityConverterClosure;
-import com.kolich.http.helpers.GsonClosures.GsonOrHttpFailureClosure;
-import com.kolich.http.helpers.StatusCodeAndHeaderClosures.StatusCodeOrHttpFailureClosure;
 import com.kolich.http.helpers.definitions.CustomEntityConverter;
 import com.kolich.http.helpers.definitions.CustomFailureEntityConverter;
 import com.kolich.http.helpers.definitions.CustomSuccessEntityConverter;
+import org.apache.commons.io.input.CloseShieldInputStream;
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.message.BasicHeader;
 import org.apache.http.protocol.HttpContext;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.Reader;
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.kolich.common.DefaultCharacterEncoding.UTF_8;
 import static com.kolich.common.entities.KolichCommonEntity.getDefaultGsonBuilder;
+import static com.kolich.havalo.client.entities.HavaloTypeAdapters.registerTypeAdapters;
+import static com.kolich.havalo.client.service.HavaloOperation.*;
 import static com.kolich.common.util.URLEncodingUtils.urlEncode;
 import static com.kolich.http.HttpClient4ClosureBuilder.Factory.getNewInstanceWithProxySelector;
-import static org.apache.commons.io.IOUtils.copyLarge;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.apache.http.HttpHeaders.ACCEPT_ENCODING;
+import static org.apache.http.HttpHeaders.CONTENT_ENCODING;
+import static org.apache.http.HttpHeaders.ETAG;
+import static org.apache.http.HttpHeaders.EXPECT;
+import static org.apache.http.HttpHeaders.IF_MATCH;
+import static org.apache.http.HttpStatus.SC_CONFLICT;
 import static org.apache.http.HttpStatus.SC_NO_CONTENT;
 import static org.apache.http.HttpStatus.SC_OK;
+import static org.apache.http.protocol.HTTP.EXPECT_CONTINUE;
 
 public final class HavaloClient extends HavaloAbstractService {
 		
 	private static final String API_ACTION_AUTHENTICATE = "authenticate";
 	private static final String API_ACTION_REPOSITORY = "repository";
-	private static final String API_ACTION_OBJECT = "object";
+	// Package private so HavaloKey can precompute its object resource.
+	static final String API_ACTION_OBJECT = "object";
 	
 	private static final String API_PARAM_STARTSWITH = "startsWith";
+	private static final String API_PARAM_LIMIT = "limit";
+	private static final String API_PARAM_MARKER = "marker";
+	
+	private static final String GZIP_ENCODING = "gzip";
+	
+	/**
+	 * How much of an opened object is read ahead of the caller, by default.
+	 */
+	private static final int DEFAULT_READ_AHEAD_BYTES = 256 * 1024;
+	
+	/**
+	 * The number of requests a batch has in flight at once, by default.
+	 */
+	private static final int DEFAULT_BATCH_MAX_IN_FLIGHT = 16;
+	
+	private static final String DEADLINE_THREAD_NAME = "havalo-deadline-%d";
+	
+	/**
+	 * Aborts requests that run past their deadline.
+	 */
+	private static final ScheduledThreadPoolExecutor DEADLINE_EXECUTOR =
+		newDeadlineExecutor();
+	
+	private static final int DEFAULT_UPDATE_MAX_ATTEMPTS = 5;
+	private static final long UPDATE_BACKOFF_BASE_MS = 25L;
+	private static final long UPDATE_BACKOFF_MAX_MS = 1000L;
 	
 	private final HttpClient client_;
-	private final GsonBuilder gson_;
+	/**
+	 * Shared by every request, Gson instances are thread-safe.
+	 */
+	private final Gson gson_;
+	private final HavaloClientConfig config_;
+	
+	/**
+	 * Shared with every view of this client.
+	 */
+	private final AtomicLong updateConflicts_;
 	
+	/**
+	 * Note that the Havalo entity type adapters are registered with the
+	 * given Gson builder itself (Gson builders can't be copied), so the
+	 * builder is modified by this constructor; pass a fresh builder if it
+	 * is used to create Gson instances elsewhere.
+	 */
 	public HavaloClient(final HttpClient client,
 		final HavaloAbstractSigner signer, final GsonBuilder gson,
-		final String apiEndpoint) {
+		final String apiEndpoint, final HavaloClientConfig config) {
 		super(signer, apiEndpoint);
 		client_ = client;
+		gson_ = registerTypeAdapters(checkNotNull(gson,
+			"The Gson builder cannot be null!")).create();
+		config_ = checkNotNull(config, "The client config cannot be null!");
+		updateConflicts_ = new AtomicLong(0L);
+	}
+	
+	/**
+	 * Shares everything but the signer with other clients, for views of
+	 * a client and clients handed out by a {@link HavaloClientFactory}.
+	 */
+	HavaloClient(final HttpClient client, final HavaloAbstractSigner signer,
+		final Gson gson, final URI apiEndpoint, final String apiBase,
+		final HavaloClientConfig config, final AtomicLong updateConflicts) {
+		super(signer, apiEndpoint, apiBase);
+		client_ = client;
 		gson_ = gson;
+		config_ = config;
+		updateConflicts_ = updateConflicts;
+	}
+	
+	/**
+	 * A view of an existing client, with its own config.
+	 */
+	private HavaloClient(final HavaloClient client,
+		final HavaloClientConfig config) {
+		this(client.client_, client.signer_, client.gson_,
+			client.apiEndpoint_, client.apiBase_, config,
+			client.updateConflicts_);
+	}
+	
+	public HavaloClient(final HttpClient client,
+		final HavaloAbstractSigner signer, final GsonBuilder gson,
+		final String apiEndpoint) {
+		this(client, signer, gson, apiEndpoint,
+			HavaloClientConfig.getDefault());
+	}
+	
+	public HavaloClient(final HttpClient client,
+		final HavaloClientCredentials credentials, final String apiEndpoint,
+		final HavaloClientConfig config) {
+		this(client, new HavaloClientSigner(credentials),
+			getDefaultGsonBuilder(), apiEndpoint, config);
+	}
+	
+	public HavaloClient(final HavaloClientCredentials credentials,
+		final String apiEndpoint, final HavaloClientConfig config) {
+		this(getNewInstanceWithProxySelector(), credentials, apiEndpoint,
+			config);
 	}
 	
 	public HavaloClient(final HttpClient client,
@@ -124,104 +254,433 @@ public final class HavaloClient extends HavaloAbstractService {
 		this(UUID.fromString(key), secret, apiEndpoint);
 	}
 	
-	private abstract class HavaloBaseClosure<T>
-		extends HttpClient4Closure<HttpFailure,T> {
+	/**
+	 * Returns a view of this client, sharing its connections and config,
+	 * whose calls are each given the given time to complete before being
+	 * aborted; see {@link HavaloClientConfig.Builder#setTimeout}.  Views
+	 * are cheap, for example:
+	 * <code>client.withTimeout(2L, SECONDS).getObject(os, "foo")</code>.
+	 */
+	public HavaloClient withTimeout(final long timeout, final TimeUnit unit) {
+		return new HavaloClient(this, new HavaloClientConfig.Builder(config_)
+			.setTimeout(timeout, unit).build());
+	}
+	
+	/**
+	 * Returns a view of this client, sharing its connections and config,
+	 * whose calls are scheduled in the given priority class by the
+	 * configured {@link HavaloRequestScheduler}, for example:
+	 * <code>client.withPriority(BULK).putObject(data, "foo")</code>.
+	 */
+	public HavaloClient withPriority(final HavaloPriority priority) {
+		return new HavaloClient(this, new HavaloClientConfig.Builder(config_)
+			.setPriority(priority).build());
+	}
+	
+	private abstract class HavaloBaseClosure<F,S>
+		extends HttpClient4Closure<F,S> implements HavaloRequestEvent {
+		private final HavaloOperation operation_;
 		private final int expectStatus_;
+		private final HavaloMetricsListener metrics_;
+		private final HavaloRequestListener listener_;
+		private final HavaloTraceRecorder trace_;
+		private final HavaloRateLimits limits_;
+		private final long timeoutNanos_;
+		private final HavaloRequestScheduler scheduler_;
+		private final HavaloPriority priority_;
+		private boolean scheduled_ = false;
+		private long deadline_ = NOT_REACHED;
+		private ScheduledFuture<?> abort_ = null;
+		private volatile boolean timedOut_ = false;
+		private String method_ = null;
+		private URI uri_ = null;
+		private int status_ = NO_STATUS;
+		private boolean success_ = false;
+		private long start_ = NOT_REACHED;
+		private long signing_ = NOT_REACHED;
+		private long signed_ = NOT_REACHED;
+		private long response_ = NOT_REACHED;
+		private long converting_ = NOT_REACHED;
+		private long converted_ = NOT_REACHED;
+		private long complete_ = NOT_REACHED;
+		private HavaloCountingEntity sent_ = null;
+		private HavaloCountingEntity received_ = null;
 		public HavaloBaseClosure(final HttpClient client,
-			final int expectStatus) {
+			final HavaloOperation operation, final int expectStatus) {
 			super(client);
+			operation_ = operation;
 			expectStatus_ = expectStatus;
+			metrics_ = config_.getMetricsListener();
+			listener_ = config_.getRequestListener();
+			trace_ = config_.getTraceRecorder();
+			limits_ = config_.getRateLimits();
+			timeoutNanos_ = config_.getTimeoutNanos();
+			scheduler_ = config_.getScheduler();
+			priority_ = config_.getPriority();
 		}
 		@Override
 		public void before(final HttpRequestBase request) throws Exception {
+			if(limits_ != null) {
+				acquireRequest();
+			}
+			if(scheduler_ != null && !scheduled_) {
+				scheduler_.acquire(priority_, (timeoutNanos_ > 0L) ?
+					Math.max(1L, deadline_ - System.nanoTime()) : 0L);
+				scheduled_ = true;
+			}
+			if(timeoutNanos_ > 0L) {
+				final long remaining = deadline_ - System.nanoTime();
+				if(remaining <= 0L) {
+					timedOut_ = true;
+					throw new TimeoutException("Deadline passed before " +
+						"the request was sent.");
+				}
+				abort_ = DEADLINE_EXECUTOR.schedule(() -> {
+					timedOut_ = true;
+					request.abort();
+				}, remaining, NANOSECONDS);
+			}
+			if(listener_ != null) {
+				signing_ = System.nanoTime();
+			}
+			method_ = request.getMethod();
+			if(request instanceof HttpEntityEnclosingRequest &&
+				((HttpEntityEnclosingRequest)request).getEntity() != null) {
+				final HttpEntityEnclosingRequest r =
+					(HttpEntityEnclosingRequest)request;
+				if(limits_ != null) {
+					r.setEntity(throttle(r.getEntity()));
+				}
+				if(metrics_ != null || trace_ != null) {
+					r.setEntity(sent_ = new HavaloCountingEntity(
+						r.getEntity()));
+				}
+			}
 			signRequest(request);
+			uri_ = request.getURI();
+			if(listener_ != null) {
+				signed_ = System.nanoTime();
+				listener_.onSigned(this);
+			}
 		}
 		@Override
 		public boolean check(final HttpResponse response,
 			final HttpContext context) {
-			return expectStatus_ == response.getStatusLine().getStatusCode();
+			status_ = response.getStatusLine().getStatusCode();
+			if(limits_ != null && response.getEntity() != null) {
+				response.setEntity(throttle(response.getEntity()));
+			}
+			if((metrics_ != null || trace_ != null) &&
+				response.getEntity() != null) {
+				response.setEntity(received_ = new HavaloCountingEntity(
+					response.getEntity()));
+			}
+			if(listener_ != null) {
+				response_ = System.nanoTime();
+				listener_.onResponse(this);
+			}
+			return expectStatus_ == status_;
+		}
+		@Override
+		public final S success(final HttpSuccess success) throws Exception {
+			converting();
+			try {
+				return convertSuccess(success);
+			} finally {
+				converted();
+			}
+		}
+		@Override
+		public final F failure(final HttpFailure failure) {
+			converting();
+			try {
+				return convertFailure((timedOut_) ? timedOut(failure) :
+					failure);
+			} finally {
+				converted();
+			}
+		}
+		/**
+		 * Converts the response entity of a successful request into
+		 * the result of this closure.
+		 */
+		public abstract S convertSuccess(final HttpSuccess success)
+			throws Exception;
+		/**
+		 * Converts a failed request into the failure result of this
+		 * closure.
+		 */
+		public abstract F convertFailure(final HttpFailure failure);
+		/**
+		 * Waits on the request rate limits, but never past the deadline
+		 * if there is one.
+		 */
+		private final void acquireRequest() throws Exception {
+			if(timeoutNanos_ <= 0L) {
+				limits_.acquireRequest(operation_);
+				return;
+			}
+			try {
+				limits_.acquireRequest(operation_, deadline_);
+			} catch (TimeoutException e) {
+				timedOut_ = true;
+				throw e;
+			}
+		}
+		/**
+		 * Wraps the given entity so its bytes are held to the rate limits,
+		 * but never past the deadline if there is one.
+		 */
+		private final HttpEntity throttle(final HttpEntity entity) {
+			if(timeoutNanos_ <= 0L) {
+				return new HavaloThrottledEntity(entity, limits_, operation_);
+			}
+			return new HavaloThrottledEntity(entity, limits_, operation_,
+				deadline_, () -> timedOut_ = true);
+		}
+		/**
+		 * Replaces whatever the abort of a request that ran past its
+		 * deadline failed with, with a timeout.
+		 */
+		private final HttpFailure timedOut(final HttpFailure failure) {
+			final TimeoutException e = new TimeoutException("Request " +
+				"timed out after " + NANOSECONDS.toMillis(timeoutNanos_) +
+				"ms: " + operation_);
+			if(failure.getCause() != null) {
+				e.initCause(failure.getCause());
+			}
+			return new HttpFailure(e);
+		}
+		private final void converting() {
+			if(listener_ != null) {
+				converting_ = System.nanoTime();
+			}
+		}
+		private final void converted() {
+			if(listener_ != null) {
+				converted_ = System.nanoTime();
+				listener_.onConverted(this);
+			}
+		}
+		/**
+		 * Runs the given request, and if metrics, a request listener or
+		 * tracing are enabled, reports its outcome to them once it has
+		 * completed.
+		 */
+		private final Either<F,S> execute(
+			final Supplier<Either<F,S>> request) {
+			if(metrics_ == null && listener_ == null && trace_ == null) {
+				return withDeadline(request);
+			}
+			start_ = System.nanoTime();
+			if(listener_ != null) {
+				listener_.onStart(this);
+			}
+			try {
+				final Either<F,S> result = withDeadline(request);
+				success_ = result.success();
+				return result;
+			} finally {
+				complete_ = System.nanoTime();
+				if(metrics_ != null) {
+					metrics_.onRequest(operation_, status_, success_,
+						complete_ - start_,
+						(sent_ == null) ? 0L : sent_.getByteCount(),
+						(received_ == null) ? 0L : received_.getByteCount());
+				}
+				if(trace_ != null) {
+					trace_.record(operation_, start_, complete_ - start_, uri_,
+						(sent_ != null) ? sent_.getByteCount() :
+						(received_ == null) ? 0L : received_.getByteCount(),
+						status_);
+				}
+				if(listener_ != null) {
+					listener_.onComplete(this);
+				}
+			}
+		}
+		/**
+		 * Runs the given request, if a timeout is set, under a deadline
+		 * armed once the request is about to be sent and disarmed as soon
+		 * as it has completed.  Gives back its scheduler slot, if any,
+		 * once done.
+		 */
+		private final Either<F,S> withDeadline(
+			final Supplier<Either<F,S>> request) {
+			if(timeoutNanos_ <= 0L && scheduler_ == null) {
+				return request.get();
+			}
+			if(timeoutNanos_ > 0L) {
+				deadline_ = System.nanoTime() + timeoutNanos_;
+			}
+			try {
+				return request.get();
+			} finally {
+				if(abort_ != null) {
+					abort_.cancel(false);
+				}
+				if(scheduled_) {
+					scheduled_ = false;
+					scheduler_.release(priority_);
+				}
+			}
+		}
+		@Override
+		public final HavaloOperation getOperation() {
+			return operation_;
+		}
+		@Override
+		public final String getMethod() {
+			return method_;
+		}
+		@Override
+		public final URI getUri() {
+			return uri_;
+		}
+		@Override
+		public final int getStatusCode() {
+			return status_;
+		}
+		@Override
+		public final boolean isSuccess() {
+			return success_;
+		}
+		@Override
+		public final long getStartNanos() {
+			return start_;
+		}
+		@Override
+		public final long getSigningNanos() {
+			return signing_;
+		}
+		@Override
+		public final long getSignedNanos() {
+			return signed_;
+		}
+		@Override
+		public final long getResponseNanos() {
+			return response_;
+		}
+		@Override
+		public final long getConvertingNanos() {
+			return converting_;
+		}
+		@Override
+		public final long getConvertedNanos() {
+			return converted_;
+		}
+		@Override
+		public final long getCompleteNanos() {
+			return complete_;
+		}
+		@Override
+		public final Either<F,S> get(final String action) {
+			return execute(() -> super.get(getUrl(action, null)));
+		}
+		public final Either<F,S> get(final String action,
+			final HavaloKey key) {
+			return execute(() -> super.get(getUrl(action, key)));
 		}
-		public final Either<HttpFailure,T> head(final String action,
-			final String... path) {
-			return super.head(buildPath(action, path));
+		@Override
+		public final Either<F,S> post(final String action) {
+			return execute(() -> super.post(getUrl(action, null)));
+		}
+		public final Either<F,S> put(final String action,
+			final HavaloKey key) {
+			return execute(() -> super.put(getUrl(action, key)));
+		}
+		public final Either<F,S> delete(final String action,
+			final HavaloKey key) {
+			return execute(() -> super.delete(getUrl(action, key)));
+		}
+		public final Either<F,S> head(final String action,
+			final HavaloKey key) {
+			return execute(() -> super.head(getUrl(action, key)));
 		}
 	}
 		
 	private abstract class HavaloGsonClosure<T>
-		extends GsonOrHttpFailureClosure<T> {
-		private final int expectStatus_;
-		public HavaloGsonClosure(final HttpClient client, final Gson gson,
+		extends HavaloBaseClosure<HttpFailure,T> {
+		private final Gson gson_;
+		private final Class<T> clazz_;
+		public HavaloGsonClosure(final HttpClient client,
+			final HavaloOperation operation, final Gson gson,
 			final Class<T> clazz, final int expectStatus) {
-			super(client, gson, clazz);
-			expectStatus_ = expectStatus;
+			super(client, operation, expectStatus);
+			gson_ = gson;
+			clazz_ = clazz;
 		}
 		@Override
 		public void before(final HttpRequestBase request) throws Exception {
-			signRequest(request);
-		}
-		@Override
-		public boolean check(final HttpResponse response,
-			final HttpContext context) {
-			return expectStatus_ == response.getStatusLine().getStatusCode();
+			// JSON responses (listings in particular) compress very well,
+			// so ask the server to gzip them on the wire.
+			request.setHeader(ACCEPT_ENCODING, GZIP_ENCODING);
+			super.before(request);
 		}
 		@Override
-		public final Either<HttpFailure,T> get(final String action) {
-			return super.get(buildPath(action));
+		public T convertSuccess(final HttpSuccess success) throws Exception {
+			// Feed the (possibly decompressed) entity straight into the
+			// Gson parser as it streams in, no intermediate buffering.
+			try(final Reader reader = new InputStreamReader(
+				getDecodedContent(success.getResponse()), UTF_8)) {
+				return gson_.fromJson(reader, clazz_);
+			}
 		}
 		@Override
-		public final Either<HttpFailure,T> post(final String action) {
-			return super.post(buildPath(action));
-		}
-		public final Either<HttpFailure,T> put(final String action,
-			final String... path) {
-			return super.put(buildPath(action, path));
+		public HttpFailure convertFailure(final HttpFailure failure) {
+			return failure;
 		}
 	}
 	
 	private abstract class HavaloStatusCodeClosure
-		extends StatusCodeOrHttpFailureClosure {
-		private final int expectStatus_;
+		extends HavaloBaseClosure<HttpFailure,Integer> {
 		public HavaloStatusCodeClosure(final HttpClient client,
-			final int expectStatus) {
-			super(client);
-			expectStatus_ = expectStatus;
+			final HavaloOperation operation, final int expectStatus) {
+			super(client, operation, expectStatus);
 		}
 		@Override
-		public void before(final HttpRequestBase request) throws Exception {
-			signRequest(request);
+		public Integer convertSuccess(final HttpSuccess success) {
+			return success.getResponse().getStatusLine().getStatusCode();
 		}
 		@Override
-		public boolean check(final HttpResponse response,
-			final HttpContext context) {
-			return expectStatus_ == response.getStatusLine().getStatusCode();
+		public HttpFailure convertFailure(final HttpFailure failure) {
+			return failure;
 		}
-		public final Either<HttpFailure,Integer> delete(
-			final String action, final String... path) {
-			return super.delete(buildPath(action, path));
+	}
+	
+	private abstract class HavaloHeadersClosure
+		extends HavaloBaseClosure<HttpFailure,List<Header>> {
+		public HavaloHeadersClosure(final HttpClient client,
+			final HavaloOperation operation, final int expectStatus) {
+			super(client, operation, expectStatus);
+		}
+		@Override
+		public List<Header> convertSuccess(final HttpSuccess success) {
+			return Arrays.asList(success.getResponse().getAllHeaders());
+		}
+		@Override
+		public HttpFailure convertFailure(final HttpFailure failure) {
+			return failure;
 		}
 	}
 	
 	private abstract class HavaloEntityConverterClosure<F,S>
-		extends CustomEntityConverterClosure<F,S> {
-		private final int expectStatus_;
+		extends HavaloBaseClosure<F,S> {
+		private final CustomEntityConverter<F,S> converter_;
 		public HavaloEntityConverterClosure(final HttpClient client,
+			final HavaloOperation operation,
 			final CustomEntityConverter<F,S> converter,
 			final int expectStatus) {
-			super(client, converter);
-			expectStatus_ = expectStatus;
+			super(client, operation, expectStatus);
+			converter_ = converter;
 		}
 		@Override
-		public void before(final HttpRequestBase request) throws Exception {
-			signRequest(request);
+		public S convertSuccess(final HttpSuccess success) throws Exception {
+			return converter_.success(success);
 		}
 		@Override
-		public boolean check(final HttpResponse response,
-			final HttpContext context) {
-			return expectStatus_ == response.getStatusLine().getStatusCode();
-		}
-		public final Either<F,S> get(final String action,
-			final String... path) {
-			return super.get(buildPath(action, path));
+		public F convertFailure(final HttpFailure failure) {
+			return converter_.failure(failure);
 		}
 	}
 	
@@ -229,16 +688,18 @@ public final class HavaloClient extends HavaloAbstractService {
 		// The POST of auth credentials is only successful when the
 		// resulting status code is a 200 OK.  Any other status
 		// code on the response is failure.
-		return new HavaloGsonClosure<KeyPair>(client_, gson_.create(),
-			KeyPair.class, SC_OK){}.post(API_ACTION_AUTHENTICATE);
+		return new HavaloGsonClosure<KeyPair>(client_, AUTHENTICATE,
+			gson_, KeyPair.class, SC_OK){}
+			.post(API_ACTION_AUTHENTICATE);
 	}
 	
 	public Either<HttpFailure,KeyPair> createRepository() {
 		// The POST of a repository is only successful when the
 		// resulting status code is a 201 Created.  Any other status
 		// code on the response is failure.
-		return new HavaloGsonClosure<KeyPair>(client_, gson_.create(),
-			KeyPair.class, SC_OK){}.post(API_ACTION_REPOSITORY);
+		return new HavaloGsonClosure<KeyPair>(client_, CREATE_REPOSITORY,
+			gson_, KeyPair.class, SC_OK){}
+			.post(API_ACTION_REPOSITORY);
 	}
 	
 	public Either<HttpFailure,Integer> deleteRepository(
@@ -246,23 +707,65 @@ public final class HavaloClient extends HavaloAbstractService {
 		// The DELETE of a repository is only successful when the
 		// resulting status code is a 204 No Content.  Any other
 		// status code on the response is failure.
-		return new HavaloStatusCodeClosure(client_, SC_NO_CONTENT){}
-			.delete(API_ACTION_REPOSITORY, repoId.toString());
+		return new HavaloStatusCodeClosure(client_, DELETE_REPOSITORY,
+			SC_NO_CONTENT){}.delete(API_ACTION_REPOSITORY,
+				HavaloKey.of(repoId.toString()));
 	}
 	
-	public Either<HttpFailure,ObjectList> listObjects(
-		final String... path) {
+	/**
+	 * Lists all objects whose name starts with the given key, or every
+	 * object in the repository if the key is null.
+	 */
+	public Either<HttpFailure,ObjectList> listObjects(final HavaloKey prefix) {
 		// The listing of objects is only successful when the
 		// resulting status code is a 200 OK.  Any other status
 		// code on the response is failure.
-		return new HavaloGsonClosure<ObjectList>(client_, gson_.create(), 
-			ObjectList.class, SC_OK) {
+		return new HavaloGsonClosure<ObjectList>(client_, LIST_OBJECTS,
+			gson_, ObjectList.class, SC_OK) {
+			@Override
+			public void before(final HttpRequestBase request) throws Exception {
+				if(prefix != null) {
+					request.setURI(new URIBuilder(request.getURI())
+						.addParameter(API_PARAM_STARTSWITH, prefix.getName())
+						.build());
+				}
+				super.before(request);
+			}
+		}.get(API_ACTION_REPOSITORY);
+	}
+	
+	public Either<HttpFailure,ObjectList> listObjects(
+		final String... path) {
+		return listObjects((path == null || path.length == 0) ? null :
+			HavaloKey.of(path));
+	}
+	
+	/**
+	 * Lists a single page of at most limit objects whose name starts with
+	 * the given key, or of every object in the repository if the key is
+	 * null.  Each page starts right after the marker, the name of the last
+	 * object on the previous page in the order the API listed them (see
+	 * {@link ObjectList#getLastListedName()}), or from the top if the marker
+	 * is null.  Havalo lists pages in {@link FileObject} (reverse name)
+	 * order, but the marker works the same whatever the order.  A page with
+	 * fewer than limit objects is the last.  See
+	 * {@link HavaloListingIterator} to walk every page.
+	 */
+	public Either<HttpFailure,ObjectList> listObjects(final int limit,
+		final String marker, final HavaloKey prefix) {
+		checkArgument(limit > 0, "Limit must be greater than zero!");
+		return new HavaloGsonClosure<ObjectList>(client_, LIST_OBJECTS,
+			gson_, ObjectList.class, SC_OK) {
 			@Override
 			public void before(final HttpRequestBase request) throws Exception {
-				final URIBuilder builder = new URIBuilder(request.getURI());
-				if(path != null && path.length > 0) {
+				final URIBuilder builder = new URIBuilder(request.getURI())
+					.addParameter(API_PARAM_LIMIT, Integer.toString(limit));
+				if(marker != null) {
+					builder.addParameter(API_PARAM_MARKER, marker);
+				}
+				if(prefix != null) {
 					builder.addParameter(API_PARAM_STARTSWITH,
-						varargsToPrefixString(path));
+						prefix.getName());
 				}
 				request.setURI(builder.build());
 				super.before(request);
@@ -270,17 +773,24 @@ public final class HavaloClient extends HavaloAbstractService {
 		}.get(API_ACTION_REPOSITORY);
 	}
 	
+	public Either<HttpFailure,ObjectList> listObjects(final int limit,
+		final String marker, final String... path) {
+		return listObjects(limit, marker, (path == null || path.length == 0) ?
+			null : HavaloKey.of(path));
+	}
+	
 	public Either<HttpFailure,ObjectList> listObjects() {
-		return listObjects((String[])null);
+		return listObjects((HavaloKey)null);
 	}
 	
 	public Either<HttpFailure,List<Header>> getObject(
-		final OutputStream destination, final String... path) {
+		final OutputStream destination, final HavaloKey key) {
 		return getObject(new CustomEntityConverter<HttpFailure,List<Header>>() {
 			@Override
 			public List<Header> success(final HttpSuccess success) throws Exception {
 				// Copy the object.
-				copyLarge(success.getContent(), destination);
+				config_.getBufferPool().copy(success.getContent(),
+					destination);
 				// Get and return the headers on the HTTP response.
 				// This is where stuff like "Content-Type" and
 				// "Content-Length" live.
@@ -290,13 +800,18 @@ public final class HavaloClient extends HavaloAbstractService {
 			public HttpFailure failure(final HttpFailure failure) {
 				return failure;
 			}
-		}, path);
+		}, key);
+	}
+	
+	public Either<HttpFailure,List<Header>> getObject(
+		final OutputStream destination, final String... path) {
+		return getObject(destination, toKey(path));
 	}
 	
 	public <F,S> Either<F,S> getObject(
 		final CustomSuccessEntityConverter<S> success,
 		final CustomFailureEntityConverter<F> failure,
-		final String... path) {
+		final HavaloKey key) {
 		// Create a new custom entity converter using the provided
 		// success and failure handlers.  This acts as a convenience
 		// "interface" between the entity converters and units of work
@@ -310,67 +825,299 @@ public final class HavaloClient extends HavaloAbstractService {
 			public F failure(final HttpFailure hFailure) {
 				return failure.failure(hFailure);
 			}
-		}, path);
+		}, key);
 	}
 	
-	public <F,S> Either<F,S> getObject(final CustomEntityConverter<F,S> converter,
+	public <F,S> Either<F,S> getObject(
+		final CustomSuccessEntityConverter<S> success,
+		final CustomFailureEntityConverter<F> failure,
 		final String... path) {
+		return getObject(success, failure, toKey(path));
+	}
+	
+	public <F,S> Either<F,S> getObject(final CustomEntityConverter<F,S> converter,
+		final HavaloKey key) {
 		// The GET of an object is only successful when the
 		// resulting status code is a 200 OK.  Any other status
 		// code on the response is failure.
-		return new HavaloEntityConverterClosure<F,S>(client_, converter,
-			SC_OK){}.get(API_ACTION_OBJECT, path);
+		return new HavaloEntityConverterClosure<F,S>(client_, GET_OBJECT,
+			converter, SC_OK){}.get(API_ACTION_OBJECT, key);
+	}
+	
+	public <F,S> Either<F,S> getObject(final CustomEntityConverter<F,S> converter,
+		final String... path) {
+		return getObject(converter, toKey(path));
 	}
 
-	public Either<HttpFailure,List<Header>> getObjectMetaData(
+	/**
+	 * Gets the object in full, its body read into memory along with the
+	 * response headers.
+	 */
+	public Either<HttpFailure,HavaloObject> getObject(final HavaloKey key) {
+		return getObject(new CustomEntityConverter<HttpFailure,HavaloObject>() {
+			@Override
+			public HavaloObject success(final HttpSuccess success)
+				throws Exception {
+				final long length = success.getResponse().getEntity()
+					.getContentLength();
+				final ByteArrayOutputStream os = new ByteArrayOutputStream(
+					(length > 0L && length < Integer.MAX_VALUE) ?
+						(int)length : 32);
+				config_.getBufferPool().copy(success.getContent(), os);
+				return new HavaloObject(key, os.toByteArray(),
+					Arrays.asList(success.getResponse().getAllHeaders()));
+			}
+			@Override
+			public HttpFailure failure(final HttpFailure failure) {
+				return failure;
+			}
+		}, key);
+	}
+	
+	public Either<HttpFailure,HavaloObject> getObject(final String... path) {
+		return getObject(toKey(path));
+	}
+	
+	/**
+	 * Gets every object at the given paths in full, with at most
+	 * maxInFlight requests in flight at once.  Returns once every request
+	 * has completed or the timeout passes (zero waits indefinitely),
+	 * whichever comes first, a result for each distinct path in the order
+	 * given.  Paths without a result by the deadline get a failure caused
+	 * by a {@link java.util.concurrent.TimeoutException}, but their
+	 * requests already in flight are not aborted, and keep their
+	 * connections until they complete; call this on a
+	 * {@link #withTimeout(long, TimeUnit)} view to bound them too.  If
+	 * given, the listener is called with each result as it comes in, one
+	 * at a time; anything it throws is logged and otherwise ignored.
+	 */
+	public Map<HavaloKey,Either<HttpFailure,HavaloObject>> getObjects(
+		final Collection<String[]> paths, final int maxInFlight,
+		final long timeout, final TimeUnit unit,
+		final BiConsumer<HavaloKey,Either<HttpFailure,HavaloObject>> listener) {
+		return HavaloBatch.execute(toKeys(paths), maxInFlight,
+			unit.toNanos(timeout), this::getObject, listener);
+	}
+	
+	public Map<HavaloKey,Either<HttpFailure,HavaloObject>> getObjects(
+		final Collection<String[]> paths, final int maxInFlight,
+		final long timeout, final TimeUnit unit) {
+		return getObjects(paths, maxInFlight, timeout, unit, null);
+	}
+	
+	public Map<HavaloKey,Either<HttpFailure,HavaloObject>> getObjects(
+		final Collection<String[]> paths) {
+		return getObjects(paths, DEFAULT_BATCH_MAX_IN_FLIGHT, 0L,
+			MILLISECONDS, null);
+	}
+	
+	/**
+	 * Gets the meta data of every object at the given paths, exactly like
+	 * {@link #getObjects(Collection, int, long, TimeUnit, BiConsumer)}.
+	 */
+	public Map<HavaloKey,Either<HttpFailure,List<Header>>> getObjectMetaData(
+		final Collection<String[]> paths, final int maxInFlight,
+		final long timeout, final TimeUnit unit,
+		final BiConsumer<HavaloKey,Either<HttpFailure,List<Header>>> listener) {
+		return HavaloBatch.execute(toKeys(paths), maxInFlight,
+			unit.toNanos(timeout), this::getObjectMetaData, listener);
+	}
+	
+	public Map<HavaloKey,Either<HttpFailure,List<Header>>> getObjectMetaData(
+		final Collection<String[]> paths, final int maxInFlight,
+		final long timeout, final TimeUnit unit) {
+		return getObjectMetaData(paths, maxInFlight, timeout, unit, null);
+	}
+	
+	public Map<HavaloKey,Either<HttpFailure,List<Header>>> getObjectMetaData(
+		final Collection<String[]> paths) {
+		return getObjectMetaData(paths, DEFAULT_BATCH_MAX_IN_FLIGHT, 0L,
+			MILLISECONDS, null);
+	}
+	
+	/**
+	 * Opens the object for reading, returning its body as a stream once the
+	 * response headers have arrived.  Up to the given number of bytes are
+	 * read ahead of the caller on a background thread.  The returned stream
+	 * must be closed, which releases the connection right away even if the
+	 * object hasn't been read in full.
+	 */
+	public Either<HttpFailure,HavaloObjectInputStream> openObject(
+		final int readAheadBytes, final HavaloKey key) {
+		final HavaloObjectInputStream stream =
+			new HavaloObjectInputStream(readAheadBytes,
+				config_.getBufferPool());
+		final CompletableFuture<Either<HttpFailure,HavaloObjectInputStream>>
+			opened = new CompletableFuture<>();
+		HavaloObjectInputStream.execute(() -> {
+			Either<HttpFailure,Void> result = null;
+			try {
+				// The GET of an object is only successful when the
+				// resulting status code is a 200 OK.  Any other status
+				// code on the response is failure.
+				result = new HavaloBaseClosure<HttpFailure,Void>(client_,
+					GET_OBJECT, SC_OK) {
+					@Override
+					public void before(final HttpRequestBase request)
+						throws Exception {
+						stream.setRequest(request);
+						super.before(request);
+					}
+					@Override
+					public Void convertSuccess(final HttpSuccess success)
+						throws Exception {
+						stream.setHeaders(success.getResponse().getAllHeaders());
+						opened.complete(Right.right(stream));
+						stream.readAhead(success.getContent());
+						return null;
+					}
+					@Override
+					public HttpFailure convertFailure(final HttpFailure failure) {
+						return failure;
+					}
+				}.get(API_ACTION_OBJECT, key);
+			} finally {
+				final HttpFailure failure = (result == null) ?
+					new HttpFailure(new HavaloClientException("Failed to " +
+						"open object: " + key)) : result.left();
+				// Either the object failed to open, or the stream is told
+				// the object has ended (possibly in error).
+				if(result != null && result.success()) {
+					stream.finish(null);
+				} else if(!opened.complete(Left.left(failure))) {
+					stream.finish(failure.getCause());
+				}
+			}
+		});
+		try {
+			return opened.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			stream.close();
+			return Left.left(new HttpFailure(e));
+		} catch (ExecutionException e) {
+			stream.close();
+			return Left.left(new HttpFailure(e));
+		}
+	}
+	
+	public Either<HttpFailure,HavaloObjectInputStream> openObject(
+		final int readAheadBytes, final String... path) {
+		return openObject(readAheadBytes, toKey(path));
+	}
+	
+	public Either<HttpFailure,HavaloObjectInputStream> openObject(
+		final HavaloKey key) {
+		return openObject(DEFAULT_READ_AHEAD_BYTES, key);
+	}
+	
+	public Either<HttpFailure,HavaloObjectInputStream> openObject(
 		final String... path) {
+		return openObject(DEFAULT_READ_AHEAD_BYTES, toKey(path));
+	}
+	
+	public Either<HttpFailure,List<Header>> getObjectMetaData(
+		final HavaloKey key) {
 		// The HEAD of an object is only successful when the
 		// resulting status code is a 200 OK.  Any other status
 		// code on the response is failure.
-		return new HavaloBaseClosure<List<Header>>(client_, SC_OK) {
-			@Override
-			public List<Header> success(final HttpSuccess success) {
-				return Arrays.asList(success.getResponse().getAllHeaders());
-			}
-		}.head(API_ACTION_OBJECT, path);
+		return new HavaloHeadersClosure(client_, GET_OBJECT_METADATA,
+			SC_OK){}.head(API_ACTION_OBJECT, key);
+	}
+	
+	public Either<HttpFailure,List<Header>> getObjectMetaData(
+		final String... path) {
+		return getObjectMetaData(toKey(path));
 	}
 	
 	public Either<HttpFailure,FileObject> putObject(final InputStream input,
-		final long contentLength, final Header[] headers, final String... path) {
+		final long contentLength, final Header[] headers, final HavaloKey key) {
 		// The upload of an object is only successful when the
 		// resulting status code is a 200 OK.  Any other status
 		// code on the response is failure.
-		return new HavaloGsonClosure<FileObject>(client_, gson_.create(),
-			FileObject.class, SC_OK) {
+		return new HavaloGsonClosure<FileObject>(client_, PUT_OBJECT,
+			gson_, FileObject.class, SC_OK) {
 			@Override
 			public void before(final HttpRequestBase request) throws Exception {
 				if(headers != null) {
 					request.setHeaders(headers);
 				}
-				((HttpPut)request).setEntity(new InputStreamEntity(input,
-					contentLength));
+				if(expectContinue(contentLength, headers)) {
+					// Hold back the body until the API tells us it will
+					// actually accept it; no point streaming a large body
+					// only to be told 401 Unauthorized or 409 Conflict.
+					request.setHeader(EXPECT, EXPECT_CONTINUE);
+				}
+				((HttpPut)request).setEntity(new HavaloStreamEntity(input,
+					contentLength, config_.getBufferPool()));
 				super.before(request);
 			}
-		}.put(API_ACTION_OBJECT, path);
+		}.put(API_ACTION_OBJECT, key);
+	}
+	
+	public Either<HttpFailure,FileObject> putObject(final InputStream input,
+		final long contentLength, final Header[] headers, final String... path) {
+		return putObject(input, contentLength, headers, toKey(path));
 	}
 			
-	public Either<HttpFailure,FileObject> putObject(final byte[] input,
+	/**
+	 * Uploads the given stream, of unknown length, read to its end.  The
+	 * stream is spooled first, in memory or to a temporary file past the
+	 * configured threshold, and then sent with a known length; or if so
+	 * configured, sent as it's read with chunked transfer encoding.  Does
+	 * not close the input stream.
+	 */
+	public Either<HttpFailure,FileObject> putObject(final InputStream input,
+		final Header[] headers, final HavaloKey key) {
+		if(config_.isChunkedUploads()) {
+			// The entity closes whatever it's given once it's written,
+			// shield the caller's stream from that.
+			return putObject(new CloseShieldInputStream(input), -1L, headers,
+				key);
+		}
+		try(final HavaloSpool spool = HavaloSpool.spool(input,
+				config_.getSpoolThreshold(), config_.getSpoolDirectory(),
+				config_.getBufferPool());
+			final InputStream spooled = spool.openStream()) {
+			return putObject(spooled, spool.getLength(), headers, key);
+		} catch (IOException e) {
+			return Left.left(new HttpFailure(e));
+		}
+	}
+	
+	public Either<HttpFailure,FileObject> putObject(final InputStream input,
 		final Header[] headers, final String... path) {
+		return putObject(input, headers, toKey(path));
+	}
+	
+	public Either<HttpFailure,FileObject> putObject(final byte[] input,
+		final Header[] headers, final HavaloKey key) {
 		final InputStream is = new ByteArrayInputStream(input);
-		return putObject(is, (long)input.length, headers, path);
+		return putObject(is, (long)input.length, headers, key);
+	}
+	
+	public Either<HttpFailure,FileObject> putObject(final byte[] input,
+		final Header[] headers, final String... path) {
+		return putObject(input, headers, toKey(path));
+	}
+	
+	public Either<HttpFailure,FileObject> putObject(final byte[] input,
+		final HavaloKey key) {
+		return putObject(input, null, key);
 	}
 	
 	public Either<HttpFailure,FileObject> putObject(final byte[] input,
 		final String... path) {
-		return putObject(input, null, path);
+		return putObject(input, null, toKey(path));
 	}
 		
 	public Either<HttpFailure,Integer> deleteObject(final Header[] headers,
-		final String... path) {
+		final HavaloKey key) {
 		// The deletion of an object is only successful when the
 		// resulting status code is a 204 No Content.  Any other status
 		// code on the response is failure.
-		return new HavaloStatusCodeClosure(client_, SC_NO_CONTENT) {
+		return new HavaloStatusCodeClosure(client_, DELETE_OBJECT,
+			SC_NO_CONTENT) {
 			@Override
 			public void before(final HttpRequestBase request) throws Exception {
 				if(headers != null) {
@@ -378,14 +1125,215 @@ public final class HavaloClient extends HavaloAbstractService {
 				}
 				super.before(request);
 			}
-		}.delete(API_ACTION_OBJECT, path);
+		}.delete(API_ACTION_OBJECT, key);
+	}
+	
+	public Either<HttpFailure,Integer> deleteObject(final Header[] headers,
+		final String... path) {
+		return deleteObject(headers, toKey(path));
+	}
+	
+	public Either<HttpFailure,Integer> deleteObject(final HavaloKey key) {
+		return deleteObject(null, key);
 	}
 	
 	public Either<HttpFailure,Integer> deleteObject(final String... path) {
-		return deleteObject(null, path);
+		return deleteObject(null, toKey(path));
+	}
+	
+	/**
+	 * Atomically updates the object at the given path using an optimistic
+	 * compare-and-swap: the object and its ETag are fetched, the updater
+	 * is applied to the current bytes, and the result is PUT back with an
+	 * If-Match request header carrying the fetched ETag.  If another
+	 * writer got there first the API responds with a 409 Conflict, in which
+	 * case the whole read-modify-write is retried after a randomized
+	 * exponential backoff, up to maxAttempts times.  Note that the updater
+	 * may be called more than once, and so should be free of side effects.
+	 * Any headers provided are sent with each PUT.
+	 * @param updater given the current bytes of the object, returns the
+	 * new bytes to be written
+	 * @param headers additional headers to send with the PUT, may be null
+	 * @param maxAttempts the maximum number of read-modify-write attempts
+	 * @param key the path to the object to update
+	 * @return
+	 */
+	public Either<HttpFailure,FileObject> update(
+		final Function<byte[],byte[]> updater, final Header[] headers,
+		final int maxAttempts, final HavaloKey key) {
+		checkNotNull(updater, "The updater function cannot be null!");
+		checkArgument(maxAttempts > 0, "Max attempts must be greater " +
+			"than zero!");
+		Either<HttpFailure,FileObject> put = null;
+		for(int attempt = 0; attempt < maxAttempts; attempt++) {
+			if(attempt > 0 && !backoff(attempt)) {
+				// Interrupted while backing off, give up and hand back
+				// the last conflict.
+				break;
+			}
+			// Fetch the current object, and its ETag.
+			final ByteArrayOutputStream os = new ByteArrayOutputStream();
+			final Either<HttpFailure,List<Header>> get = getObject(os, key);
+			if(!get.success()) {
+				return Left.left(get.left());
+			}
+			final String eTag = getFirstHeader(get.right(), ETAG);
+			if(eTag == null) {
+				return Left.left(new HttpFailure(new HavaloClientException(
+					"Cannot update object without an ETag on the GET " +
+					"response: " + key)));
+			}
+			final byte[] updated = checkNotNull(
+				updater.apply(os.toByteArray()),
+				"The updater function returned a null object!");
+			put = putObject(updated, withHeader(headers,
+				new BasicHeader(IF_MATCH, eTag)), key);
+			if(put.success() || put.left().getStatusCode() != SC_CONFLICT) {
+				break;
+			}
+			// Someone else modified the object between our GET and PUT.
+			updateConflicts_.incrementAndGet();
+			if(config_.getMetricsListener() != null) {
+				config_.getMetricsListener().onUpdateConflict(key);
+			}
+		}
+		return put;
+	}
+	
+	public Either<HttpFailure,FileObject> update(
+		final Function<byte[],byte[]> updater, final Header[] headers,
+		final int maxAttempts, final String... path) {
+		return update(updater, headers, maxAttempts, toKey(path));
+	}
+	
+	public Either<HttpFailure,FileObject> update(
+		final Function<byte[],byte[]> updater, final Header[] headers,
+		final HavaloKey key) {
+		return update(updater, headers, DEFAULT_UPDATE_MAX_ATTEMPTS, key);
 	}
 	
-	private static final String buildPath(final String action,
+	public Either<HttpFailure,FileObject> update(
+		final Function<byte[],byte[]> updater, final Header[] headers,
+		final String... path) {
+		return update(updater, headers, DEFAULT_UPDATE_MAX_ATTEMPTS,
+			toKey(path));
+	}
+	
+	public Either<HttpFailure,FileObject> update(
+		final Function<byte[],byte[]> updater, final HavaloKey key) {
+		return update(updater, null, key);
+	}
+	
+	public Either<HttpFailure,FileObject> update(
+		final Function<byte[],byte[]> updater, final String... path) {
+		return update(updater, null, toKey(path));
+	}
+	
+	/**
+	 * Returns the number of times an {@link #update} attempt lost a race
+	 * against another writer (the conditional PUT was rejected with a
+	 * 409 Conflict) since this client was created.  Views returned by
+	 * {@link #withTimeout} and {@link #withPriority} share this count with
+	 * the client they were created from.  Each conflict is also reported to
+	 * the configured
+	 * {@link com.kolich.havalo.client.metrics.HavaloMetricsListener}, if
+	 * any.
+	 * @return
+	 */
+	public long getUpdateConflictCount() {
+		return updateConflicts_.get();
+	}
+	
+	private static final ScheduledThreadPoolExecutor newDeadlineExecutor() {
+		final ScheduledThreadPoolExecutor executor =
+			new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+				.setNameFormat(DEADLINE_THREAD_NAME).setDaemon(true).build());
+		// Nearly every deadline is disarmed long before it would fire.
+		executor.setRemoveOnCancelPolicy(true);
+		return executor;
+	}
+	
+	/**
+	 * Sleeps for a random amount of time bounded by an exponentially
+	 * growing ceiling, based on the given attempt number.  Returns false
+	 * if the calling thread was interrupted while sleeping.
+	 */
+	private static final boolean backoff(final int attempt) {
+		final long ceiling = Math.min(UPDATE_BACKOFF_MAX_MS,
+			UPDATE_BACKOFF_BASE_MS << Math.min(attempt - 1, 16));
+		try {
+			Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling) + 1L);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+	
+	/**
+	 * Returns true if a PUT of the given length, and with the given
+	 * request headers, should be sent with an "Expect: 100-continue".
+	 */
+	private final boolean expectContinue(final long contentLength,
+		final Header[] headers) {
+		final long threshold = config_.getExpectContinueThreshold();
+		if(threshold >= 0L && (contentLength < 0L ||
+			contentLength >= threshold)) {
+			return true;
+		}
+		if(config_.isExpectContinueOnConditional() && headers != null) {
+			for(final Header h : headers) {
+				if(IF_MATCH.equalsIgnoreCase(h.getName())) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	private static final Header[] withHeader(final Header[] headers,
+		final Header header) {
+		if(headers == null) {
+			return new Header[]{header};
+		}
+		final Header[] result = Arrays.copyOf(headers, headers.length + 1);
+		result[headers.length] = header;
+		return result;
+	}
+	
+	private static final String getFirstHeader(final List<Header> headers,
+		final String name) {
+		for(final Header h : headers) {
+			if(h.getName().equalsIgnoreCase(name)) {
+				return h.getValue();
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the content of the entity attached to the given response,
+	 * transparently wrapped in a {@link GZIPInputStream} if the server
+	 * responded with a gzip'ed entity.  Note that if the underlying
+	 * {@link HttpClient} already decompressed the entity on our behalf,
+	 * it will have also removed the Content-Encoding header from the
+	 * response, in which case the content is returned as-is.
+	 * @param response the HTTP response
+	 * @return
+	 */
+	private static final InputStream getDecodedContent(
+		final HttpResponse response) throws IOException {
+		final InputStream content = response.getEntity().getContent();
+		final Header encoding = response.getFirstHeader(CONTENT_ENCODING);
+		if(encoding != null &&
+			GZIP_ENCODING.equalsIgnoreCase(encoding.getValue())) {
+			return new GZIPInputStream(content);
+		}
+		return content;
+	}
+	
+	// Package private so the benchmarks can exercise it directly.
+	static final String buildPath(final String action,
 		final String... path) {
 		final StringBuilder sb = new StringBuilder(SLASH_STRING);
 		sb.append(action);
@@ -396,8 +1344,39 @@ public final class HavaloClient extends HavaloAbstractService {
 		return sb.toString();
 	}
 	
-	private static final String buildPath(final String action) {
-		return buildPath(action, (String[])null);
+	/**
+	 * Returns the complete request URL for the given action and key (may
+	 * be null).  Handing the closures a complete URL means it's parsed into
+	 * a {@link URI} only once, and the object path of a key only ever has
+	 * to be encoded once.
+	 */
+	// Package private so the benchmarks can exercise it directly.
+	final String getUrl(final String action, final HavaloKey key) {
+		if(key == null) {
+			return apiBase_ + SLASH_STRING + action;
+		} else if(API_ACTION_OBJECT.equals(action)) {
+			return apiBase_ + key.getObjectResource();
+		}
+		return apiBase_ + SLASH_STRING + action + SLASH_STRING +
+			key.getEncodedName();
+	}
+	
+	/**
+	 * Converts a varargs path into a key, a null path (no key at all)
+	 * stays null.
+	 */
+	private static final HavaloKey toKey(final String... path) {
+		return (path == null) ? null : HavaloKey.of(path);
+	}
+	
+	private static final List<HavaloKey> toKeys(
+		final Collection<String[]> paths) {
+		checkNotNull(paths, "The paths cannot be null!");
+		final List<HavaloKey> keys = new ArrayList<>(paths.size());
+		for(final String[] path : paths) {
+			keys.add(HavaloKey.of(path));
+		}
+		return keys;
 	}
 	
 }
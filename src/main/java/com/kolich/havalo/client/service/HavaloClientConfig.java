@@ -0,0 +1,399 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.service;
+
+import com.kolich.havalo.client.events.HavaloRequestListener;
+import com.kolich.havalo.client.metrics.HavaloMetricsListener;
+import com.kolich.havalo.client.trace.HavaloTraceRecorder;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Immutable tuning knobs for a {@link HavaloClient}.  Instances are created
+ * using a {@link HavaloClientConfig.Builder}; any option left untouched on
+ * the builder takes its default value.
+ */
+public final class HavaloClientConfig {
+	
+	/**
+	 * Sending "Expect: 100-continue" on PUT's is disabled by default.
+	 */
+	private static final long DEFAULT_EXPECT_CONTINUE_THRESHOLD = -1L;
+	
+	/**
+	 * Uploads of unknown length are held in memory up to 1MB by default.
+	 */
+	private static final long DEFAULT_SPOOL_THRESHOLD = 1024L * 1024L;
+	
+	/**
+	 * A PUT whose body is at least this many bytes (or of unknown length)
+	 * is sent with an "Expect: 100-continue" request header.  A negative
+	 * value disables the size based check.
+	 */
+	private final long expectContinueThreshold_;
+	
+	/**
+	 * If true, conditional PUT's (those carrying an If-Match request
+	 * header) are always sent with an "Expect: 100-continue" request header.
+	 */
+	private final boolean expectContinueOnConditional_;
+	
+	/**
+	 * Notified once every request completes, may be null.
+	 */
+	private final HavaloMetricsListener metricsListener_;
+	
+	/**
+	 * Called as each request moves through its lifecycle, may be null.
+	 */
+	private final HavaloRequestListener requestListener_;
+	
+	/**
+	 * Records every completed request to a binary trace, may be null.
+	 */
+	private final HavaloTraceRecorder traceRecorder_;
+	
+	/**
+	 * Uploads of unknown length are spooled in memory up to this many
+	 * bytes, and to a temporary file beyond that.
+	 */
+	private final long spoolThreshold_;
+	
+	/**
+	 * Where spooled uploads spill to, null for the default temporary
+	 * directory.
+	 */
+	private final File spoolDirectory_;
+	
+	/**
+	 * If true, uploads of unknown length are sent as they're read with
+	 * chunked transfer encoding, instead of being spooled.
+	 */
+	private final boolean chunkedUploads_;
+	
+	/**
+	 * The transfer buffers used by every streaming path.
+	 */
+	private final HavaloBufferPool bufferPool_;
+	
+	/**
+	 * Bandwidth and request rate limits, may be null.
+	 */
+	private final HavaloRateLimits rateLimits_;
+	
+	/**
+	 * How long every call is given to complete, body and all, before it's
+	 * aborted; zero for no deadline.
+	 */
+	private final long timeoutNanos_;
+	
+	/**
+	 * Schedules requests by priority, may be null.
+	 */
+	private final HavaloRequestScheduler scheduler_;
+	
+	/**
+	 * The priority class of every request.
+	 */
+	private final HavaloPriority priority_;
+	
+	private HavaloClientConfig(final Builder builder) {
+		expectContinueThreshold_ = builder.expectContinueThreshold_;
+		expectContinueOnConditional_ = builder.expectContinueOnConditional_;
+		metricsListener_ = builder.metricsListener_;
+		requestListener_ = builder.requestListener_;
+		traceRecorder_ = builder.traceRecorder_;
+		spoolThreshold_ = builder.spoolThreshold_;
+		spoolDirectory_ = builder.spoolDirectory_;
+		chunkedUploads_ = builder.chunkedUploads_;
+		bufferPool_ = builder.bufferPool_;
+		rateLimits_ = builder.rateLimits_;
+		timeoutNanos_ = builder.timeoutNanos_;
+		scheduler_ = builder.scheduler_;
+		priority_ = builder.priority_;
+	}
+	
+	public long getExpectContinueThreshold() {
+		return expectContinueThreshold_;
+	}
+	
+	public boolean isExpectContinueOnConditional() {
+		return expectContinueOnConditional_;
+	}
+	
+	public HavaloMetricsListener getMetricsListener() {
+		return metricsListener_;
+	}
+	
+	public HavaloRequestListener getRequestListener() {
+		return requestListener_;
+	}
+	
+	public HavaloTraceRecorder getTraceRecorder() {
+		return traceRecorder_;
+	}
+	
+	public long getSpoolThreshold() {
+		return spoolThreshold_;
+	}
+	
+	public File getSpoolDirectory() {
+		return spoolDirectory_;
+	}
+	
+	public boolean isChunkedUploads() {
+		return chunkedUploads_;
+	}
+	
+	public HavaloBufferPool getBufferPool() {
+		return bufferPool_;
+	}
+	
+	public HavaloRateLimits getRateLimits() {
+		return rateLimits_;
+	}
+	
+	public long getTimeoutNanos() {
+		return timeoutNanos_;
+	}
+	
+	public HavaloRequestScheduler getScheduler() {
+		return scheduler_;
+	}
+	
+	public HavaloPriority getPriority() {
+		return priority_;
+	}
+	
+	/**
+	 * Returns a config with every option set to its default value.
+	 * @return
+	 */
+	public static final HavaloClientConfig getDefault() {
+		return new Builder().build();
+	}
+	
+	public static final class Builder {
+		
+		private long expectContinueThreshold_ =
+			DEFAULT_EXPECT_CONTINUE_THRESHOLD;
+		private boolean expectContinueOnConditional_ = false;
+		private HavaloMetricsListener metricsListener_ = null;
+		private HavaloRequestListener requestListener_ = null;
+		private HavaloTraceRecorder traceRecorder_ = null;
+		private long spoolThreshold_ = DEFAULT_SPOOL_THRESHOLD;
+		private File spoolDirectory_ = null;
+		private boolean chunkedUploads_ = false;
+		private HavaloBufferPool bufferPool_ = HavaloBufferPool.getDefault();
+		private HavaloRateLimits rateLimits_ = null;
+		private long timeoutNanos_ = 0L;
+		private HavaloRequestScheduler scheduler_ = null;
+		private HavaloPriority priority_ = HavaloPriority.DEFAULT;
+		
+		public Builder() {
+		}
+		
+		/**
+		 * Starts from the options of an existing config.
+		 */
+		public Builder(final HavaloClientConfig config) {
+			expectContinueThreshold_ = config.expectContinueThreshold_;
+			expectContinueOnConditional_ =
+				config.expectContinueOnConditional_;
+			metricsListener_ = config.metricsListener_;
+			requestListener_ = config.requestListener_;
+			traceRecorder_ = config.traceRecorder_;
+			spoolThreshold_ = config.spoolThreshold_;
+			spoolDirectory_ = config.spoolDirectory_;
+			chunkedUploads_ = config.chunkedUploads_;
+			bufferPool_ = config.bufferPool_;
+			rateLimits_ = config.rateLimits_;
+			timeoutNanos_ = config.timeoutNanos_;
+			scheduler_ = config.scheduler_;
+			priority_ = config.priority_;
+		}
+		
+		/**
+		 * Sends an "Expect: 100-continue" request header with every PUT
+		 * whose body is at least the given number of bytes, so that the
+		 * body is only transmitted once the API has accepted the request
+		 * (auth, If-Match, etc.).  Note that how long the client waits for
+		 * the "100 Continue" interim response before sending the body
+		 * anyways is governed by the underlying {@link org.apache.http.client.HttpClient}'s
+		 * {@link org.apache.http.protocol.HttpRequestExecutor}.  Pass a
+		 * negative value to disable.
+		 */
+		public Builder setExpectContinueThreshold(final long bytes) {
+			expectContinueThreshold_ = bytes;
+			return this;
+		}
+		
+		/**
+		 * Sends an "Expect: 100-continue" request header with every
+		 * conditional PUT, regardless of its size.
+		 */
+		public Builder setExpectContinueOnConditional(
+			final boolean expectContinueOnConditional) {
+			expectContinueOnConditional_ = expectContinueOnConditional;
+			return this;
+		}
+		
+		/**
+		 * Sets the listener notified with the latency, status code and
+		 * bytes transferred of every request, usually an instance of
+		 * {@link com.kolich.havalo.client.metrics.HavaloClientMetrics}.
+		 * Pass null (the default) to disable metrics collection entirely.
+		 */
+		public Builder setMetricsListener(
+			final HavaloMetricsListener metricsListener) {
+			metricsListener_ = metricsListener;
+			return this;
+		}
+		
+		/**
+		 * Sets the listener called at each phase of every request, for
+		 * example a
+		 * {@link com.kolich.havalo.client.events.HavaloSlowRequestLogger}.
+		 * Pass null (the default) to disable.
+		 */
+		public Builder setRequestListener(
+			final HavaloRequestListener requestListener) {
+			requestListener_ = requestListener;
+			return this;
+		}
+		
+		/**
+		 * Sets the recorder every completed request is written to, for
+		 * later replay with a
+		 * {@link com.kolich.havalo.client.trace.HavaloTraceReplayer}.
+		 * Pass null (the default) to disable tracing.
+		 */
+		public Builder setTraceRecorder(
+			final HavaloTraceRecorder traceRecorder) {
+			traceRecorder_ = traceRecorder;
+			return this;
+		}
+		
+		/**
+		 * Uploads of unknown length are held in memory up to (roughly) the
+		 * given number of bytes, 1MB by default, and spilled to a temporary
+		 * file beyond that, before being sent with a known length.
+		 */
+		public Builder setSpoolThreshold(final long bytes) {
+			checkArgument(bytes >= 0L, "Spool threshold cannot be " +
+				"negative!");
+			spoolThreshold_ = bytes;
+			return this;
+		}
+		
+		/**
+		 * The directory spooled uploads spill to, null (the default) for
+		 * the default temporary directory.
+		 */
+		public Builder setSpoolDirectory(final File spoolDirectory) {
+			spoolDirectory_ = spoolDirectory;
+			return this;
+		}
+		
+		/**
+		 * Sends uploads of unknown length as they're read, with chunked
+		 * transfer encoding, instead of spooling them first.  Only enable
+		 * this if the API (and anything in front of it) accepts chunked
+		 * request bodies.  Off by default.
+		 */
+		public Builder setChunkedUploads(final boolean chunkedUploads) {
+			chunkedUploads_ = chunkedUploads;
+			return this;
+		}
+		
+		/**
+		 * Sets the pool of transfer buffers used by every streaming path
+		 * of the client: downloads, uploads, read-aheads and spools.  By
+		 * default clients share {@link HavaloBufferPool#getDefault()}.
+		 */
+		public Builder setBufferPool(final HavaloBufferPool bufferPool) {
+			bufferPool_ = checkNotNull(bufferPool, "The buffer pool " +
+				"cannot be null!");
+			return this;
+		}
+		
+		/**
+		 * Sets the bandwidth and request rate limits the client is held
+		 * to.  The limits themselves can be changed at any time, while the
+		 * client is in use.  Pass null (the default) for no limits.
+		 */
+		public Builder setRateLimits(final HavaloRateLimits rateLimits) {
+			rateLimits_ = rateLimits;
+			return this;
+		}
+		
+		/**
+		 * Gives every call the given time to complete, from start to
+		 * finish including streaming the body, after which the request is
+		 * aborted, its connection released, and the call fails with a
+		 * {@link java.util.concurrent.TimeoutException}.  For objects opened
+		 * with {@link HavaloClient#openObject}, that's until the object has
+		 * been read in full.  Zero (the default) for no deadline.
+		 */
+		public Builder setTimeout(final long timeout, final TimeUnit unit) {
+			checkArgument(timeout >= 0L, "Timeout cannot be negative!");
+			timeoutNanos_ = unit.toNanos(timeout);
+			return this;
+		}
+		
+		/**
+		 * Sets the scheduler every request waits on for a slot before it's
+		 * sent, usually shared by several clients or views of a client,
+		 * each with its own priority.  Pass null (the default) to send
+		 * requests right away.
+		 */
+		public Builder setScheduler(final HavaloRequestScheduler scheduler) {
+			scheduler_ = scheduler;
+			return this;
+		}
+		
+		/**
+		 * The priority class requests are scheduled in, when a scheduler is
+		 * set.  {@link HavaloPriority#DEFAULT} by default.
+		 */
+		public Builder setPriority(final HavaloPriority priority) {
+			priority_ = checkNotNull(priority, "The priority cannot be " +
+				"null!");
+			return this;
+		}
+		
+		public HavaloClientConfig build() {
+			return new HavaloClientConfig(this);
+		}
+		
+	}
+	
+}
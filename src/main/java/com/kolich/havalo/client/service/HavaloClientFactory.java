@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.service;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.kolich.havalo.client.signing.HavaloCredentials;
+import com.kolich.havalo.client.signing.algorithms.HMACSHA256Signer;
+import org.apache.http.client.HttpClient;
+
+import java.net.URI;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.kolich.common.entities.KolichCommonEntity.getDefaultGsonBuilder;
+import static com.kolich.havalo.client.entities.HavaloTypeAdapters.registerTypeAdapters;
+import static com.kolich.http.HttpClient4ClosureBuilder.Factory.getNewInstanceWithProxySelector;
+
+/**
+ * Hands out {@link HavaloClient}'s for many sets of credentials against the
+ * same API, all sharing one {@link HttpClient} (and so one connection
+ * pool), one {@link Gson}, one parsed API endpoint and one config.  Each
+ * client handed out only holds its credentials and their signing key, so
+ * they're cheap enough to create per request, or to keep one per tenant
+ * for thousands of tenants.  Thread safe.
+ */
+public final class HavaloClientFactory {
+	
+	private final HttpClient client_;
+	private final Gson gson_;
+	private final URI apiEndpoint_;
+	private final String apiBase_;
+	private final HavaloClientConfig config_;
+	
+	private HavaloClientFactory(final Builder builder) {
+		client_ = (builder.client_ != null) ? builder.client_ :
+			getNewInstanceWithProxySelector();
+		gson_ = registerTypeAdapters((builder.gson_ != null) ? builder.gson_ :
+			getDefaultGsonBuilder()).create();
+		apiEndpoint_ = URI.create(builder.apiEndpoint_);
+		apiBase_ = HavaloAbstractService.getApiBase(apiEndpoint_);
+		config_ = builder.config_;
+	}
+	
+	/**
+	 * Returns a client that signs its requests with the given credentials.
+	 */
+	public HavaloClient getClient(final HavaloCredentials credentials) {
+		checkNotNull(credentials, "The credentials cannot be null!");
+		return new HavaloClient(client_, new HavaloClientSigner(credentials,
+			new HMACSHA256Signer(credentials)), gson_, apiEndpoint_,
+			apiBase_, config_, new AtomicLong(0L));
+	}
+	
+	public HavaloClient getClient(final UUID key, final String secret) {
+		return getClient(new HavaloClientCredentials(key, secret));
+	}
+	
+	public HavaloClient getClient(final String key, final String secret) {
+		return getClient(UUID.fromString(key), secret);
+	}
+	
+	public HttpClient getHttpClient() {
+		return client_;
+	}
+	
+	public HavaloClientConfig getConfig() {
+		return config_;
+	}
+	
+	public static final class Builder {
+		
+		private String apiEndpoint_ = null;
+		private HttpClient client_ = null;
+		private GsonBuilder gson_ = null;
+		private HavaloClientConfig config_ = HavaloClientConfig.getDefault();
+		
+		/**
+		 * The API endpoint every client talks to, required.
+		 */
+		public Builder setApiEndpoint(final String apiEndpoint) {
+			apiEndpoint_ = apiEndpoint;
+			return this;
+		}
+		
+		/**
+		 * The HttpClient every client shares, by default a new one that
+		 * honors the system proxy settings.  Size its connection pool for
+		 * all tenants combined.
+		 */
+		public Builder setHttpClient(final HttpClient client) {
+			client_ = client;
+			return this;
+		}
+		
+		/**
+		 * The Gson builder every client's Gson instance is created from,
+		 * by default a new one from getDefaultGsonBuilder().  The Havalo
+		 * entity type adapters are registered with the given builder
+		 * itself when the factory is built, so pass a fresh builder if it
+		 * is used to create Gson instances elsewhere.
+		 */
+		public Builder setGsonBuilder(final GsonBuilder gson) {
+			gson_ = gson;
+			return this;
+		}
+		
+		public Builder setConfig(final HavaloClientConfig config) {
+			config_ = checkNotNull(config, "The client config cannot be " +
+				"null!");
+			return this;
+		}
+		
+		public HavaloClientFactory build() {
+			checkNotNull(apiEndpoint_, "The API endpoint cannot be null!");
+			return new HavaloClientFactory(this);
+		}
+		
+	}
+	
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.service;
+
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Wraps an {@link HttpEntity} and counts the number of bytes read from, or
+ * written by, the entity.
+ */
+final class HavaloCountingEntity extends HttpEntityWrapper {
+	
+	private CountingInputStream in_ = null;
+	private CountingOutputStream out_ = null;
+	
+	HavaloCountingEntity(final HttpEntity entity) {
+		super(entity);
+	}
+	
+	@Override
+	public InputStream getContent() throws IOException {
+		if(in_ == null) {
+			in_ = new CountingInputStream(wrappedEntity.getContent());
+		}
+		return in_;
+	}
+	
+	@Override
+	public void writeTo(final OutputStream out) throws IOException {
+		out_ = new CountingOutputStream(out);
+		wrappedEntity.writeTo(out_);
+	}
+	
+	/**
+	 * Returns the number of bytes consumed from, or written by, this entity
+	 * so far.
+	 */
+	long getByteCount() {
+		return ((in_ == null) ? 0L : in_.getByteCount()) +
+			((out_ == null) ? 0L : out_.getByteCount());
+	}
+	
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.service;
+
+import com.kolich.havalo.client.HavaloClientException;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.kolich.common.DefaultCharacterEncoding.UTF_8;
+import static com.kolich.common.util.URLEncodingUtils.urlEncode;
+import static com.kolich.havalo.client.service.HavaloAbstractService.SLASH_STRING;
+import static com.kolich.havalo.client.service.HavaloAbstractService.varargsToPrefixString;
+
+/**
+ * An immutable path to an object in a Havalo repository.  Building the
+ * request URL for a path means URL-encoding each of its components, joining
+ * them and URL-encoding the result once more; a {@link HavaloKey} does all
+ * of that once, at construction, so it's essentially free to reuse a key
+ * across many requests.  Every {@link HavaloClient} method that takes a
+ * <code>String...</code> path also takes a {@link HavaloKey}.  For keys
+ * that are frequently rebuilt from the same components, see
+ * {@link HavaloKeyCache}.
+ */
+public final class HavaloKey {
+	
+	private final List<String> components_;
+	
+	/**
+	 * The name of the object, as returned by the API in listings.
+	 */
+	private final String name_;
+	
+	/**
+	 * The URL-encoded name, ready to be appended to a request path.
+	 */
+	private final String encodedName_;
+	
+	/**
+	 * The path to this key under the object action, "/object/[encoded]".
+	 */
+	private final String objectResource_;
+	
+	private HavaloKey(final String[] components) {
+		this(Collections.unmodifiableList(Arrays.asList(components.clone())),
+			varargsToPrefixString(components));
+	}
+	
+	private HavaloKey(final List<String> components, final String name) {
+		components_ = components;
+		name_ = name;
+		encodedName_ = urlEncode(name_);
+		objectResource_ = SLASH_STRING + HavaloClient.API_ACTION_OBJECT +
+			SLASH_STRING + encodedName_;
+	}
+	
+	public static final HavaloKey of(final String... components) {
+		checkNotNull(components, "The key components cannot be null!");
+		return new HavaloKey(components);
+	}
+	
+	/**
+	 * Returns the key for the given name, exactly as returned by the API in
+	 * listings, for example "accounts/silly%2Fpath%2Bdog".  The name is
+	 * used as is, and split around each "/" into its (decoded) components.
+	 */
+	public static final HavaloKey fromName(final String name) {
+		checkNotNull(name, "The key name cannot be null!");
+		try {
+			final List<String> components = new ArrayList<>();
+			for(final String component : name.split(SLASH_STRING)) {
+				if(!component.isEmpty()) {
+					components.add(URLDecoder.decode(component, UTF_8));
+				}
+			}
+			return new HavaloKey(Collections.unmodifiableList(components),
+				name);
+		} catch (UnsupportedEncodingException e) {
+			throw new HavaloClientException(e);
+		}
+	}
+	
+	public List<String> getComponents() {
+		return components_;
+	}
+	
+	public String getName() {
+		return name_;
+	}
+	
+	public String getEncodedName() {
+		return encodedName_;
+	}
+	
+	String getObjectResource() {
+		return objectResource_;
+	}
+	
+	@Override
+	public int hashCode() {
+		return name_.hashCode();
+	}
+	
+	@Override
+	public boolean equals(final Object obj) {
+		if(this == obj) {
+			return true;
+		} else if(!(obj instanceof HavaloKey)) {
+			return false;
+		}
+		return name_.equals(((HavaloKey)obj).name_);
+	}
+	
+	@Override
+	public String toString() {
+		return name_;
+	}
+	
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.kolich.havalo.client.HavaloClientException;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A bounded, thread-safe cache of {@link HavaloKey}'s, so code that keeps
+ * rebuilding keys for the same hot paths from their components only pays
+ * for encoding them once.  The least recently used keys are evicted once
+ * the cache is full.
+ */
+public final class HavaloKeyCache {
+	
+	private final Cache<List<String>,HavaloKey> cache_;
+	
+	public HavaloKeyCache(final int maximumSize) {
+		checkArgument(maximumSize > 0, "Maximum cache size must be greater " +
+			"than zero!");
+		cache_ = CacheBuilder.newBuilder()
+			.maximumSize(maximumSize)
+			.build();
+	}
+	
+	/**
+	 * Returns the cached key for the given components, creating and
+	 * caching it if needed.
+	 */
+	public HavaloKey get(final String... components) {
+		checkNotNull(components, "The key components cannot be null!");
+		final List<String> lookup = Arrays.asList(components);
+		final HavaloKey key = cache_.getIfPresent(lookup);
+		if(key != null) {
+			return key;
+		}
+		try {
+			// Copy the components, the caller still owns the array.
+			return cache_.get(Arrays.asList(components.clone()),
+				() -> HavaloKey.of(components));
+		} catch (ExecutionException e) {
+			throw new HavaloClientException(e.getCause());
+		}
+	}
+	
+	public long size() {
+		return cache_.size();
+	}
+	
+	public void clear() {
+		cache_.invalidateAll();
+	}
+	
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.kolich.common.functional.either.Either;
+import com.kolich.havalo.client.entities.FileObject;
+import com.kolich.http.common.response.HttpFailure;
+import org.apache.http.Header;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Runs {@link HavaloClient} operations asynchronously such that operations
+ * on the same path are always executed in the order they were submitted,
+ * while operations on different paths run in parallel.  Each operation is
+ * assigned to one of a fixed number of single threaded stripes based on
+ * the hash of its key's name, so two operations on the same path always
+ * land on the same FIFO queue and can never be reordered (an older PUT can
+ * never win over a newer one).  Operations on different paths only wait on
+ * one another if their paths happen to hash to the same stripe, so use
+ * comfortably more stripes than you expect concurrently busy paths.
+ */
+public final class HavaloKeyedExecutor implements Closeable {
+	
+	private static final String STRIPE_THREAD_NAME = "havalo-keyed-%d";
+	
+	private final HavaloClient client_;
+	private final ExecutorService[] stripes_;
+	
+	public HavaloKeyedExecutor(final HavaloClient client, final int stripes) {
+		checkArgument(stripes > 0, "Stripe count must be greater than zero!");
+		client_ = checkNotNull(client, "The client cannot be null!");
+		final ThreadFactoryBuilder factory = new ThreadFactoryBuilder()
+			.setNameFormat(STRIPE_THREAD_NAME).setDaemon(true);
+		stripes_ = new ExecutorService[stripes];
+		for(int i = 0; i < stripes; i++) {
+			stripes_[i] = Executors.newSingleThreadExecutor(factory.build());
+		}
+	}
+	
+	public HavaloKeyedExecutor(final HavaloClient client) {
+		this(client, Runtime.getRuntime().availableProcessors() * 4);
+	}
+	
+	/**
+	 * Runs the given operation on the stripe that owns the given key.  The
+	 * operation is called with the underlying {@link HavaloClient}, and is
+	 * expected to only operate on the given key.
+	 */
+	public <T> CompletableFuture<T> submit(
+		final Function<HavaloClient,T> operation, final HavaloKey key) {
+		checkNotNull(operation, "The operation cannot be null!");
+		checkNotNull(key, "The key cannot be null!");
+		return CompletableFuture.supplyAsync(() -> operation.apply(client_),
+			getStripe(key));
+	}
+	
+	public <T> CompletableFuture<T> submit(
+		final Function<HavaloClient,T> operation, final String... path) {
+		return submit(operation, HavaloKey.of(path));
+	}
+	
+	public CompletableFuture<Either<HttpFailure,FileObject>> putObject(
+		final InputStream input, final long contentLength,
+		final Header[] headers, final HavaloKey key) {
+		return submit(c -> c.putObject(input, contentLength, headers, key),
+			key);
+	}
+	
+	public CompletableFuture<Either<HttpFailure,FileObject>> putObject(
+		final InputStream input, final long contentLength,
+		final Header[] headers, final String... path) {
+		return putObject(input, contentLength, headers, HavaloKey.of(path));
+	}
+	
+	public CompletableFuture<Either<HttpFailure,FileObject>> putObject(
+		final byte[] input, final Header[] headers, final HavaloKey key) {
+		return submit(c -> c.putObject(input, headers, key), key);
+	}
+	
+	public CompletableFuture<Either<HttpFailure,FileObject>> putObject(
+		final byte[] input, final Header[] headers, final String... path) {
+		return putObject(input, headers, HavaloKey.of(path));
+	}
+	
+	public CompletableFuture<Either<HttpFailure,FileObject>> putObject(
+		final byte[] input, final HavaloKey key) {
+		return putObject(input, null, key);
+	}
+	
+	public CompletableFuture<Either<HttpFailure,FileObject>> putObject(
+		final byte[] input, final String... path) {
+		return putObject(input, null, HavaloKey.of(path));
+	}
+	
+	public CompletableFuture<Either<HttpFailure,Integer>> deleteObject(
+		final Header[] headers, final HavaloKey key) {
+		return submit(c -> c.deleteObject(headers, key), key);
+	}
+	
+	public CompletableFuture<Either<HttpFailure,Integer>> deleteObject(
+		final Header[] headers, final String... path) {
+		return deleteObject(headers, HavaloKey.of(path));
+	}
+	
+	public CompletableFuture<Either<HttpFailure,Integer>> deleteObject(
+		final HavaloKey key) {
+		return deleteObject(null, key);
+	}
+	
+	public CompletableFuture<Either<HttpFailure,Integer>> deleteObject(
+		final String... path) {
+		return deleteObject(null, HavaloKey.of(path));
+	}
+	
+	/**
+	 * Stops accepting new operations.  Operations already submitted are
+	 * still run to completion.
+	 */
+	@Override
+	public void close() {
+		for(final ExecutorService stripe : stripes_) {
+			stripe.shutdown();
+		}
+	}
+	
+	private final ExecutorService getStripe(final HavaloKey key) {
+		// The key's name is computed once, and caches its own hash code.
+		final int hash = key.getName().hashCode();
+		// Spread the higher bits a bit, String hash codes of similar keys
+		// tend to only differ in their lower bits.
+		return stripes_[Math.floorMod(hash ^ (hash >>> 16), stripes_.length)];
+	}
+	
+}
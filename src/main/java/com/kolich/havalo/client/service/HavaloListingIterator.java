@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.kolich.common.functional.either.Either;
+import com.kolich.havalo.client.HavaloClientException;
+import com.kolich.havalo.client.entities.FileObject;
+import com.kolich.havalo.client.entities.ObjectList;
+import com.kolich.http.common.response.HttpFailure;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Iterates over every object whose name starts with a prefix, one page of
+ * {@link HavaloClient#listObjects(int, String, HavaloKey)} at a time, so
+ * that no single request (or response) has to hold an entire listing.
+ * As soon as a page arrives the next one is requested in the background,
+ * while the current page is consumed.  Each page is requested with the
+ * name of the last object of the previous page, in the order the API
+ * listed them, as its marker, so pages may come in either name order.
+ * Objects within a page are returned in {@link FileObject} (reverse name)
+ * order.  A page larger than asked for means the API ignored the limit,
+ * and so is taken to be the last.  A page holding its own marker means
+ * the API ignored the marker, and would only ever list the same objects
+ * again, so it fails the iteration.  Any failed page request is thrown as
+ * a {@link HavaloClientException} from {@link #hasNext()}.  Not thread
+ * safe.
+ */
+public final class HavaloListingIterator implements Iterator<FileObject>,
+	Closeable {
+	
+	private static final String PREFETCH_THREAD_NAME = "havalo-listing-%d";
+	
+	/**
+	 * Shared by every iterator that isn't given its own executor, page
+	 * requests are short lived so idle threads are let go quickly.
+	 */
+	private static final ExecutorService DEFAULT_EXECUTOR =
+		Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+			.setNameFormat(PREFETCH_THREAD_NAME).setDaemon(true).build());
+	
+	private final HavaloClient client_;
+	private final int pageSize_;
+	private final HavaloKey prefix_;
+	private final Executor executor_;
+	
+	private ObjectList page_;
+	private int index_ = 0;
+	private int pages_ = 0;
+	
+	/**
+	 * The request for the next page, or null if the current page is last,
+	 * and the marker it was requested with.
+	 */
+	private FutureTask<Either<HttpFailure,ObjectList>> next_;
+	private String marker_;
+	
+	/**
+	 * Iterates over every object whose name starts with the given prefix
+	 * (or every object if null) that comes after the given marker (or from
+	 * the top if null), fetching pages on the given executor.
+	 */
+	public HavaloListingIterator(final HavaloClient client,
+		final Executor executor, final int pageSize, final HavaloKey prefix,
+		final String marker) {
+		checkArgument(pageSize > 0, "Page size must be greater than zero!");
+		client_ = checkNotNull(client, "The client cannot be null!");
+		executor_ = checkNotNull(executor, "The executor cannot be null!");
+		pageSize_ = pageSize;
+		prefix_ = prefix;
+		next_ = fetch(marker);
+	}
+	
+	public HavaloListingIterator(final HavaloClient client,
+		final Executor executor, final int pageSize, final HavaloKey prefix) {
+		this(client, executor, pageSize, prefix, null);
+	}
+	
+	public HavaloListingIterator(final HavaloClient client,
+		final int pageSize, final HavaloKey prefix) {
+		this(client, DEFAULT_EXECUTOR, pageSize, prefix);
+	}
+	
+	public HavaloListingIterator(final HavaloClient client,
+		final int pageSize, final String... path) {
+		this(client, pageSize, (path == null || path.length == 0) ? null :
+			HavaloKey.of(path));
+	}
+	
+	@Override
+	public boolean hasNext() {
+		while(page_ == null || index_ >= page_.size()) {
+			if(next_ == null) {
+				return false;
+			}
+			final Either<HttpFailure,ObjectList> result = await(next_);
+			if(!result.success()) {
+				next_ = null;
+				final HttpFailure failure = result.left();
+				throw new HavaloClientException("Failed to list page " +
+					(pages_ + 1) + " of objects (status=" +
+					failure.getStatusCode() + ")", failure.getCause());
+			}
+			final ObjectList page = result.right();
+			if(marker_ != null && page.getObject(marker_) != null) {
+				next_ = null;
+				throw new HavaloClientException("Page " + (pages_ + 1) +
+					" of objects did not start after its marker, the API " +
+					"does not honor listing markers: " + marker_);
+			}
+			page_ = page;
+			index_ = 0;
+			pages_++;
+			// A full page may be followed by another, start fetching it
+			// right away while this one is consumed.
+			next_ = (page_.size() == pageSize_) ?
+				fetch(page_.getLastListedName()) : null;
+		}
+		return true;
+	}
+	
+	@Override
+	public FileObject next() {
+		if(!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return page_.get(index_++);
+	}
+	
+	/**
+	 * Returns the number of pages received so far.
+	 */
+	public int getPages() {
+		return pages_;
+	}
+	
+	/**
+	 * Stops iterating, abandoning any page request still in flight.
+	 */
+	@Override
+	public void close() {
+		if(next_ != null) {
+			next_.cancel(false);
+			next_ = null;
+		}
+		page_ = null;
+	}
+	
+	private final FutureTask<Either<HttpFailure,ObjectList>> fetch(
+		final String marker) {
+		marker_ = marker;
+		final FutureTask<Either<HttpFailure,ObjectList>> task =
+			new FutureTask<>(() -> client_.listObjects(pageSize_, marker,
+				prefix_));
+		executor_.execute(task);
+		return task;
+	}
+	
+	private static final <T> T await(final FutureTask<T> task) {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new HavaloClientException("Interrupted while waiting " +
+				"for the next page of objects.", e);
+		} catch (ExecutionException e) {
+			throw new HavaloClientException("Failed to list objects.",
+				e.getCause());
+		}
+	}
+	
+}
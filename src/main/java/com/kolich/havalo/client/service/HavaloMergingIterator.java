@@ -0,0 +1,191 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.service;
+
+import com.kolich.havalo.client.HavaloClientException;
+import com.kolich.havalo.client.entities.FileObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A k-way merge of any number of iterators, each already sorted in
+ * {@link FileObject} (reverse name) order, into a single iterator in that
+ * same order.  Holds just the head of each source in a heap, so on top of
+ * whatever the sources hold themselves, memory is bounded by the number
+ * of sources.  Objects with the same name, from overlapping sources, are
+ * only returned once.  A source found out of order fails the merge with a
+ * {@link HavaloClientException}, rather than silently misplacing objects.  Closing the iterator closes every source that is
+ * {@link Closeable}.  Not thread safe.
+ */
+public final class HavaloMergingIterator implements Iterator<FileObject>,
+	Closeable {
+	
+	private final List<Iterator<FileObject>> sources_;
+	
+	/**
+	 * The head of every non-empty source, heads are pulled lazily so the
+	 * sources can all be primed (fetching) before anything waits on them.
+	 */
+	private final PriorityQueue<Head> heap_;
+	
+	/**
+	 * Run once when this iterator is closed, after the sources, may be null.
+	 */
+	private final Runnable onClose_;
+	
+	private boolean primed_ = false;
+	private boolean closed_ = false;
+	
+	HavaloMergingIterator(final List<? extends Iterator<FileObject>> sources,
+		final Runnable onClose) {
+		checkNotNull(sources, "The sources cannot be null!");
+		sources_ = new ArrayList<>(sources);
+		heap_ = new PriorityQueue<>(Math.max(1, sources_.size()));
+		onClose_ = onClose;
+	}
+	
+	public HavaloMergingIterator(
+		final List<? extends Iterator<FileObject>> sources) {
+		this(sources, null);
+	}
+	
+	@Override
+	public boolean hasNext() {
+		if(closed_) {
+			return false;
+		} else if(!primed_) {
+			for(final Iterator<FileObject> source : sources_) {
+				advance(source);
+			}
+			primed_ = true;
+		}
+		if(heap_.isEmpty()) {
+			// Done, release whatever the sources are holding onto.
+			close();
+			return false;
+		}
+		return true;
+	}
+	
+	@Override
+	public FileObject next() {
+		if(!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		final Head head = heap_.poll();
+		advance(head.source_, head.object_);
+		// Drop the same object from any other (overlapping) source.
+		while(!heap_.isEmpty() && heap_.peek().object_.equals(head.object_)) {
+			final Head duplicate = heap_.poll();
+			advance(duplicate.source_, duplicate.object_);
+		}
+		return head.object_;
+	}
+	
+	/**
+	 * Returns a sequential stream over the rest of this iterator, which is
+	 * closed when the stream is.
+	 */
+	public Stream<FileObject> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+			Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT |
+			Spliterator.NONNULL), false).onClose(this::close);
+	}
+	
+	@Override
+	public void close() {
+		if(closed_) {
+			return;
+		}
+		closed_ = true;
+		heap_.clear();
+		try {
+			for(final Iterator<FileObject> source : sources_) {
+				if(source instanceof Closeable) {
+					try {
+						((Closeable)source).close();
+					} catch (IOException e) {
+						// Nothing left to read from it anyways.
+					}
+				}
+			}
+		} finally {
+			if(onClose_ != null) {
+				onClose_.run();
+			}
+		}
+	}
+	
+	private final void advance(final Iterator<FileObject> source) {
+		if(source.hasNext()) {
+			heap_.add(new Head(source.next(), source));
+		}
+	}
+	
+	/**
+	 * Pulls the next head of the given source, which must not sort before
+	 * the given previous head of that same source.
+	 */
+	private final void advance(final Iterator<FileObject> source,
+		final FileObject previous) {
+		if(source.hasNext()) {
+			final FileObject next = source.next();
+			if(next.compareTo(previous) < 0) {
+				throw new HavaloClientException("Merge source is not in " +
+					"FileObject (reverse name) order, " + next.getName() +
+					" came after " + previous.getName());
+			}
+			heap_.add(new Head(next, source));
+		}
+	}
+	
+	private static final class Head implements Comparable<Head> {
+		private final FileObject object_;
+		private final Iterator<FileObject> source_;
+		private Head(final FileObject object,
+			final Iterator<FileObject> source) {
+			object_ = object;
+			source_ = source;
+		}
+		@Override
+		public int compareTo(final Head o) {
+			return object_.compareTo(o.object_);
+		}
+	}
+	
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.service;
+
+import org.apache.http.Header;
+
+import java.util.List;
+
+/**
+ * An object read in full, its body along with the response headers, as
+ * returned by {@link HavaloClient#getObjects}.
+ */
+public final class HavaloObject {
+	
+	private final HavaloKey key_;
+	private final byte[] data_;
+	private final List<Header> headers_;
+	
+	HavaloObject(final HavaloKey key, final byte[] data,
+		final List<Header> headers) {
+		key_ = key;
+		data_ = data;
+		headers_ = headers;
+	}
+	
+	public HavaloKey getKey() {
+		return key_;
+	}
+	
+	/**
+	 * Returns the body of the object, not a copy.
+	 */
+	public byte[] getData() {
+		return data_;
+	}
+	
+	public List<Header> getHeaders() {
+		return headers_;
+	}
+	
+	public Header getFirstHeader(final String name) {
+		for(final Header header : headers_) {
+			if(header.getName().equalsIgnoreCase(name)) {
+				return header;
+			}
+		}
+		return null;
+	}
+	
+}
@@ -0,0 +1,318 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.http.Header;
+import org.apache.http.client.methods.HttpRequestBase;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * The body of an object opened with {@link HavaloClient#openObject}, read
+ * by pulling from this stream, or channel, rather than pushed into an
+ * {@link java.io.OutputStream}.  A background thread reads ahead of the
+ * caller into a bounded number of buffers from the client's
+ * {@link HavaloBufferPool}, and releases the underlying connection as
+ * soon as it reaches the end of the object.  Closing the stream before the
+ * end aborts the request, which closes the connection instead of returning
+ * it to the pool, so nothing is leaked either way.  Not thread safe, like
+ * most streams.
+ */
+public final class HavaloObjectInputStream extends InputStream
+	implements ReadableByteChannel {
+	
+	private static final String READ_AHEAD_THREAD_NAME =
+		"havalo-read-ahead-%d";
+	
+	/**
+	 * How often a blocked reader, or writer, checks if the stream has been
+	 * closed underneath it.
+	 */
+	private static final long POLL_MS = 100L;
+	
+	/**
+	 * Marks the end of the object in the buffer.
+	 */
+	private static final ByteBuffer EOF = ByteBuffer.allocate(0);
+	
+	/**
+	 * Runs every read-ahead; threads are only busy for as long as it takes
+	 * the caller to consume each object.
+	 */
+	private static final ExecutorService READ_AHEAD_EXECUTOR =
+		Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+			.setNameFormat(READ_AHEAD_THREAD_NAME).setDaemon(true).build());
+	
+	private final HavaloBufferPool pool_;
+	private final BlockingQueue<ByteBuffer> buffer_;
+	
+	private volatile List<Header> headers_ = Collections.emptyList();
+	private volatile HttpRequestBase request_ = null;
+	private volatile IOException error_ = null;
+	private volatile boolean closed_ = false;
+	
+	/**
+	 * The chunk currently being read by the caller.
+	 */
+	private ByteBuffer chunk_ = null;
+	private boolean eof_ = false;
+	
+	HavaloObjectInputStream(final int readAheadBytes,
+		final HavaloBufferPool pool) {
+		checkArgument(readAheadBytes > 0, "Read ahead must be greater " +
+			"than zero!");
+		final int chunkSize = pool.getBufferSize();
+		pool_ = pool;
+		buffer_ = new ArrayBlockingQueue<>(Math.max(1,
+			(int)(((long)readAheadBytes + chunkSize - 1) / chunkSize)));
+	}
+	
+	/**
+	 * Returns the headers of the response, the likes of "Content-Type"
+	 * and "Content-Length".
+	 */
+	public List<Header> getHeaders() {
+		return headers_;
+	}
+	
+	public Header getFirstHeader(final String name) {
+		for(final Header header : headers_) {
+			if(header.getName().equalsIgnoreCase(name)) {
+				return header;
+			}
+		}
+		return null;
+	}
+	
+	@Override
+	public int read() throws IOException {
+		return fill() ? (chunk_.get() & 0xff) : -1;
+	}
+	
+	@Override
+	public int read(final byte[] b, final int off, final int len)
+		throws IOException {
+		if(off < 0 || len < 0 || len > b.length - off) {
+			throw new IndexOutOfBoundsException();
+		} else if(len == 0) {
+			return 0;
+		} else if(!fill()) {
+			return -1;
+		}
+		final int n = Math.min(len, chunk_.remaining());
+		chunk_.get(b, off, n);
+		return n;
+	}
+	
+	@Override
+	public int read(final ByteBuffer dst) throws IOException {
+		if(closed_) {
+			throw new ClosedChannelException();
+		} else if(!dst.hasRemaining()) {
+			return 0;
+		} else if(!fill()) {
+			return -1;
+		}
+		final int n = Math.min(dst.remaining(), chunk_.remaining());
+		final ByteBuffer slice = chunk_.duplicate();
+		slice.limit(slice.position() + n);
+		dst.put(slice);
+		chunk_.position(slice.position());
+		return n;
+	}
+	
+	@Override
+	public int available() throws IOException {
+		return (chunk_ == null || closed_) ? 0 : chunk_.remaining();
+	}
+	
+	@Override
+	public boolean isOpen() {
+		return !closed_;
+	}
+	
+	/**
+	 * Closes the stream, aborting the request if the object hasn't been
+	 * read in full.
+	 */
+	@Override
+	public void close() {
+		if(closed_) {
+			return;
+		}
+		closed_ = true;
+		if(!eof_) {
+			final HttpRequestBase request = request_;
+			if(request != null) {
+				request.abort();
+			}
+		}
+		release(chunk_);
+		chunk_ = null;
+		// Unblock the read-ahead, if it's waiting for room.  Anything it
+		// manages to put after this is left to be collected.
+		ByteBuffer chunk;
+		while((chunk = buffer_.poll()) != null) {
+			release(chunk);
+		}
+	}
+	
+	/**
+	 * Makes sure there's something left to read in the current chunk,
+	 * waiting for the read-ahead if need be.  Returns false at the end
+	 * of the object.
+	 */
+	private final boolean fill() throws IOException {
+		while(chunk_ == null || !chunk_.hasRemaining()) {
+			if(chunk_ != null) {
+				release(chunk_);
+				chunk_ = null;
+			}
+			if(closed_) {
+				throw new IOException("Stream closed.");
+			} else if(eof_) {
+				return false;
+			}
+			final ByteBuffer chunk;
+			try {
+				chunk = buffer_.poll(POLL_MS, MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+			if(chunk == EOF) {
+				eof_ = true;
+				final IOException error = error_;
+				if(error != null) {
+					throw error;
+				}
+				return false;
+			} else if(chunk != null) {
+				chunk_ = chunk;
+			}
+		}
+		return true;
+	}
+	
+	void setRequest(final HttpRequestBase request) {
+		request_ = request;
+	}
+	
+	void setHeaders(final Header[] headers) {
+		headers_ = Collections.unmodifiableList(Arrays.asList(headers));
+	}
+	
+	/**
+	 * Reads the given response body into the buffer, on the calling
+	 * (background) thread, until the end of the object or this stream is
+	 * closed.
+	 */
+	void readAhead(final InputStream content) throws IOException {
+		while(!closed_) {
+			final ByteBuffer chunk = pool_.acquire();
+			final boolean end;
+			try {
+				end = HavaloBufferPool.fill(content, chunk) <
+					chunk.capacity();
+			} catch (IOException e) {
+				pool_.release(chunk);
+				throw e;
+			}
+			chunk.flip();
+			if(!chunk.hasRemaining() || !put(chunk)) {
+				pool_.release(chunk);
+			}
+			if(end) {
+				return;
+			}
+		}
+		// Closed before the end, don't let the rest of the object be
+		// drained just to reuse the connection.
+		final HttpRequestBase request = request_;
+		if(request != null) {
+			request.abort();
+		}
+	}
+	
+	/**
+	 * Marks the end of the object, once the request has completed and its
+	 * connection has been released.  If the request failed along the way,
+	 * the caller sees the given error once it has read everything that was
+	 * buffered before it.
+	 */
+	void finish(final Exception error) {
+		if(error != null && !closed_) {
+			error_ = (error instanceof IOException) ? (IOException)error :
+				new IOException("Failed to read object.", error);
+		}
+		put(EOF);
+	}
+	
+	/**
+	 * Returns false if the chunk didn't make it into the buffer, because
+	 * the stream was closed first.
+	 */
+	private final boolean put(final ByteBuffer chunk) {
+		try {
+			while(!closed_) {
+				if(buffer_.offer(chunk, POLL_MS, MILLISECONDS)) {
+					return true;
+				}
+				// Buffer is full, wait for the caller to catch up.
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+	
+	private final void release(final ByteBuffer chunk) {
+		if(chunk != null && chunk != EOF) {
+			pool_.release(chunk);
+		}
+	}
+	
+	static final void execute(final Runnable readAhead) {
+		READ_AHEAD_EXECUTOR.execute(readAhead);
+	}
+	
+}
@@ -0,0 +1,218 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.kolich.common.functional.either.Either;
+import com.kolich.havalo.client.HavaloClientException;
+import com.kolich.havalo.client.entities.FileObject;
+import com.kolich.havalo.client.entities.ObjectList;
+import com.kolich.http.common.response.HttpFailure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.kolich.havalo.client.service.HavaloAbstractService.SLASH_STRING;
+
+/**
+ * Lists a large repository in parallel.  The keyspace is split into
+ * disjoint partitions, either given or discovered from the first path
+ * component of every object, and each partition is paged through by its
+ * own {@link HavaloListingIterator}, concurrently.  The partitions are then
+ * merged back into a single iterator in {@link FileObject} (reverse name)
+ * order by a {@link HavaloMergingIterator}.  Memory is bounded by two pages
+ * per partition, and at most a configured number of pages are requested
+ * at any one time.  Discovery, and merging, rely on the API listing pages
+ * in {@link FileObject} (reverse name) order, as Havalo does; against an
+ * API that lists in any other order they fail with a
+ * {@link HavaloClientException} rather than loop or misplace objects.
+ */
+public final class HavaloParallelLister {
+	
+	private static final String LISTING_THREAD_NAME =
+		"havalo-parallel-listing-%d";
+	
+	private final HavaloClient client_;
+	private final int concurrency_;
+	private final int pageSize_;
+	private final int maxPartitions_;
+	
+	private HavaloParallelLister(final Builder builder) {
+		client_ = checkNotNull(builder.client_, "The client cannot be null!");
+		concurrency_ = builder.concurrency_;
+		pageSize_ = builder.pageSize_;
+		maxPartitions_ = builder.maxPartitions_;
+	}
+	
+	/**
+	 * Lists every object in the repository, partitioned by the first path
+	 * component of each object name.  Partitions are discovered with one
+	 * single object page request per distinct first component, in order;
+	 * once there are max partitions, everything that's left is listed
+	 * as one last partition.  Objects with no path component at all are
+	 * held as they're discovered.
+	 */
+	public HavaloMergingIterator list() {
+		final ExecutorService executor = newExecutor();
+		try {
+			final List<Iterator<FileObject>> sources = new ArrayList<>();
+			final List<FileObject> leaves = new ArrayList<>();
+			String marker = null;
+			while(true) {
+				if(sources.size() + leaves.size() >= maxPartitions_) {
+					// Everything after the marker, in one last partition.
+					sources.add(new HavaloListingIterator(client_, executor,
+						pageSize_, null, marker));
+					break;
+				}
+				final ObjectList page = getPage(marker);
+				if(page.isEmpty()) {
+					break;
+				}
+				final String name = page.getName(0);
+				if(marker != null && name.compareTo(marker) >= 0) {
+					// Would only discover the same partitions again.
+					throw new HavaloClientException("Partition discovery " +
+						"needs an API that lists in reverse name order, " +
+						"got " + name + " after marker " + marker);
+				}
+				final int slash = name.indexOf(SLASH_STRING);
+				if(slash < 0) {
+					leaves.add(page.get(0));
+					marker = name;
+				} else {
+					// Every name in the partition starts with the first
+					// component and a slash, and so sorts at or after it.
+					marker = name.substring(0, slash + 1);
+					sources.add(new HavaloListingIterator(client_, executor,
+						pageSize_, HavaloKey.fromName(marker), null));
+				}
+			}
+			if(!leaves.isEmpty()) {
+				sources.add(leaves.iterator());
+			}
+			return new HavaloMergingIterator(sources, executor::shutdownNow);
+		} catch (RuntimeException e) {
+			executor.shutdownNow();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Lists every object whose name starts with any of the given
+	 * prefixes.  Partitions may overlap, objects in more than one are only
+	 * returned once, but partitions that don't overlap list faster.
+	 */
+	public HavaloMergingIterator list(final List<HavaloKey> partitions) {
+		checkNotNull(partitions, "The partitions cannot be null!");
+		final ExecutorService executor = newExecutor();
+		final List<Iterator<FileObject>> sources = new ArrayList<>();
+		for(final HavaloKey partition : partitions) {
+			sources.add(new HavaloListingIterator(client_, executor,
+				pageSize_, checkNotNull(partition, "The partition cannot " +
+					"be null!")));
+		}
+		return new HavaloMergingIterator(sources, executor::shutdownNow);
+	}
+	
+	public HavaloMergingIterator list(final HavaloKey... partitions) {
+		checkNotNull(partitions, "The partitions cannot be null!");
+		return list(Arrays.asList(partitions));
+	}
+	
+	private final ObjectList getPage(final String marker) {
+		final Either<HttpFailure,ObjectList> page =
+			client_.listObjects(1, marker, (HavaloKey)null);
+		if(!page.success()) {
+			throw new HavaloClientException("Failed to discover listing " +
+				"partitions (status=" + page.left().getStatusCode() + ")",
+				page.left().getCause());
+		}
+		return page.right();
+	}
+	
+	private final ExecutorService newExecutor() {
+		return Executors.newFixedThreadPool(concurrency_,
+			new ThreadFactoryBuilder().setNameFormat(LISTING_THREAD_NAME)
+				.setDaemon(true).build());
+	}
+	
+	public static final class Builder {
+		
+		private HavaloClient client_ = null;
+		private int concurrency_ = 8;
+		private int pageSize_ = 1000;
+		private int maxPartitions_ = 256;
+		
+		public Builder setClient(final HavaloClient client) {
+			client_ = client;
+			return this;
+		}
+		
+		/**
+		 * The maximum number of page requests in flight, 8 by default.
+		 */
+		public Builder setConcurrency(final int concurrency) {
+			checkArgument(concurrency > 0, "Concurrency must be greater " +
+				"than zero!");
+			concurrency_ = concurrency;
+			return this;
+		}
+		
+		/**
+		 * The number of objects requested per page, 1000 by default.
+		 */
+		public Builder setPageSize(final int pageSize) {
+			checkArgument(pageSize > 0, "Page size must be greater " +
+				"than zero!");
+			pageSize_ = pageSize;
+			return this;
+		}
+		
+		/**
+		 * The maximum number of partitions discovered by {@link #list()},
+		 * 256 by default.
+		 */
+		public Builder setMaxPartitions(final int maxPartitions) {
+			checkArgument(maxPartitions > 0, "Max partitions must be " +
+				"greater than zero!");
+			maxPartitions_ = maxPartitions;
+			return this;
+		}
+		
+		public HavaloParallelLister build() {
+			return new HavaloParallelLister(this);
+		}
+		
+	}
+	
+}
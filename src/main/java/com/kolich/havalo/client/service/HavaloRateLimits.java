@@ -0,0 +1,199 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.service;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bandwidth, in bytes per second, and request rate limits for a
+ * {@link HavaloClient}, client-wide and per {@link HavaloOperation}.  A
+ * request, or byte sent or received, has to get past both its operation's
+ * limit and the client-wide limit, when set.  Bytes are counted as they
+ * stream through the request and response entities, so every upload and
+ * download path is shaped the same way.  Limits can be set, changed or
+ * removed at any time, and take effect immediately for requests already
+ * in flight; give the same instance to several clients to share limits
+ * between them.  A request with a deadline never waits on a limit past
+ * it, and fails with a {@link TimeoutException} instead.
+ */
+public final class HavaloRateLimits {
+	
+	/**
+	 * One bucket per operation, followed by the client-wide bucket, each
+	 * null if unlimited.
+	 */
+	private final AtomicReferenceArray<HavaloTokenBucket> bytes_;
+	private final AtomicReferenceArray<HavaloTokenBucket> requests_;
+	
+	private final int clientWide_;
+	
+	public HavaloRateLimits() {
+		clientWide_ = HavaloOperation.values().length;
+		bytes_ = new AtomicReferenceArray<>(clientWide_ + 1);
+		requests_ = new AtomicReferenceArray<>(clientWide_ + 1);
+	}
+	
+	/**
+	 * Limits the bytes sent and received by every operation combined,
+	 * allowing bursts of up to burstBytes.  A rate of zero or less removes
+	 * the limit.
+	 */
+	public HavaloRateLimits setByteRate(final long bytesPerSecond,
+		final long burstBytes) {
+		update(bytes_, clientWide_, bytesPerSecond, burstBytes);
+		return this;
+	}
+	
+	/**
+	 * Limits the bytes sent and received by the given operation.  A rate
+	 * of zero or less removes the limit.
+	 */
+	public HavaloRateLimits setByteRate(final HavaloOperation operation,
+		final long bytesPerSecond, final long burstBytes) {
+		update(bytes_, operation.ordinal(), bytesPerSecond, burstBytes);
+		return this;
+	}
+	
+	/**
+	 * Limits the requests started by every operation combined.  A rate of
+	 * zero or less removes the limit.
+	 */
+	public HavaloRateLimits setRequestRate(final double requestsPerSecond,
+		final int burst) {
+		update(requests_, clientWide_, requestsPerSecond, burst);
+		return this;
+	}
+	
+	/**
+	 * Limits the requests started by the given operation.  A rate of zero
+	 * or less removes the limit.
+	 */
+	public HavaloRateLimits setRequestRate(final HavaloOperation operation,
+		final double requestsPerSecond, final int burst) {
+		update(requests_, operation.ordinal(), requestsPerSecond, burst);
+		return this;
+	}
+	
+	/**
+	 * Waits until a request of the given operation is allowed to start.
+	 */
+	void acquireRequest(final HavaloOperation operation)
+		throws InterruptedIOException {
+		acquire(requests_, operation, 1L);
+	}
+	
+	/**
+	 * Waits until the given number of bytes of the given operation are
+	 * allowed through.
+	 */
+	void acquireBytes(final HavaloOperation operation, final long bytes)
+		throws InterruptedIOException {
+		acquire(bytes_, operation, bytes);
+	}
+	
+	/**
+	 * Waits until a request of the given operation is allowed to start,
+	 * unless that would take past the given deadline, a
+	 * {@link System#nanoTime()} value.
+	 */
+	void acquireRequest(final HavaloOperation operation, final long deadline)
+		throws InterruptedIOException, TimeoutException {
+		acquire(requests_, operation, 1L, deadline);
+	}
+	
+	/**
+	 * Waits until the given number of bytes of the given operation are
+	 * allowed through, unless that would take past the given deadline.
+	 */
+	void acquireBytes(final HavaloOperation operation, final long bytes,
+		final long deadline) throws InterruptedIOException,
+		TimeoutException {
+		acquire(bytes_, operation, bytes, deadline);
+	}
+	
+	private final void acquire(
+		final AtomicReferenceArray<HavaloTokenBucket> buckets,
+		final HavaloOperation operation, final long permits,
+		final long deadline) throws InterruptedIOException,
+		TimeoutException {
+		try {
+			final HavaloTokenBucket bucket = buckets.get(operation.ordinal());
+			if(bucket != null && !bucket.tryAcquire(permits,
+				deadline - System.nanoTime())) {
+				throw new TimeoutException("Rate limit wait would pass " +
+					"the deadline: " + operation);
+			}
+			final HavaloTokenBucket clientWide = buckets.get(clientWide_);
+			if(clientWide != null && !clientWide.tryAcquire(permits,
+				deadline - System.nanoTime())) {
+				throw new TimeoutException("Client-wide rate limit wait " +
+					"would pass the deadline: " + operation);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while " +
+				"waiting on rate limit: " + operation);
+		}
+	}
+	
+	private final void acquire(
+		final AtomicReferenceArray<HavaloTokenBucket> buckets,
+		final HavaloOperation operation, final long permits)
+		throws InterruptedIOException {
+		try {
+			final HavaloTokenBucket bucket = buckets.get(operation.ordinal());
+			if(bucket != null) {
+				bucket.acquire(permits);
+			}
+			final HavaloTokenBucket clientWide = buckets.get(clientWide_);
+			if(clientWide != null) {
+				clientWide.acquire(permits);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while " +
+				"waiting on rate limit: " + operation);
+		}
+	}
+	
+	private synchronized void update(
+		final AtomicReferenceArray<HavaloTokenBucket> buckets,
+		final int index, final double rate, final double burst) {
+		if(rate <= 0.0d) {
+			buckets.set(index, null);
+			return;
+		}
+		final HavaloTokenBucket bucket = buckets.get(index);
+		if(bucket != null) {
+			bucket.setRate(rate, burst);
+		} else {
+			buckets.set(index, new HavaloTokenBucket(rate, burst));
+		}
+	}
+	
+}
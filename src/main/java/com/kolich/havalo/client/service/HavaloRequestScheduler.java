@@ -0,0 +1,280 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.service;
+
+import com.kolich.havalo.client.metrics.LatencyHistogram;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Limits the number of requests in flight at once, across every client
+ * (or view of a client) it's given to, and hands out the slots by
+ * {@link HavaloPriority}.  Each class can be given a reserved share of the
+ * slots that no other class can take, so interactive requests always find
+ * a slot free and bulk requests always make some progress; beyond that,
+ * waiting requests of a higher class are always served first.  Each class
+ * waits in its own FIFO queue.  The max concurrency should be no more than
+ * the size of the underlying connection pool, so that requests queue here
+ * and not inside the pool.
+ */
+public final class HavaloRequestScheduler {
+	
+	private static final int DEFAULT_MAX_CONCURRENCY = 16;
+	private static final int DEFAULT_INTERACTIVE_RESERVED = 2;
+	private static final int DEFAULT_BULK_RESERVED = 1;
+	
+	private static final HavaloPriority[] PRIORITIES =
+		HavaloPriority.values();
+	
+	private final int maxConcurrency_;
+	private final int[] reserved_;
+	
+	private final ReentrantLock lock_;
+	private final int[] inFlight_;
+	private final List<Deque<Waiter>> queues_;
+	private int total_ = 0;
+	
+	/**
+	 * How long requests of each class waited for a slot, in nanoseconds.
+	 */
+	private final LatencyHistogram[] waits_;
+	
+	private static final class Waiter {
+		private final Condition granted_;
+		private boolean isGranted_ = false;
+		private Waiter(final Condition granted) {
+			granted_ = granted;
+		}
+	}
+	
+	private HavaloRequestScheduler(final Builder builder) {
+		maxConcurrency_ = builder.maxConcurrency_;
+		reserved_ = builder.reserved_.clone();
+		lock_ = new ReentrantLock();
+		inFlight_ = new int[PRIORITIES.length];
+		queues_ = new ArrayList<>(PRIORITIES.length);
+		waits_ = new LatencyHistogram[PRIORITIES.length];
+		for(int i = 0; i < PRIORITIES.length; i++) {
+			queues_.add(new ArrayDeque<>());
+			waits_[i] = new LatencyHistogram();
+		}
+	}
+	
+	public int getMaxConcurrency() {
+		return maxConcurrency_;
+	}
+	
+	public int getReserved(final HavaloPriority priority) {
+		return reserved_[priority.ordinal()];
+	}
+	
+	/**
+	 * Returns the number of requests of the given class waiting for a
+	 * slot right now.
+	 */
+	public int getQueueDepth(final HavaloPriority priority) {
+		lock_.lock();
+		try {
+			return queues_.get(priority.ordinal()).size();
+		} finally {
+			lock_.unlock();
+		}
+	}
+	
+	/**
+	 * Returns the number of requests of the given class in flight right
+	 * now.
+	 */
+	public int getInFlight(final HavaloPriority priority) {
+		lock_.lock();
+		try {
+			return inFlight_[priority.ordinal()];
+		} finally {
+			lock_.unlock();
+		}
+	}
+	
+	/**
+	 * Returns how long every request of the given class so far waited for
+	 * a slot, in nanoseconds.
+	 */
+	public LatencyHistogram getWaitTimes(final HavaloPriority priority) {
+		return waits_[priority.ordinal()];
+	}
+	
+	/**
+	 * Waits for a slot for a request of the given class, for at most the
+	 * given time, or indefinitely if zero or less.  Every slot acquired
+	 * must be released with {@link #release(HavaloPriority)}.
+	 */
+	void acquire(final HavaloPriority priority, final long timeoutNanos)
+		throws InterruptedIOException, TimeoutException {
+		final int c = priority.ordinal();
+		final long start = System.nanoTime();
+		lock_.lock();
+		try {
+			final Waiter waiter = new Waiter(lock_.newCondition());
+			queues_.get(c).addLast(waiter);
+			dispatch();
+			long remaining = timeoutNanos;
+			try {
+				while(!waiter.isGranted_) {
+					if(timeoutNanos <= 0L) {
+						waiter.granted_.await();
+					} else if(remaining > 0L) {
+						remaining = waiter.granted_.awaitNanos(remaining);
+					} else {
+						queues_.get(c).remove(waiter);
+						throw new TimeoutException("Timed out waiting for " +
+							"a request slot: " + priority);
+					}
+				}
+			} catch (InterruptedException e) {
+				if(waiter.isGranted_) {
+					release(priority);
+				} else {
+					queues_.get(c).remove(waiter);
+				}
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while " +
+					"waiting for a request slot: " + priority);
+			}
+		} finally {
+			lock_.unlock();
+		}
+		waits_[c].record(System.nanoTime() - start);
+	}
+	
+	void release(final HavaloPriority priority) {
+		lock_.lock();
+		try {
+			inFlight_[priority.ordinal()]--;
+			total_--;
+			dispatch();
+		} finally {
+			lock_.unlock();
+		}
+	}
+	
+	/**
+	 * Hands out free slots to waiting requests: first to any class below
+	 * its reserved share, then to the highest class that can take a slot
+	 * without eating into the unused reservations of the others.  Called
+	 * with the lock held.
+	 */
+	private final void dispatch() {
+		while(total_ < maxConcurrency_) {
+			int next = -1;
+			for(int c = 0; c < PRIORITIES.length && next < 0; c++) {
+				if(!queues_.get(c).isEmpty() && inFlight_[c] < reserved_[c]) {
+					next = c;
+				}
+			}
+			for(int c = 0; c < PRIORITIES.length && next < 0; c++) {
+				if(!queues_.get(c).isEmpty() && canTake(c)) {
+					next = c;
+				}
+			}
+			if(next < 0) {
+				return;
+			}
+			final Waiter waiter = queues_.get(next).pollFirst();
+			inFlight_[next]++;
+			total_++;
+			waiter.isGranted_ = true;
+			waiter.granted_.signal();
+		}
+	}
+	
+	private final boolean canTake(final int c) {
+		int held = 0;
+		for(int k = 0; k < PRIORITIES.length; k++) {
+			if(k != c) {
+				held += Math.max(0, reserved_[k] - inFlight_[k]);
+			}
+		}
+		return (maxConcurrency_ - total_ - 1) >= held;
+	}
+	
+	public static final class Builder {
+		
+		private int maxConcurrency_ = DEFAULT_MAX_CONCURRENCY;
+		private final int[] reserved_ = new int[PRIORITIES.length];
+		
+		public Builder() {
+			reserved_[HavaloPriority.INTERACTIVE.ordinal()] =
+				DEFAULT_INTERACTIVE_RESERVED;
+			reserved_[HavaloPriority.BULK.ordinal()] = DEFAULT_BULK_RESERVED;
+		}
+		
+		/**
+		 * The most requests in flight at once, of all classes combined,
+		 * 16 by default.
+		 */
+		public Builder setMaxConcurrency(final int maxConcurrency) {
+			checkArgument(maxConcurrency > 0, "Max concurrency must be " +
+				"greater than zero!");
+			maxConcurrency_ = maxConcurrency;
+			return this;
+		}
+		
+		/**
+		 * The number of slots reserved for the given class, that no other
+		 * class can use.  By default 2 for interactive requests, 1 for bulk
+		 * requests and none for the rest.
+		 */
+		public Builder setReserved(final HavaloPriority priority,
+			final int reserved) {
+			checkNotNull(priority, "The priority cannot be null!");
+			checkArgument(reserved >= 0, "Reserved slots cannot be " +
+				"negative!");
+			reserved_[priority.ordinal()] = reserved;
+			return this;
+		}
+		
+		public HavaloRequestScheduler build() {
+			int reserved = 0;
+			for(final int r : reserved_) {
+				reserved += r;
+			}
+			checkArgument(reserved <= maxConcurrency_, "Cannot reserve " +
+				"more slots than the max concurrency!");
+			return new HavaloRequestScheduler(this);
+		}
+		
+	}
+	
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.service;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Holds the entire content of a stream of unknown length, so that it can
+ * be uploaded with a known Content-Length.  Content is kept in memory up
+ * to a threshold, in buffers from a {@link HavaloBufferPool}, and spilled
+ * to a temporary file beyond that.  Closing the spool releases its buffers
+ * and deletes its file, if any.
+ */
+final class HavaloSpool implements Closeable {
+	
+	private static final String SPOOL_FILE_PREFIX = "havalo-spool-";
+	private static final String SPOOL_FILE_SUFFIX = ".tmp";
+	
+	private final HavaloBufferPool pool_;
+	
+	/**
+	 * The spooled content held in memory, in order, each buffer ready to
+	 * be read; empty once spilled to disk.
+	 */
+	private final List<ByteBuffer> buffers_;
+	private final File file_;
+	private final long length_;
+	
+	private HavaloSpool(final HavaloBufferPool pool,
+		final List<ByteBuffer> buffers, final File file, final long length) {
+		pool_ = pool;
+		buffers_ = buffers;
+		file_ = file;
+		length_ = length;
+	}
+	
+	/**
+	 * Reads the given stream to its end, into memory up to the given
+	 * threshold and into a temporary file in the given directory (or the
+	 * default temporary directory if null) beyond that.  Does not close
+	 * the input stream.
+	 */
+	static final HavaloSpool spool(final InputStream input,
+		final long threshold, final File directory,
+		final HavaloBufferPool pool) throws IOException {
+		final List<ByteBuffer> buffers = new ArrayList<>();
+		long length = 0L;
+		try {
+			while(length <= threshold) {
+				final ByteBuffer buffer = pool.acquire();
+				final int n = HavaloBufferPool.fill(input, buffer);
+				final boolean end = n < buffer.capacity();
+				buffer.flip();
+				if(n > 0) {
+					buffers.add(buffer);
+					length += n;
+				} else {
+					pool.release(buffer);
+				}
+				if(end) {
+					// Reached the end of the stream, all in memory.
+					return new HavaloSpool(pool, buffers, null, length);
+				}
+			}
+			// Past the threshold, move everything to disk.
+			final File file = File.createTempFile(SPOOL_FILE_PREFIX,
+				SPOOL_FILE_SUFFIX, directory);
+			try(final OutputStream os = new FileOutputStream(file)) {
+				for(final ByteBuffer buffer : buffers) {
+					HavaloBufferPool.write(buffer, os);
+				}
+				// Once spilled, the buffers are no longer needed.
+				release(pool, buffers);
+				length += pool.copy(input, os);
+			} catch (IOException e) {
+				FileUtils.deleteQuietly(file);
+				throw e;
+			}
+			return new HavaloSpool(pool,
+				Collections.<ByteBuffer>emptyList(), file, length);
+		} catch (IOException e) {
+			release(pool, buffers);
+			throw e;
+		}
+	}
+	
+	long getLength() {
+		return length_;
+	}
+	
+	/**
+	 * Returns true if the content was spilled to a temporary file.
+	 */
+	boolean isSpilled() {
+		return file_ != null;
+	}
+	
+	/**
+	 * Opens a new stream over the spooled content, the caller closes it
+	 * before closing the spool.
+	 */
+	InputStream openStream() throws IOException {
+		if(file_ != null) {
+			return new FileInputStream(file_);
+		}
+		final List<InputStream> streams = new ArrayList<>(buffers_.size());
+		for(final ByteBuffer buffer : buffers_) {
+			streams.add(HavaloBufferPool.newInputStream(buffer));
+		}
+		return new SequenceInputStream(Collections.enumeration(streams));
+	}
+	
+	@Override
+	public void close() {
+		release(pool_, buffers_);
+		if(file_ != null) {
+			FileUtils.deleteQuietly(file_);
+		}
+	}
+	
+	private static final void release(final HavaloBufferPool pool,
+		final List<ByteBuffer> buffers) {
+		for(final ByteBuffer buffer : buffers) {
+			pool.release(buffer);
+		}
+		buffers.clear();
+	}
+	
+}
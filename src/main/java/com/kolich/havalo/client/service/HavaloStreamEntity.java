@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.service;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A streamed, non-repeatable request entity, like
+ * {@link org.apache.http.entity.InputStreamEntity}, that's written through
+ * a buffer from a {@link HavaloBufferPool} instead of its own.  A negative
+ * length means the length is unknown and the stream is sent until its end,
+ * with chunked transfer encoding.  Like InputStreamEntity, the stream is
+ * closed once written.
+ */
+final class HavaloStreamEntity extends AbstractHttpEntity {
+	
+	private final InputStream input_;
+	private final long length_;
+	private final HavaloBufferPool pool_;
+	
+	HavaloStreamEntity(final InputStream input, final long length,
+		final HavaloBufferPool pool) {
+		input_ = input;
+		length_ = length;
+		pool_ = pool;
+		setChunked(length < 0L);
+	}
+	
+	@Override
+	public boolean isRepeatable() {
+		return false;
+	}
+	
+	@Override
+	public long getContentLength() {
+		return length_;
+	}
+	
+	@Override
+	public InputStream getContent() {
+		return input_;
+	}
+	
+	@Override
+	public boolean isStreaming() {
+		return true;
+	}
+	
+	@Override
+	public void writeTo(final OutputStream output) throws IOException {
+		final ByteBuffer buffer = pool_.acquire();
+		try {
+			if(length_ < 0L) {
+				while(HavaloBufferPool.read(input_, buffer) >= 0) {
+					buffer.flip();
+					HavaloBufferPool.write(buffer, output);
+					buffer.clear();
+				}
+				return;
+			}
+			long remaining = length_;
+			while(remaining > 0L) {
+				buffer.clear();
+				if(remaining < buffer.capacity()) {
+					buffer.limit((int)remaining);
+				}
+				final int n = HavaloBufferPool.read(input_, buffer);
+				if(n < 0) {
+					// Same as InputStreamEntity, a short stream is sent as
+					// is and the server is left to notice.
+					break;
+				}
+				buffer.flip();
+				HavaloBufferPool.write(buffer, output);
+				remaining -= n;
+			}
+		} finally {
+			pool_.release(buffer);
+			input_.close();
+		}
+	}
+	
+}
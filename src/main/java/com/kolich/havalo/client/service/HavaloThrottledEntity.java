@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.service;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Wraps an {@link HttpEntity} and holds the bytes read from, or written
+ * by, the entity to the given {@link HavaloRateLimits}.  If given a
+ * deadline, a read or write that would have to wait on the limits past it
+ * fails instead, after running the given callback.
+ */
+final class HavaloThrottledEntity extends HttpEntityWrapper {
+	
+	private final HavaloRateLimits limits_;
+	private final HavaloOperation operation_;
+	private final long deadline_;
+	private final Runnable timedOut_;
+	
+	private InputStream in_ = null;
+	
+	HavaloThrottledEntity(final HttpEntity entity,
+		final HavaloRateLimits limits, final HavaloOperation operation,
+		final long deadline, final Runnable timedOut) {
+		super(entity);
+		limits_ = limits;
+		operation_ = operation;
+		deadline_ = deadline;
+		timedOut_ = timedOut;
+	}
+	
+	HavaloThrottledEntity(final HttpEntity entity,
+		final HavaloRateLimits limits, final HavaloOperation operation) {
+		this(entity, limits, operation, 0L, null);
+	}
+	
+	@Override
+	public InputStream getContent() throws IOException {
+		if(in_ == null) {
+			in_ = new FilterInputStream(wrappedEntity.getContent()) {
+				@Override
+				public int read() throws IOException {
+					final int b = super.read();
+					if(b >= 0) {
+						acquire(1L);
+					}
+					return b;
+				}
+				@Override
+				public int read(final byte[] b, final int off,
+					final int len) throws IOException {
+					final int n = in.read(b, off, len);
+					if(n > 0) {
+						acquire(n);
+					}
+					return n;
+				}
+			};
+		}
+		return in_;
+	}
+	
+	@Override
+	public void writeTo(final OutputStream out) throws IOException {
+		wrappedEntity.writeTo(new FilterOutputStream(out) {
+			@Override
+			public void write(final int b) throws IOException {
+				acquire(1L);
+				out.write(b);
+			}
+			@Override
+			public void write(final byte[] b, final int off,
+				final int len) throws IOException {
+				acquire(len);
+				out.write(b, off, len);
+			}
+		});
+	}
+	
+	private final void acquire(final long bytes) throws IOException {
+		if(timedOut_ == null) {
+			limits_.acquireBytes(operation_, bytes);
+			return;
+		}
+		try {
+			limits_.acquireBytes(operation_, bytes, deadline_);
+		} catch (TimeoutException e) {
+			timedOut_.run();
+			throw (InterruptedIOException)new InterruptedIOException(
+				e.getMessage()).initCause(e);
+		}
+	}
+	
+}
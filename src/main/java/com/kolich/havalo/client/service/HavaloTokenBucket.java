@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.service;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * A token bucket: permits accrue at a steady rate, up to a burst, and
+ * callers take as many as they need, waiting if there aren't enough.  A
+ * caller may take more than are available (or even more than the burst),
+ * leaving the bucket in debt that later callers wait out in turn, so
+ * waiters are served roughly in order.  The rate and burst can be changed
+ * at any time; callers already waiting keep the wait they were given.
+ */
+public final class HavaloTokenBucket {
+	
+	private static final double NANOS_PER_SECOND = SECONDS.toNanos(1L);
+	
+	/**
+	 * Permits per nanosecond.
+	 */
+	private double rate_;
+	private double burst_;
+	private double tokens_;
+	private long last_;
+	
+	/**
+	 * Creates a full bucket.
+	 */
+	public HavaloTokenBucket(final double permitsPerSecond,
+		final double burst) {
+		last_ = System.nanoTime();
+		setRate(permitsPerSecond, burst);
+		tokens_ = burst_;
+	}
+	
+	public synchronized void setRate(final double permitsPerSecond,
+		final double burst) {
+		checkArgument(permitsPerSecond > 0.0d, "Rate must be greater " +
+			"than zero!");
+		checkArgument(burst >= 1.0d, "Burst must be at least one!");
+		refill(System.nanoTime());
+		rate_ = permitsPerSecond / NANOS_PER_SECOND;
+		burst_ = burst;
+		tokens_ = Math.min(tokens_, burst_);
+	}
+	
+	public synchronized double getRate() {
+		return rate_ * NANOS_PER_SECOND;
+	}
+	
+	public synchronized double getBurst() {
+		return burst_;
+	}
+	
+	/**
+	 * Takes the given number of permits, waiting until the bucket can
+	 * afford them.
+	 */
+	public void acquire(final long permits) throws InterruptedException {
+		final long wait = reserve(permits);
+		if(wait > 0L) {
+			NANOSECONDS.sleep(wait);
+		}
+	}
+	
+	/**
+	 * Takes the given number of permits, waiting until the bucket can
+	 * afford them, but only if that wait is no longer than the given
+	 * timeout in nanoseconds.  Returns false, without taking any permits,
+	 * if it would be.
+	 */
+	public boolean tryAcquire(final long permits, final long timeoutNanos)
+		throws InterruptedException {
+		final long wait = tryReserve(permits, timeoutNanos);
+		if(wait > 0L) {
+			NANOSECONDS.sleep(wait);
+		}
+		return wait >= 0L;
+	}
+	
+	/**
+	 * Takes the given number of permits, and returns how long in
+	 * nanoseconds the caller has to wait before using them.
+	 */
+	synchronized long reserve(final long permits) {
+		refill(System.nanoTime());
+		tokens_ -= permits;
+		return (tokens_ >= 0.0d) ? 0L : (long)Math.ceil(-tokens_ / rate_);
+	}
+	
+	/**
+	 * Takes the given number of permits if the caller would have to wait
+	 * no longer than the given timeout before using them, and returns that
+	 * wait, or -1 without taking any permits otherwise.
+	 */
+	synchronized long tryReserve(final long permits,
+		final long timeoutNanos) {
+		refill(System.nanoTime());
+		final double tokens = tokens_ - permits;
+		final long wait = (tokens >= 0.0d) ? 0L :
+			(long)Math.ceil(-tokens / rate_);
+		if(wait > timeoutNanos) {
+			return -1L;
+		}
+		tokens_ = tokens;
+		return wait;
+	}
+	
+	private final void refill(final long now) {
+		if(now > last_) {
+			tokens_ = Math.min(burst_, tokens_ + (now - last_) * rate_);
+			last_ = now;
+		}
+	}
+	
+}
@@ -0,0 +1,431 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.kolich.common.functional.either.Either;
+import com.kolich.common.functional.either.Left;
+import com.kolich.common.functional.either.Right;
+import com.kolich.havalo.client.HavaloClientException;
+import com.kolich.http.common.response.HttpFailure;
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.apache.commons.codec.digest.DigestUtils.sha1Hex;
+import static org.apache.http.HttpHeaders.CONTENT_LENGTH;
+import static org.apache.http.HttpHeaders.ETAG;
+
+/**
+ * A write-behind buffer in front of {@link HavaloClient#putObject}.  Writes
+ * are queued and flushed asynchronously, and pending writes to the same
+ * path are coalesced such that only the newest one is actually sent to the
+ * API.  A write is never left pending for longer than the configured max
+ * staleness, at most a bounded number of PUT's are in flight at any one
+ * time, and writes to the same path are never in flight concurrently so
+ * an older version can't overwrite a newer one.  Reads through this buffer
+ * see pending writes.
+ */
+public final class HavaloWriteBehindBuffer implements Closeable {
+	
+	private static final String FLUSHER_THREAD_NAME = "havalo-write-behind-%d";
+	
+	private final HavaloClient client_;
+	private final long maxStalenessNanos_;
+	
+	/**
+	 * Called with the path and failure of any asynchronous PUT that failed,
+	 * may be null.
+	 */
+	private final BiConsumer<String[],HttpFailure> failureHandler_;
+	
+	private final ScheduledExecutorService scheduler_;
+	private final ExecutorService flusher_;
+	
+	/**
+	 * Guards all state below.
+	 */
+	private final Object lock_ = new Object();
+	
+	/**
+	 * Writes that have not been sent yet, keyed by key name.
+	 */
+	private final Map<String,PendingWrite> pending_;
+	
+	/**
+	 * Writes that are in flight, keyed by key name.
+	 */
+	private final Map<String,PendingWrite> inflight_;
+	
+	/**
+	 * The number of flushes in progress.
+	 */
+	private int flushing_ = 0;
+	private boolean closed_ = false;
+	
+	private final AtomicLong coalesced_ = new AtomicLong(0L);
+	private final AtomicLong failed_ = new AtomicLong(0L);
+	
+	public HavaloWriteBehindBuffer(final HavaloClient client,
+		final int maxConcurrency, final long maxStalenessMs,
+		final BiConsumer<String[],HttpFailure> failureHandler) {
+		checkArgument(maxConcurrency > 0, "Max concurrency must be " +
+			"greater than zero!");
+		checkArgument(maxStalenessMs >= 0L, "Max staleness cannot be " +
+			"negative!");
+		client_ = checkNotNull(client, "The client cannot be null!");
+		maxStalenessNanos_ = MILLISECONDS.toNanos(maxStalenessMs);
+		failureHandler_ = failureHandler;
+		final ThreadFactoryBuilder factory = new ThreadFactoryBuilder()
+			.setNameFormat(FLUSHER_THREAD_NAME).setDaemon(true);
+		scheduler_ = Executors.newSingleThreadScheduledExecutor(
+			factory.build());
+		flusher_ = Executors.newFixedThreadPool(maxConcurrency,
+			factory.build());
+		pending_ = new HashMap<>();
+		inflight_ = new HashMap<>();
+	}
+	
+	public HavaloWriteBehindBuffer(final HavaloClient client,
+		final int maxConcurrency, final long maxStalenessMs) {
+		this(client, maxConcurrency, maxStalenessMs, null);
+	}
+	
+	/**
+	 * Queues a PUT of the given bytes to the given path, replacing any
+	 * pending (not yet in flight) write to the same path.  Note that the
+	 * buffer takes ownership of the input array, it must not be modified
+	 * by the caller afterwards.
+	 */
+	public void putObject(final byte[] input, final Header[] headers,
+		final HavaloKey key) {
+		checkNotNull(input, "The input cannot be null!");
+		checkNotNull(key, "The key cannot be null!");
+		final String name = key.getName();
+		synchronized(lock_) {
+			if(closed_) {
+				throw new HavaloClientException("Write-behind buffer " +
+					"is closed.");
+			}
+			final PendingWrite write = new PendingWrite(key, input,
+				headers, System.nanoTime());
+			final PendingWrite previous = pending_.put(name, write);
+			if(previous != null) {
+				// The older write was never sent, and now never will be.
+				// Keep its queue time so that repeated overwrites can't
+				// postpone a flush indefinitely.
+				write.queued_ = previous.queued_;
+				coalesced_.incrementAndGet();
+			} else if(flushing_ > 0) {
+				dispatch(name);
+			} else {
+				scheduler_.schedule(() -> {
+					synchronized(lock_) {
+						dispatch(name);
+					}
+				}, maxStalenessNanos_, NANOSECONDS);
+			}
+		}
+	}
+	
+	public void putObject(final byte[] input, final Header[] headers,
+		final String... path) {
+		putObject(input, headers, HavaloKey.of(path));
+	}
+	
+	public void putObject(final byte[] input, final HavaloKey key) {
+		putObject(input, null, key);
+	}
+	
+	public void putObject(final byte[] input, final String... path) {
+		putObject(input, null, HavaloKey.of(path));
+	}
+	
+	/**
+	 * Gets the object at the given path, or if a write to that path is
+	 * pending or in flight, the bytes and headers of that write.  The
+	 * headers of a write are the request headers it was queued with, along
+	 * with the Content-Length and (SHA-1) ETag the API will give the object
+	 * once the write lands.
+	 */
+	public Either<HttpFailure,List<Header>> getObject(
+		final OutputStream destination, final HavaloKey key) {
+		final PendingWrite write = getPendingWrite(key);
+		if(write == null) {
+			return client_.getObject(destination, key);
+		}
+		try {
+			destination.write(write.input_);
+		} catch (IOException e) {
+			// Fail the same way a GET through the client would, had the
+			// destination failed while the object was streamed into it.
+			return Left.left(new HttpFailure(e));
+		}
+		return Right.right(write.getHeaders());
+	}
+	
+	public Either<HttpFailure,List<Header>> getObject(
+		final OutputStream destination, final String... path) {
+		return getObject(destination, HavaloKey.of(path));
+	}
+	
+	/**
+	 * Gets the meta data of the object at the given path, or if a write to
+	 * that path is pending or in flight, the headers of that write as
+	 * returned by {@link #getObject(OutputStream, HavaloKey)}.
+	 */
+	public Either<HttpFailure,List<Header>> getObjectMetaData(
+		final HavaloKey key) {
+		final PendingWrite write = getPendingWrite(key);
+		return (write == null) ? client_.getObjectMetaData(key) :
+			Right.<HttpFailure,List<Header>>right(write.getHeaders());
+	}
+	
+	public Either<HttpFailure,List<Header>> getObjectMetaData(
+		final String... path) {
+		return getObjectMetaData(HavaloKey.of(path));
+	}
+	
+	/**
+	 * Discards any pending write to the given path, waits for an in flight
+	 * write to the same path to land, and then deletes the object.
+	 */
+	public Either<HttpFailure,Integer> deleteObject(final HavaloKey key) {
+		checkNotNull(key, "The key cannot be null!");
+		final String name = key.getName();
+		synchronized(lock_) {
+			pending_.remove(name);
+			awaitWhile(() -> inflight_.containsKey(name));
+		}
+		return client_.deleteObject(key);
+	}
+	
+	public Either<HttpFailure,Integer> deleteObject(final String... path) {
+		return deleteObject(HavaloKey.of(path));
+	}
+	
+	/**
+	 * Immediately sends all pending writes and blocks until they, and any
+	 * writes already in flight, have completed.  Writes queued while a
+	 * flush is in progress are sent immediately and waited upon as well.
+	 */
+	public void flush() {
+		synchronized(lock_) {
+			flushing_++;
+			try {
+				for(final String key : new ArrayList<>(pending_.keySet())) {
+					dispatch(key);
+				}
+				awaitWhile(() -> !pending_.isEmpty() || !inflight_.isEmpty());
+			} finally {
+				flushing_--;
+			}
+		}
+	}
+	
+	/**
+	 * Rejects any further writes, flushes all pending writes and releases
+	 * the threads owned by this buffer.
+	 */
+	@Override
+	public void close() {
+		synchronized(lock_) {
+			if(closed_) {
+				return;
+			}
+			closed_ = true;
+		}
+		try {
+			flush();
+		} finally {
+			scheduler_.shutdownNow();
+			flusher_.shutdown();
+		}
+	}
+	
+	/**
+	 * Returns the number of writes that were replaced by a newer write to
+	 * the same path before ever being sent.
+	 */
+	public long getCoalescedCount() {
+		return coalesced_.get();
+	}
+	
+	/**
+	 * Returns the number of asynchronous PUT's that failed.
+	 */
+	public long getFailedCount() {
+		return failed_.get();
+	}
+	
+	/**
+	 * Returns the number of writes currently pending or in flight.
+	 */
+	public int size() {
+		synchronized(lock_) {
+			return pending_.size() + inflight_.size();
+		}
+	}
+	
+	private final PendingWrite getPendingWrite(final HavaloKey key) {
+		final String name = checkNotNull(key, "The key cannot be null!")
+			.getName();
+		synchronized(lock_) {
+			final PendingWrite write = pending_.get(name);
+			return (write != null) ? write : inflight_.get(name);
+		}
+	}
+	
+	/**
+	 * Hands the pending write for the given key name off to the flusher,
+	 * unless a write to the same key is already in flight in which case the
+	 * write stays pending and is dispatched once the in flight write
+	 * completes.  Must be called while holding the lock.
+	 */
+	private final void dispatch(final String name) {
+		if(inflight_.containsKey(name)) {
+			return;
+		}
+		final PendingWrite write = pending_.remove(name);
+		if(write == null) {
+			return;
+		}
+		inflight_.put(name, write);
+		flusher_.execute(() -> {
+			try {
+				final Either<HttpFailure,?> put = client_.putObject(
+					write.input_, write.headers_, write.key_);
+				if(!put.success()) {
+					failed(write, put.left());
+				}
+			} catch (Exception e) {
+				failed(write, new HttpFailure(e));
+			} finally {
+				synchronized(lock_) {
+					inflight_.remove(name);
+					// If a newer write to this key went stale while we
+					// were busy, send it now.
+					final PendingWrite next = pending_.get(name);
+					if(next != null && (flushing_ > 0 ||
+						System.nanoTime() - next.queued_ >=
+							maxStalenessNanos_)) {
+						dispatch(name);
+					}
+					lock_.notifyAll();
+				}
+			}
+		});
+	}
+	
+	private final void failed(final PendingWrite write,
+		final HttpFailure failure) {
+		failed_.incrementAndGet();
+		if(failureHandler_ != null) {
+			failureHandler_.accept(write.key_.getComponents().toArray(
+				new String[0]), failure);
+		}
+	}
+	
+	/**
+	 * Waits on the lock while the given condition holds.  Must be called
+	 * while holding the lock.
+	 */
+	private final void awaitWhile(final Condition condition) {
+		try {
+			while(condition.holds()) {
+				lock_.wait();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new HavaloClientException("Interrupted while waiting " +
+				"on write-behind buffer.", e);
+		}
+	}
+	
+	private interface Condition {
+		public boolean holds();
+	}
+	
+	private static final class PendingWrite {
+		private final HavaloKey key_;
+		private final byte[] input_;
+		private final Header[] headers_;
+		/**
+		 * When the oldest write this one replaced was queued; the write
+		 * must be dispatched within the max staleness of this instant.
+		 */
+		private long queued_;
+		/**
+		 * The headers returned for reads of this write, built on first
+		 * use.
+		 */
+		private List<Header> response_ = null;
+		private PendingWrite(final HavaloKey key, final byte[] input,
+			final Header[] headers, final long queued) {
+			key_ = key;
+			input_ = input;
+			headers_ = headers;
+			queued_ = queued;
+		}
+		private synchronized List<Header> getHeaders() {
+			if(response_ == null) {
+				final List<Header> headers = new ArrayList<>();
+				if(headers_ != null) {
+					for(final Header header : headers_) {
+						if(!CONTENT_LENGTH.equalsIgnoreCase(header.getName()) &&
+							!ETAG.equalsIgnoreCase(header.getName())) {
+							headers.add(header);
+						}
+					}
+				}
+				headers.add(new BasicHeader(CONTENT_LENGTH,
+					Integer.toString(input_.length)));
+				headers.add(new BasicHeader(ETAG, sha1Hex(input_)));
+				response_ = Collections.unmodifiableList(headers);
+			}
+			return response_;
+		}
+	}
+	
+}
@@ -37,11 +37,40 @@ import static org.apache.commons.codec.binary.StringUtils.getBytesUtf8;
 import static org.apache.commons.codec.binary.StringUtils.newStringUtf8;
 
 /**
- * Computes an HMAC-SHA256 signature.
+ * Computes an HMAC-SHA256 signature.  {@link Mac} instances are costly to
+ * look up, so one is kept per thread and shared by every signer.  A signer
+ * created for specific credentials also keeps their secret key, ready to
+ * use for any credentials with the same secret, and only derives a key on
+ * the fly for credentials with a different secret.
  */
 public final class HMACSHA256Signer implements HavaloSigningAlgorithm {
 	
 	private static final String HMAC_SHA256_ALGORITHM_NAME = "HmacSHA256";
+	
+	private static final ThreadLocal<Mac> MAC = ThreadLocal.withInitial(() -> {
+		try {
+			return Mac.getInstance(HMAC_SHA256_ALGORITHM_NAME);
+		} catch (Exception e) {
+			throw new HavaloClientException("Failed to get an instance " +
+				"of " + HMAC_SHA256_ALGORITHM_NAME, e);
+		}
+	});
+	
+	/**
+	 * The secret whose key is cached, and that key, or null.
+	 */
+	private final String secret_;
+	private final SecretKeySpec key_;
+	
+	public HMACSHA256Signer() {
+		secret_ = null;
+		key_ = null;
+	}
+	
+	public HMACSHA256Signer(final HavaloCredentials credentials) {
+		secret_ = credentials.getSecret();
+		key_ = getKey(secret_);
+	}
 		
 	/**
      * Returns a Base-64 encoded HMAC-SHA256 signature.
@@ -51,10 +80,11 @@ public final class HMACSHA256Signer implements HavaloSigningAlgorithm {
 		final String input) {
 		String result = null;
 		try {
-			// Get a new instance of the HMAC-SHA256 algorithm.
-			final Mac mac = Mac.getInstance(HMAC_SHA256_ALGORITHM_NAME);
+			final Mac mac = MAC.get();
 			// Init it with our secret and the secret-key algorithm.
-			mac.init(new SecretKeySpec(getBytesUtf8(credentials.getSecret()), HMAC_SHA256_ALGORITHM_NAME));
+			final String secret = credentials.getSecret();
+			mac.init((secret_ != null && secret_.equals(secret)) ? key_ :
+				getKey(secret));
 			// Sign the input.
 			result = newStringUtf8(encodeBase64(mac.doFinal(getBytesUtf8(input))));
 		} catch (Exception e) {
@@ -64,4 +94,9 @@ public final class HMACSHA256Signer implements HavaloSigningAlgorithm {
 		return result;
 	}
 	
+	private static final SecretKeySpec getKey(final String secret) {
+		return new SecretKeySpec(getBytesUtf8(secret),
+			HMAC_SHA256_ALGORITHM_NAME);
+	}
+	
 }
@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.trace;
+
+import com.kolich.havalo.client.HavaloClientException;
+import com.kolich.havalo.client.service.HavaloOperation;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reads back a trace written by a {@link HavaloTraceRecorder}, one record
+ * at a time, in the order they were written.
+ */
+public final class HavaloTraceReader implements Closeable {
+	
+	private static final HavaloOperation[] OPERATIONS =
+		HavaloOperation.values();
+	
+	private final DataInputStream in_;
+	private final long startMillis_;
+	
+	private long lastOffsetMicros_ = 0L;
+	
+	public HavaloTraceReader(final InputStream in) throws IOException {
+		checkNotNull(in, "The trace input stream cannot be null!");
+		in_ = new DataInputStream(new BufferedInputStream(in));
+		if(in_.readInt() != HavaloTraceRecorder.MAGIC) {
+			throw new HavaloClientException("Not a Havalo trace.");
+		}
+		final int version = in_.readUnsignedByte();
+		if(version != HavaloTraceRecorder.VERSION) {
+			throw new HavaloClientException("Unsupported trace version: " +
+				version);
+		}
+		startMillis_ = in_.readLong();
+	}
+	
+	public HavaloTraceReader(final File file) throws IOException {
+		this(new FileInputStream(file));
+	}
+	
+	/**
+	 * The wall clock time recording started, in epoch millis.
+	 */
+	public long getStartMillis() {
+		return startMillis_;
+	}
+	
+	/**
+	 * Returns the next record, or null at the end of the trace.
+	 */
+	public HavaloTraceRecord next() throws IOException {
+		final int first = in_.read();
+		if(first < 0) {
+			return null;
+		}
+		final long delta = unZigZag(readVarLong(first));
+		final int operation = in_.readUnsignedByte();
+		if(operation >= OPERATIONS.length) {
+			throw new HavaloClientException("Unknown operation in trace: " +
+				operation);
+		}
+		final long pathHash = in_.readLong();
+		final long size = readVarLong(in_.readUnsignedByte());
+		final int statusCode = (int)(readVarLong(in_.readUnsignedByte()) - 1L);
+		final long latencyMicros = readVarLong(in_.readUnsignedByte());
+		lastOffsetMicros_ += delta;
+		return new HavaloTraceRecord(lastOffsetMicros_, OPERATIONS[operation],
+			pathHash, size, statusCode, latencyMicros);
+	}
+	
+	/**
+	 * Reads every remaining record.
+	 */
+	public List<HavaloTraceRecord> readAll() throws IOException {
+		final List<HavaloTraceRecord> records = new ArrayList<>();
+		HavaloTraceRecord record;
+		while((record = next()) != null) {
+			records.add(record);
+		}
+		return records;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		in_.close();
+	}
+	
+	private long readVarLong(final int first) throws IOException {
+		long value = first & 0x7FL;
+		int b = first, shift = 7;
+		while((b & 0x80) != 0) {
+			if(shift > 63) {
+				throw new HavaloClientException("Malformed trace record.");
+			}
+			if((b = in_.read()) < 0) {
+				throw new EOFException("Truncated trace record.");
+			}
+			value |= (b & 0x7FL) << shift;
+			shift += 7;
+		}
+		return value;
+	}
+	
+	private static final long unZigZag(final long value) {
+		return (value >>> 1) ^ -(value & 1L);
+	}
+	
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.trace;
+
+import com.kolich.havalo.client.service.HavaloOperation;
+
+/**
+ * A single request read back from a trace by a {@link HavaloTraceReader}.
+ */
+public final class HavaloTraceRecord {
+	
+	private final long offsetMicros_;
+	private final HavaloOperation operation_;
+	private final long pathHash_;
+	private final long size_;
+	private final int statusCode_;
+	private final long latencyMicros_;
+	
+	HavaloTraceRecord(final long offsetMicros,
+		final HavaloOperation operation, final long pathHash,
+		final long size, final int statusCode, final long latencyMicros) {
+		offsetMicros_ = offsetMicros;
+		operation_ = operation;
+		pathHash_ = pathHash;
+		size_ = size;
+		statusCode_ = statusCode;
+		latencyMicros_ = latencyMicros;
+	}
+	
+	/**
+	 * When the request started, in microseconds since recording started.
+	 */
+	public long getOffsetMicros() {
+		return offsetMicros_;
+	}
+	
+	public HavaloOperation getOperation() {
+		return operation_;
+	}
+	
+	/**
+	 * A 64-bit hash of the request path (and query string), requests on
+	 * the same object share the same hash.
+	 */
+	public long getPathHash() {
+		return pathHash_;
+	}
+	
+	/**
+	 * The number of bytes sent for requests with a body (PUT's), or else
+	 * the number of bytes received.
+	 */
+	public long getSize() {
+		return size_;
+	}
+	
+	/**
+	 * The HTTP status code of the response, or
+	 * {@link com.kolich.havalo.client.events.HavaloRequestEvent#NO_STATUS}
+	 * if no response was received.
+	 */
+	public int getStatusCode() {
+		return statusCode_;
+	}
+	
+	public long getLatencyMicros() {
+		return latencyMicros_;
+	}
+	
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.trace;
+
+import com.kolich.havalo.client.HavaloClientException;
+import com.kolich.havalo.client.service.HavaloOperation;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Records every request made by a {@link com.kolich.havalo.client.service.HavaloClient}
+ * to a compact binary trace: when it started, its operation, a hash of its
+ * path, its size and the resulting status code (and latency).  Object names
+ * and payloads are never recorded.  Attach one to a client with
+ * {@link com.kolich.havalo.client.service.HavaloClientConfig.Builder#setTraceRecorder(HavaloTraceRecorder)},
+ * read the trace back with a {@link HavaloTraceReader} or replay it with a
+ * {@link HavaloTraceReplayer}.
+ * 
+ * A trace is a header, the magic bytes "HVTR", a version byte and the
+ * wall clock time recording started (epoch millis), followed by one record
+ * per request.  Records are written as requests complete, so they're not
+ * strictly ordered by start time; each record's start time is stored as a
+ * zig-zag encoded delta from the previous record.  A typical record is
+ * around 15 bytes.
+ */
+public final class HavaloTraceRecorder implements Closeable {
+	
+	static final int MAGIC = 0x48565452; // "HVTR"
+	static final int VERSION = 1;
+	
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+	
+	private final DataOutputStream out_;
+	private final long startNanos_;
+	
+	/**
+	 * Start offset of the last record written, deltas are relative to it.
+	 */
+	private long lastOffsetMicros_ = 0L;
+	private long records_ = 0L;
+	private boolean closed_ = false;
+	
+	public HavaloTraceRecorder(final OutputStream out) {
+		checkNotNull(out, "The trace output stream cannot be null!");
+		out_ = new DataOutputStream(new BufferedOutputStream(out));
+		startNanos_ = System.nanoTime();
+		try {
+			out_.writeInt(MAGIC);
+			out_.writeByte(VERSION);
+			out_.writeLong(System.currentTimeMillis());
+		} catch (IOException e) {
+			throw new HavaloClientException("Failed to write trace " +
+				"header.", e);
+		}
+	}
+	
+	public HavaloTraceRecorder(final File file) throws IOException {
+		this(new FileOutputStream(file));
+	}
+	
+	/**
+	 * Called by the client once a request has completed.  Tracing is best
+	 * effort: once the trace can't be written to, or has been closed,
+	 * further records are silently dropped.
+	 */
+	public void record(final HavaloOperation operation,
+		final long startNanos, final long latencyNanos, final URI uri,
+		final long size, final int statusCode) {
+		final long offsetMicros = NANOSECONDS.toMicros(
+			startNanos - startNanos_);
+		final long pathHash = hash(uri);
+		synchronized(this) {
+			if(closed_) {
+				return;
+			}
+			try {
+				writeVarLong(zigZag(offsetMicros - lastOffsetMicros_));
+				out_.writeByte(operation.ordinal());
+				out_.writeLong(pathHash);
+				writeVarLong(Math.max(0L, size));
+				// Shifted by one so NO_STATUS (-1) encodes as zero.
+				writeVarLong(statusCode + 1L);
+				writeVarLong(Math.max(0L,
+					NANOSECONDS.toMicros(latencyNanos)));
+				lastOffsetMicros_ = offsetMicros;
+				records_++;
+			} catch (IOException e) {
+				closed_ = true;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of records written so far.
+	 */
+	public synchronized long getRecordCount() {
+		return records_;
+	}
+	
+	public synchronized void flush() throws IOException {
+		if(!closed_) {
+			out_.flush();
+		}
+	}
+	
+	@Override
+	public synchronized void close() throws IOException {
+		closed_ = true;
+		out_.close();
+	}
+	
+	private void writeVarLong(long value) throws IOException {
+		while((value & ~0x7FL) != 0L) {
+			out_.writeByte((int)((value & 0x7FL) | 0x80L));
+			value >>>= 7;
+		}
+		out_.writeByte((int)value);
+	}
+	
+	private static final long zigZag(final long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+	
+	/**
+	 * 64-bit FNV-1a of the raw path and query string.
+	 */
+	static final long hash(final URI uri) {
+		long hash = FNV_OFFSET_BASIS;
+		if(uri != null) {
+			hash = hash(hash, uri.getRawPath());
+			if(uri.getRawQuery() != null) {
+				hash = hash(hash, "?");
+				hash = hash(hash, uri.getRawQuery());
+			}
+		}
+		return hash;
+	}
+	
+	private static final long hash(long hash, final String s) {
+		if(s != null) {
+			for(int i = 0, l = s.length(); i < l; i++) {
+				hash ^= s.charAt(i);
+				hash *= FNV_PRIME;
+			}
+		}
+		return hash;
+	}
+	
+}
@@ -0,0 +1,348 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.trace;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.kolich.common.functional.either.Either;
+import com.kolich.havalo.client.HavaloClientException;
+import com.kolich.havalo.client.load.HavaloLoadReport;
+import com.kolich.havalo.client.metrics.LatencyHistogram;
+import com.kolich.havalo.client.service.HavaloClient;
+import com.kolich.havalo.client.service.HavaloOperation;
+import com.kolich.http.common.response.HttpFailure;
+import org.apache.http.Header;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Comparator.comparingLong;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.commons.io.output.NullOutputStream.NULL_OUTPUT_STREAM;
+
+/**
+ * Replays a trace written by a {@link HavaloTraceRecorder} through a
+ * {@link HavaloClient}, against any endpoint.  Requests are issued in their
+ * original order and at their original times, optionally scaled.  Since
+ * traces only hold path hashes, every distinct path is mapped to a
+ * synthetic object named after its hash under a prefix, so the replay
+ * hits the same number of objects with the same access pattern and
+ * object sizes as the original.  Payloads are streamed from a small
+ * buffer repeated as needed, so objects of any size can be replayed.
+ * 
+ * Like the {@link com.kolich.havalo.client.load.HavaloLoadGenerator},
+ * latency is measured from when each request was due, not from when it was
+ * actually sent.  Repository creation and deletion are never replayed.
+ * Neither are listings: a trace only holds the hash of the path of each
+ * request, and not the prefix a listing asked for, so there's nothing to
+ * replay them against.
+ */
+public final class HavaloTraceReplayer {
+	
+	private static final String REPLAY_THREAD_NAME = "havalo-replay-%d";
+	
+	private static final Header[] NO_HEADERS = new Header[0];
+	
+	private static final int PAYLOAD_SIZE = 64 * 1024;
+	
+	private final HavaloClient client_;
+	private final double timeScale_;
+	private final int concurrency_;
+	private final String prefix_;
+	private final boolean preload_;
+	
+	private HavaloTraceReplayer(final Builder builder) {
+		client_ = checkNotNull(builder.client_, "The client cannot be null!");
+		timeScale_ = builder.timeScale_;
+		concurrency_ = builder.concurrency_;
+		prefix_ = builder.prefix_;
+		preload_ = builder.preload_;
+	}
+	
+	public HavaloLoadReport replay(final HavaloTraceReader reader)
+		throws IOException, InterruptedException {
+		return replay(reader.readAll());
+	}
+	
+	/**
+	 * Replays the given records, blocking until every request has
+	 * completed.
+	 */
+	public HavaloLoadReport replay(final List<HavaloTraceRecord> trace)
+		throws InterruptedException {
+		// Records are written as requests complete, replay them in the
+		// order they started.
+		final List<HavaloTraceRecord> records = new ArrayList<>(trace);
+		records.removeIf(r -> !isReplayed(r.getOperation()));
+		records.sort(comparingLong(HavaloTraceRecord::getOffsetMicros));
+		final byte[] payload = new byte[PAYLOAD_SIZE];
+		new Random(0L).nextBytes(payload);
+		if(preload_) {
+			preload(records, payload);
+		}
+		final Map<HavaloOperation,LatencyHistogram> latencies =
+			new EnumMap<>(HavaloOperation.class);
+		final Map<HavaloOperation,LongAdder> errors =
+			new EnumMap<>(HavaloOperation.class);
+		for(final HavaloTraceRecord record : records) {
+			if(!latencies.containsKey(record.getOperation())) {
+				latencies.put(record.getOperation(), new LatencyHistogram());
+				errors.put(record.getOperation(), new LongAdder());
+			}
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(
+			concurrency_, new ThreadFactoryBuilder()
+				.setNameFormat(REPLAY_THREAD_NAME).setDaemon(true).build());
+		final long first = records.isEmpty() ? 0L :
+			records.get(0).getOffsetMicros();
+		final long start = System.nanoTime();
+		try {
+			for(final HavaloTraceRecord record : records) {
+				final long due = start + (long)(MICROSECONDS.toNanos(
+					record.getOffsetMicros() - first) * timeScale_);
+				long wait;
+				while((wait = due - System.nanoTime()) > 0L) {
+					LockSupport.parkNanos(wait);
+					if(Thread.interrupted()) {
+						throw new InterruptedException();
+					}
+				}
+				executor.execute(() -> {
+					final boolean success = execute(record, payload);
+					latencies.get(record.getOperation())
+						.record(System.nanoTime() - due);
+					if(!success) {
+						errors.get(record.getOperation()).increment();
+					}
+				});
+			}
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, NANOSECONDS);
+		} finally {
+			executor.shutdownNow();
+		}
+		final long duration = System.nanoTime() - start;
+		final long span = records.isEmpty() ? 0L :
+			records.get(records.size() - 1).getOffsetMicros() - first;
+		// The rate the trace asked for, after scaling.
+		final double rate = (span > 0L && timeScale_ > 0.0d) ?
+			records.size() / (span * timeScale_ / SECONDS.toMicros(1L)) :
+			0.0d;
+		final Map<HavaloOperation,Long> errorCounts =
+			new EnumMap<>(HavaloOperation.class);
+		for(final Map.Entry<HavaloOperation,LongAdder> e :
+			errors.entrySet()) {
+			errorCounts.put(e.getKey(), e.getValue().sum());
+		}
+		return new HavaloLoadReport(duration, concurrency_, rate, latencies,
+			errorCounts);
+	}
+	
+	/**
+	 * Writes every object that's successfully read in the trace before
+	 * it's ever written, so those reads don't turn into 404's.
+	 */
+	private void preload(final List<HavaloTraceRecord> records,
+		final byte[] payload) {
+		final Set<Long> seen = new HashSet<>();
+		for(final HavaloTraceRecord record : records) {
+			final HavaloOperation operation = record.getOperation();
+			if(!seen.add(record.getPathHash()) ||
+				(operation != HavaloOperation.GET_OBJECT &&
+				operation != HavaloOperation.GET_OBJECT_METADATA) ||
+				record.getStatusCode() / 100 != 2) {
+				continue;
+			}
+			final long size = (operation == HavaloOperation.GET_OBJECT) ?
+				record.getSize() : 0L;
+			final Either<HttpFailure,?> put = client_.putObject(
+				new PayloadInputStream(payload, size), size, NO_HEADERS,
+				getPath(record));
+			if(!put.success()) {
+				throw new HavaloClientException("Failed to preload object " +
+					"for replay: " + put.left().getStatusCode(),
+					put.left().getCause());
+			}
+		}
+	}
+	
+	private boolean execute(final HavaloTraceRecord record,
+		final byte[] payload) {
+		final String[] path = getPath(record);
+		final Either<HttpFailure,?> result;
+		switch(record.getOperation()) {
+			case AUTHENTICATE:
+				result = client_.authenticate();
+				break;
+			case GET_OBJECT:
+				result = client_.getObject(NULL_OUTPUT_STREAM, path);
+				break;
+			case GET_OBJECT_METADATA:
+				result = client_.getObjectMetaData(path);
+				break;
+			case PUT_OBJECT:
+				result = client_.putObject(new PayloadInputStream(payload,
+					record.getSize()), record.getSize(), NO_HEADERS, path);
+				break;
+			case DELETE_OBJECT:
+				result = client_.deleteObject(path);
+				break;
+			default:
+				throw new IllegalStateException("Operation can't be " +
+					"replayed: " + record.getOperation());
+		}
+		return result.success();
+	}
+	
+	private String[] getPath(final HavaloTraceRecord record) {
+		return new String[]{prefix_, Long.toHexString(record.getPathHash())};
+	}
+	
+	private static final boolean isReplayed(
+		final HavaloOperation operation) {
+		return operation != HavaloOperation.CREATE_REPOSITORY &&
+			operation != HavaloOperation.DELETE_REPOSITORY &&
+			operation != HavaloOperation.LIST_OBJECTS;
+	}
+	
+	/**
+	 * The given number of bytes, read from the given payload over and
+	 * over again.
+	 */
+	private static final class PayloadInputStream extends InputStream {
+		private final byte[] payload_;
+		private final long size_;
+		private long position_ = 0L;
+		private PayloadInputStream(final byte[] payload, final long size) {
+			payload_ = payload;
+			size_ = size;
+		}
+		@Override
+		public int read() {
+			if(position_ >= size_) {
+				return -1;
+			}
+			return payload_[(int)(position_++ % payload_.length)] & 0xff;
+		}
+		@Override
+		public int read(final byte[] b, final int off, final int len) {
+			if(off < 0 || len < 0 || len > b.length - off) {
+				throw new IndexOutOfBoundsException();
+			} else if(len == 0) {
+				return 0;
+			} else if(position_ >= size_) {
+				return -1;
+			}
+			final int from = (int)(position_ % payload_.length);
+			final int n = (int)Math.min(Math.min(len, size_ - position_),
+				payload_.length - from);
+			System.arraycopy(payload_, from, b, off, n);
+			position_ += n;
+			return n;
+		}
+		@Override
+		public int available() {
+			return (int)Math.min(size_ - position_, Integer.MAX_VALUE);
+		}
+	}
+	
+	public static final class Builder {
+		
+		private HavaloClient client_ = null;
+		private double timeScale_ = 1.0d;
+		private int concurrency_ = 16;
+		private String prefix_ = "replay";
+		private boolean preload_ = true;
+		
+		public Builder setClient(final HavaloClient client) {
+			client_ = client;
+			return this;
+		}
+		
+		/**
+		 * Multiplies the time between requests: 1.0 (the default) replays
+		 * at the original pace, 0.5 twice as fast, and zero as fast as
+		 * possible.  Requests are always issued in their original order,
+		 * but requests issued close together may complete out of order.
+		 */
+		public Builder setTimeScale(final double timeScale) {
+			checkArgument(timeScale >= 0.0d, "Time scale cannot be " +
+				"negative!");
+			timeScale_ = timeScale;
+			return this;
+		}
+		
+		/**
+		 * The maximum number of requests in flight, requests that are due
+		 * while all are busy wait (and that wait counts towards their
+		 * latency).
+		 */
+		public Builder setConcurrency(final int concurrency) {
+			checkArgument(concurrency > 0, "Concurrency must be greater " +
+				"than zero!");
+			concurrency_ = concurrency;
+			return this;
+		}
+		
+		/**
+		 * The path prefix replayed objects are written under.
+		 */
+		public Builder setPrefix(final String prefix) {
+			prefix_ = checkNotNull(prefix, "The prefix cannot be null!");
+			return this;
+		}
+		
+		/**
+		 * Whether to first write every object that the trace reads before
+		 * writing it, on by default.
+		 */
+		public Builder setPreload(final boolean preload) {
+			preload_ = preload;
+			return this;
+		}
+		
+		public HavaloTraceReplayer build() {
+			return new HavaloTraceReplayer(this);
+		}
+		
+	}
+	
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.api;
+
+import com.kolich.common.functional.either.Either;
+import com.kolich.havalo.client.HavaloClientTestCase;
+import com.kolich.havalo.client.embedded.HavaloEmbeddedServer;
+import com.kolich.havalo.client.service.HavaloClient;
+import com.kolich.havalo.client.service.HavaloKey;
+import com.kolich.havalo.client.service.HavaloObject;
+import com.kolich.http.common.response.HttpFailure;
+import org.apache.http.Header;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.commons.codec.binary.StringUtils.getBytesUtf8;
+import static org.apache.commons.codec.binary.StringUtils.newStringUtf8;
+import static org.apache.http.HttpHeaders.ETAG;
+import static org.apache.http.HttpStatus.SC_NOT_FOUND;
+import static org.junit.Assert.assertTrue;
+
+public class BatchTest extends HavaloClientTestCase {
+	
+	private static final int OBJECTS = 40;
+	
+	public BatchTest() throws Exception {
+		super();
+	}
+	
+	@Test
+	public void getObjects() throws Exception {
+		final String prefix = "batch-" + System.currentTimeMillis();
+		final List<String[]> paths = putSampleObjects(client_, prefix);
+		try {
+			final List<String[]> batch = new ArrayList<>(paths);
+			// A duplicate, and a missing object
+			batch.add(paths.get(0));
+			batch.add(new String[]{prefix, "missing"});
+			final Map<HavaloKey,Either<HttpFailure,HavaloObject>> streamed =
+				new ConcurrentHashMap<>();
+			final Map<HavaloKey,Either<HttpFailure,HavaloObject>> objects =
+				client_.getObjects(batch, 4, 30L, SECONDS, streamed::put);
+			assertTrue("Object count did not match",
+				objects.size() == OBJECTS + 1);
+			assertTrue("Streamed results did not match",
+				objects.equals(streamed));
+			for(int i = 0; i < OBJECTS; i++) {
+				final Either<HttpFailure,HavaloObject> o =
+					objects.get(HavaloKey.of(paths.get(i)));
+				assertTrue("Failed to get object #" + i, o.success());
+				assertTrue("Object #" + i + " did not match",
+					Integer.toString(i).equals(newStringUtf8(
+						o.right().getData())) &&
+					o.right().getFirstHeader(ETAG) != null);
+			}
+			final Either<HttpFailure,HavaloObject> missing =
+				objects.get(HavaloKey.of(prefix, "missing"));
+			assertTrue("Got a missing object?", !missing.success() &&
+				missing.left().getStatusCode() == SC_NOT_FOUND);
+			// And the meta data of each
+			final Map<HavaloKey,Either<HttpFailure,List<Header>>> meta =
+				client_.getObjectMetaData(paths);
+			assertTrue("Meta data count did not match",
+				meta.size() == OBJECTS);
+			for(final Either<HttpFailure,List<Header>> m : meta.values()) {
+				assertTrue("Failed to get object meta data.", m.success());
+			}
+		} finally {
+			deleteSampleObjects(client_, paths);
+		}
+	}
+	
+	@Test(timeout=60000L)
+	public void throwingListener() throws Exception {
+		final String prefix = "batch-listener-" + System.currentTimeMillis();
+		final List<String[]> paths = putSampleObjects(client_, prefix);
+		try {
+			final AtomicInteger calls = new AtomicInteger(0);
+			// No deadline, a listener that throws must not leave the
+			// batch waiting forever, nor stop it fetching the rest.
+			final Map<HavaloKey,Either<HttpFailure,List<Header>>> meta =
+				client_.getObjectMetaData(paths, 1, 0L, SECONDS,
+					(key, result) -> {
+						calls.incrementAndGet();
+						throw new IllegalStateException("Bad listener!");
+					});
+			assertTrue("Listener was not called for every result: " +
+				calls.get(), calls.get() == OBJECTS);
+			assertTrue("Meta data count did not match",
+				meta.size() == OBJECTS);
+			for(final Either<HttpFailure,List<Header>> m : meta.values()) {
+				assertTrue("Failed to get object meta data.", m.success());
+			}
+		} finally {
+			deleteSampleObjects(client_, paths);
+		}
+	}
+	
+	@Test
+	public void getObjectsPastDeadline() throws Exception {
+		try(final HavaloEmbeddedServer server = new HavaloEmbeddedServer
+			.Builder().build().start()) {
+			final HavaloClient client = new HavaloClient(
+				server.getAdminCredentials().getKey(),
+				server.getAdminCredentials().getSecret(),
+				server.getApiUrl());
+			final List<String[]> paths = putSampleObjects(client, "slow");
+			server.setLatency(400L, 0L);
+			final long start = System.nanoTime();
+			final Map<HavaloKey,Either<HttpFailure,HavaloObject>> objects =
+				client.getObjects(paths, 2, 600L, MILLISECONDS);
+			final long elapsedMs = (System.nanoTime() - start) / 1000000L;
+			assertTrue("Did not return at the deadline: " + elapsedMs,
+				elapsedMs < 2000L);
+			int succeeded = 0, timedOut = 0;
+			for(final Either<HttpFailure,HavaloObject> o : objects.values()) {
+				if(o.success()) {
+					succeeded++;
+				} else if(o.left().getCause() instanceof TimeoutException) {
+					timedOut++;
+				}
+			}
+			assertTrue("Object count did not match", objects.size() == OBJECTS);
+			assertTrue("Expected some, but not all, objects by the " +
+				"deadline: " + succeeded, succeeded >= 2 &&
+				succeeded + timedOut == OBJECTS && timedOut > 0);
+		}
+	}
+	
+	private static final List<String[]> putSampleObjects(
+		final HavaloClient client, final String prefix) {
+		final List<String[]> paths = new ArrayList<>();
+		for(int i = 0; i < OBJECTS; i++) {
+			final String[] path = {prefix, String.format("%03d", i)};
+			assertTrue("Failed to put sample object #" + i, client.putObject(
+				getBytesUtf8(Integer.toString(i)), path).success());
+			paths.add(path);
+		}
+		return paths;
+	}
+	
+	private static final void deleteSampleObjects(final HavaloClient client,
+		final List<String[]> paths) {
+		for(final String[] path : paths) {
+			assertTrue("Failed to delete sample object.",
+				client.deleteObject(path).success());
+		}
+	}
+	
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.api;
+
+import com.kolich.common.functional.either.Either;
+import com.kolich.havalo.client.HavaloClientTestCase;
+import com.kolich.havalo.client.service.HavaloBufferPool;
+import com.kolich.havalo.client.service.HavaloClient;
+import com.kolich.havalo.client.service.HavaloClientConfig;
+import com.kolich.havalo.client.service.HavaloClientCredentials;
+import com.kolich.havalo.client.service.HavaloObject;
+import com.kolich.havalo.client.service.HavaloObjectInputStream;
+import com.kolich.http.common.response.HttpFailure;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.apache.commons.io.IOUtils.copyLarge;
+import static org.junit.Assert.assertTrue;
+
+public class BufferPoolTest extends HavaloClientTestCase {
+	
+	private static final int BUFFER_SIZE = 4 * 1024;
+	private static final int MAX_POOLED = 8;
+	
+	public BufferPoolTest() throws Exception {
+		super();
+	}
+	
+	@Test
+	public void acquireAndRelease() throws Exception {
+		final HavaloBufferPool pool = new HavaloBufferPool.Builder()
+			.setBufferSize(BUFFER_SIZE).setMaxPooled(1).build();
+		final ByteBuffer first = pool.acquire();
+		final ByteBuffer second = pool.acquire();
+		assertTrue("Expected two misses on an empty pool.",
+			pool.getMissCount() == 2L && pool.getHitCount() == 0L);
+		assertTrue("Unexpected buffer size.",
+			first.capacity() == BUFFER_SIZE && !first.isDirect());
+		pool.release(first);
+		pool.release(second);
+		assertTrue("Expected the second release to be discarded.",
+			pool.getPooledCount() == 1 && pool.getDiscardCount() == 1L);
+		// Foreign buffers are never pooled
+		pool.release(ByteBuffer.allocate(BUFFER_SIZE + 1));
+		assertTrue("Pooled a buffer of the wrong size.",
+			pool.getPooledCount() == 1);
+		assertTrue("Expected the pooled buffer back.",
+			pool.acquire() == first && pool.getHitCount() == 1L);
+	}
+	
+	@Test
+	public void heapTransfers() throws Exception {
+		transfers(false);
+	}
+	
+	@Test
+	public void directTransfers() throws Exception {
+		transfers(true);
+	}
+	
+	private final void transfers(final boolean direct) throws Exception {
+		final HavaloBufferPool pool = new HavaloBufferPool.Builder()
+			.setBufferSize(BUFFER_SIZE).setMaxPooled(MAX_POOLED)
+			.setDirect(direct).build();
+		final HavaloClient client = new HavaloClient(
+			new HavaloClientCredentials(UUID.fromString(apiKey_),
+				apiSecret_),
+			apiUrl_, new HavaloClientConfig.Builder()
+				.setBufferPool(pool)
+				.setSpoolThreshold(16 * BUFFER_SIZE).build());
+		final String name = "test-pool-" + direct;
+		final byte[] data = new byte[100 * BUFFER_SIZE + 17];
+		new Random(0L).nextBytes(data);
+		// Known length, then unknown length (spooled to disk).
+		assertTrue("Failed to PUT object.",
+			client.putObject(new ByteArrayInputStream(data),
+				(long)data.length, null, name).success());
+		assertTrue("Failed to PUT object of unknown length.",
+			client.putObject(new ByteArrayInputStream(data), null,
+				name).success());
+		try {
+			final ByteArrayOutputStream os = new ByteArrayOutputStream();
+			assertTrue("Failed to GET object.",
+				client.getObject(os, name).success());
+			assertTrue("Streamed object did not match.",
+				Arrays.equals(data, os.toByteArray()));
+			final Either<HttpFailure,HavaloObject> object =
+				client.getObject(name);
+			assertTrue("Failed to GET object.", object.success());
+			assertTrue("Buffered object did not match.",
+				Arrays.equals(data, object.right().getData()));
+			final Either<HttpFailure,HavaloObjectInputStream> open =
+				client.openObject(8 * BUFFER_SIZE, name);
+			assertTrue("Failed to open object.", open.success());
+			os.reset();
+			try(final HavaloObjectInputStream is = open.right()) {
+				copyLarge(is, os);
+			}
+			assertTrue("Opened object did not match.",
+				Arrays.equals(data, os.toByteArray()));
+		} finally {
+			assertTrue("Failed to DELETE object.",
+				client.deleteObject(name).success());
+		}
+		assertTrue("Expected buffers to be reused.",
+			pool.getHitCount() > pool.getMissCount());
+		assertTrue("Pool grew past its max.",
+			pool.getPooledCount() <= MAX_POOLED);
+	}
+	
+}
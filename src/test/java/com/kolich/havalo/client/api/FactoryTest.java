@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.api;
+
+import com.kolich.common.functional.either.Either;
+import com.kolich.havalo.client.HavaloClientTestCase;
+import com.kolich.havalo.client.entities.KeyPair;
+import com.kolich.havalo.client.entities.ObjectList;
+import com.kolich.havalo.client.service.HavaloClient;
+import com.kolich.havalo.client.service.HavaloClientFactory;
+import com.kolich.http.common.response.HttpFailure;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.apache.commons.codec.binary.StringUtils.getBytesUtf8;
+import static org.junit.Assert.assertTrue;
+
+public class FactoryTest extends HavaloClientTestCase {
+	
+	private static final int TENANTS = 5;
+	
+	public FactoryTest() throws Exception {
+		super();
+	}
+	
+	@Test
+	public void tenants() throws Exception {
+		final HavaloClientFactory factory = new HavaloClientFactory.Builder()
+			.setApiEndpoint(apiUrl_).build();
+		final HavaloClient admin = factory.getClient(apiKey_, apiSecret_);
+		final List<KeyPair> tenants = new ArrayList<>();
+		try {
+			for(int i = 0; i < TENANTS; i++) {
+				final Either<HttpFailure,KeyPair> create =
+					admin.createRepository();
+				assertTrue("Failed to create repository.", create.success());
+				tenants.add(create.right());
+			}
+			// Each tenant only ever sees its own objects.
+			for(final KeyPair tenant : tenants) {
+				final HavaloClient client = factory.getClient(
+					tenant.getKey(), tenant.getSecret());
+				assertTrue("Failed to PUT tenant object.", client.putObject(
+					getBytesUtf8(tenant.getKey().toString()),
+					"tenant").success());
+			}
+			for(final KeyPair tenant : tenants) {
+				final HavaloClient client = factory.getClient(
+					tenant.getKey(), tenant.getSecret());
+				final Either<HttpFailure,ObjectList> list =
+					client.listObjects();
+				assertTrue("Failed to list tenant objects.", list.success() &&
+					list.right().size() == 1);
+				assertTrue("Failed to DELETE tenant object.",
+					client.deleteObject("tenant").success());
+			}
+			// A tenant with the wrong secret is turned away.
+			assertTrue("Uh, authenticated with the wrong secret?",
+				!factory.getClient(tenants.get(0).getKey(),
+					UUID.randomUUID().toString()).authenticate().success());
+		} finally {
+			for(final KeyPair tenant : tenants) {
+				assertTrue("Failed to delete repository.",
+					admin.deleteRepository(tenant.getKey()).success());
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.api;
+
+import com.kolich.common.functional.either.Either;
+import com.kolich.havalo.client.HavaloClientTestCase;
+import com.kolich.havalo.client.entities.FileObject;
+import com.kolich.havalo.client.entities.ObjectList;
+import com.kolich.havalo.client.service.HavaloKey;
+import com.kolich.havalo.client.service.HavaloKeyCache;
+import com.kolich.http.common.response.HttpFailure;
+import org.apache.http.Header;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import static org.apache.commons.codec.binary.StringUtils.getBytesUtf8;
+import static org.apache.commons.codec.binary.StringUtils.newStringUtf8;
+import static org.apache.http.HttpStatus.SC_NO_CONTENT;
+import static org.junit.Assert.assertTrue;
+
+public class KeyTest extends HavaloClientTestCase {
+	
+	public KeyTest() throws Exception {
+		super();
+	}
+	
+	@Test
+	public void keyMatchesVarargsPath() throws Exception {
+		final HavaloKey key = HavaloKey.of("test-key", "silly/path+dog",
+			"\u00fcn\u00efc\u00f8d\u00e9.json");
+		final Either<HttpFailure,FileObject> put =
+			client_.putObject(getBytesUtf8("keyed"), key);
+		assertTrue("Failed to PUT keyed object.", put.success());
+		assertTrue("Object name did not match key name",
+			key.getName().equals(put.right().getName()));
+		// The same object, addressed with a varargs path.
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		final Either<HttpFailure,List<Header>> get = client_.getObject(os,
+			"test-key", "silly/path+dog", "\u00fcn\u00efc\u00f8d\u00e9.json");
+		assertTrue("Failed to GET keyed object by path.", get.success());
+		assertTrue("Keyed object content did not match",
+			"keyed".equals(newStringUtf8(os.toByteArray())));
+		final Either<HttpFailure,ObjectList> list =
+			client_.listObjects(HavaloKey.of("test-key"));
+		assertTrue("Failed to list keyed objects.", list.success());
+		assertTrue("Keyed object count did not match",
+			list.right().getObjectList().size() == 1);
+		final Either<HttpFailure,Integer> delete = client_.deleteObject(key);
+		assertTrue("Failed to DELETE keyed object.", delete.success());
+		assertTrue("Failed to DELETE keyed object -- bad response code",
+			delete.right() == SC_NO_CONTENT);
+	}
+	
+	@Test
+	public void keyFromListedName() throws Exception {
+		final HavaloKey key = HavaloKey.of("test-key", "silly/path+dog");
+		final HavaloKey named = HavaloKey.fromName(key.getName());
+		assertTrue("Named key did not equal key", key.equals(named) &&
+			key.getEncodedName().equals(named.getEncodedName()));
+		assertTrue("Named key components did not match",
+			key.getComponents().equals(named.getComponents()));
+		assertTrue("Partial name did not match", "test-key/".equals(
+			HavaloKey.fromName("test-key/").getName()));
+	}
+	
+	@Test
+	public void keyCacheReturnsSameKey() throws Exception {
+		final HavaloKeyCache cache = new HavaloKeyCache(16);
+		final HavaloKey key = cache.get("test-key", "cached");
+		assertTrue("Key cache did not return the cached key",
+			key == cache.get("test-key", "cached"));
+		assertTrue("Cached key did not equal an uncached key",
+			key.equals(HavaloKey.of("test-key", "cached")));
+		assertTrue("Key cache size did not match", cache.size() == 1L);
+	}
+	
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.api;
+
+import com.kolich.common.functional.either.Either;
+import com.kolich.havalo.client.HavaloClientTestCase;
+import com.kolich.havalo.client.entities.FileObject;
+import com.kolich.havalo.client.service.HavaloKey;
+import com.kolich.havalo.client.service.HavaloKeyedExecutor;
+import com.kolich.http.common.response.HttpFailure;
+import org.apache.http.Header;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.apache.commons.codec.binary.StringUtils.getBytesUtf8;
+import static org.apache.commons.codec.binary.StringUtils.newStringUtf8;
+import static org.junit.Assert.assertTrue;
+
+public class KeyedExecutorTest extends HavaloClientTestCase {
+	
+	private static final int KEYS = 4;
+	private static final int WRITES_PER_KEY = 20;
+	
+	public KeyedExecutorTest() throws Exception {
+		super();
+	}
+	
+	@Test
+	public void writesToSameKeyAreOrdered() throws Exception {
+		final HavaloKeyedExecutor executor = new HavaloKeyedExecutor(client_);
+		try {
+			final List<CompletableFuture<Either<HttpFailure,FileObject>>> puts =
+				new ArrayList<>();
+			// Interleave writes across several keys, the last write to
+			// each key must always be the one that wins.
+			for(int i = 0; i < WRITES_PER_KEY; i++) {
+				for(int k = 0; k < KEYS; k++) {
+					// Writes by key and by path share the same stripe.
+					puts.add((i % 2 == 0) ?
+						executor.putObject(getBytesUtf8(Integer.toString(i)),
+							"test", "ordered", Integer.toString(k)) :
+						executor.putObject(getBytesUtf8(Integer.toString(i)),
+							HavaloKey.of("test", "ordered", Integer.toString(k))));
+				}
+			}
+			for(final CompletableFuture<Either<HttpFailure,FileObject>> put : puts) {
+				assertTrue("Failed to PUT ordered object.", put.get().success());
+			}
+		} finally {
+			executor.close();
+		}
+		for(int k = 0; k < KEYS; k++) {
+			final ByteArrayOutputStream os = new ByteArrayOutputStream();
+			final Either<HttpFailure,List<Header>> get =
+				client_.getObject(os, "test", "ordered", Integer.toString(k));
+			assertTrue("Failed to GET ordered object.", get.success());
+			assertTrue("Older write won over a newer one.",
+				newStringUtf8(os.toByteArray()).equals(
+					Integer.toString(WRITES_PER_KEY - 1)));
+			// Tear down
+			final Either<HttpFailure,Integer> delete =
+				client_.deleteObject("test", "ordered", Integer.toString(k));
+			assertTrue("Failed to DELETE ordered object.", delete.success());
+		}
+	}
+	
+}
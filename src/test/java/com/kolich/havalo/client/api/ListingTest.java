@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.api;
+
+import com.kolich.common.functional.either.Either;
+import com.kolich.havalo.client.HavaloClientException;
+import com.kolich.havalo.client.HavaloClientTestCase;
+import com.kolich.havalo.client.embedded.HavaloEmbeddedServer;
+import com.kolich.havalo.client.entities.FileObject;
+import com.kolich.havalo.client.entities.ObjectList;
+import com.kolich.havalo.client.service.HavaloClient;
+import com.kolich.havalo.client.service.HavaloListingIterator;
+import com.kolich.havalo.client.service.HavaloParallelLister;
+import com.kolich.http.common.response.HttpFailure;
+import org.apache.http.Header;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.apache.commons.codec.binary.StringUtils.getBytesUtf8;
+import static org.apache.http.HttpHeaders.CONTENT_ENCODING;
+import static org.junit.Assert.assertTrue;
+
+public class ListingTest extends HavaloClientTestCase {
+	
+	private static final int OBJECTS = 25;
+	private static final int LARGE_OBJECTS = 500;
+	
+	public ListingTest() throws Exception {
+		super();
+	}
+	
+	@Test
+	public void paginatedListing() throws Exception {
+		final String prefix = "listing-" + System.currentTimeMillis();
+		putSampleObjects(client_, prefix);
+		try {
+			final List<String> expected = getNames(prefix);
+			assertTrue("Object count did not match",
+				expected.size() == OBJECTS);
+			// Page through by hand, 10 at a time
+			final List<String> paged = new ArrayList<>();
+			String marker = null;
+			int pages = 0;
+			ObjectList page;
+			do {
+				final Either<HttpFailure,ObjectList> list =
+					client_.listObjects(10, marker, prefix);
+				assertTrue("Failed to list page of objects.",
+					list.success());
+				page = list.right();
+				for(final FileObject o : page) {
+					paged.add(o.getName());
+				}
+				marker = page.getLastListedName();
+				pages++;
+			} while(page.size() == 10);
+			assertTrue("Page count did not match: " + pages, pages == 3);
+			assertTrue("Paged listing did not match", expected.equals(paged));
+			// And again with the prefetching iterator, with an exact
+			// multiple of the page size so the last page is empty
+			final List<String> iterated = new ArrayList<>();
+			try(final HavaloListingIterator it =
+				new HavaloListingIterator(client_, 5, prefix)) {
+				while(it.hasNext()) {
+					iterated.add(it.next().getName());
+				}
+				assertTrue("Iterator page count did not match",
+					it.getPages() == 6);
+			}
+			assertTrue("Iterated listing did not match",
+				expected.equals(iterated));
+		} finally {
+			deleteSampleObjects(client_, prefix);
+		}
+	}
+	
+	@Test
+	public void ascendingListing() throws Exception {
+		try(final HavaloEmbeddedServer server = new HavaloEmbeddedServer
+			.Builder().setAscendingListings(true).build().start()) {
+			final HavaloClient client = new HavaloClient(
+				server.getAdminCredentials().getKey(),
+				server.getAdminCredentials().getSecret(),
+				server.getApiUrl());
+			putSampleObjects(client, "ascending");
+			// Pages come in name order, each object exactly once.
+			final Set<String> iterated = new HashSet<>();
+			try(final HavaloListingIterator it =
+				new HavaloListingIterator(client, 10, "ascending")) {
+				while(it.hasNext()) {
+					final String name = it.next().getName();
+					assertTrue("Listed object twice: " + name,
+						iterated.add(name));
+				}
+				assertTrue("Iterator page count did not match: " +
+					it.getPages(), it.getPages() == 3);
+			}
+			assertTrue("Iterated listing did not match: " + iterated.size(),
+				iterated.size() == OBJECTS);
+			// Discovery relies on reverse name order, and must say so
+			// rather than loop.
+			HavaloClientException error = null;
+			try {
+				new HavaloParallelLister.Builder().setClient(client).build()
+					.list().close();
+			} catch (HavaloClientException e) {
+				error = e;
+			}
+			assertTrue("Discovery did not fail on ascending pages.",
+				error != null);
+		}
+	}
+	
+	@Test
+	public void gzippedListing() throws Exception {
+		// Record the Content-Encoding of each response as it comes off the
+		// wire.  Content compression in the HttpClient itself is disabled
+		// so that the client has to ask for, and decode, gzip on its own.
+		final AtomicReference<String> encoding = new AtomicReference<>();
+		final HttpResponseInterceptor recorder = (response, context) -> {
+			final Header h = response.getFirstHeader(CONTENT_ENCODING);
+			encoding.set((h != null) ? h.getValue() : null);
+		};
+		try(final HavaloEmbeddedServer server = new HavaloEmbeddedServer
+			.Builder().build().start()) {
+			final HavaloClient client = new HavaloClient(HttpClients.custom()
+				.disableContentCompression().addInterceptorFirst(recorder)
+				.build(),
+				server.getAdminCredentials().getKey(),
+				server.getAdminCredentials().getSecret(),
+				server.getApiUrl());
+			for(int i = 0; i < LARGE_OBJECTS; i++) {
+				assertTrue("Failed to put sample object #" + i,
+					client.putObject(getBytesUtf8(Integer.toString(i)),
+						"gzipped", String.format("%04d", i)).success());
+			}
+			final Either<HttpFailure,ObjectList> list =
+				client.listObjects("gzipped");
+			assertTrue("Failed to list large prefix.", list.success());
+			assertTrue("Listing was not gzip encoded: " + encoding.get(),
+				"gzip".equals(encoding.get()));
+			final Set<String> names = new HashSet<>();
+			for(final FileObject o : list.right()) {
+				names.add(o.getName());
+			}
+			assertTrue("Listed object count did not match: " + names.size(),
+				names.size() == LARGE_OBJECTS);
+			for(int i = 0; i < LARGE_OBJECTS; i++) {
+				final String name = String.format("gzipped/%04d", i);
+				assertTrue("Listing was missing " + name,
+					names.contains(name));
+			}
+		}
+	}
+	
+	@Test
+	public void emptyListing() throws Exception {
+		try(final HavaloListingIterator it = new HavaloListingIterator(
+			client_, 10, "listing-empty-" + System.currentTimeMillis())) {
+			assertTrue("Empty listing had objects", !it.hasNext());
+			assertTrue("Empty listing page count did not match",
+				it.getPages() == 1);
+		}
+	}
+	
+	private final List<String> getNames(final String... path) {
+		final Either<HttpFailure,ObjectList> list = client_.listObjects(path);
+		assertTrue("Failed to list objects in repository.", list.success());
+		final List<String> names = new ArrayList<>();
+		for(final FileObject o : list.right()) {
+			names.add(o.getName());
+		}
+		return names;
+	}
+	
+	private static final void putSampleObjects(final HavaloClient client,
+		final String prefix) {
+		for(int i = 0; i < OBJECTS; i++) {
+			assertTrue("Failed to put sample object #" + i,
+				client.putObject(getBytesUtf8(Integer.toString(i)), prefix,
+					String.format("%03d", i)).success());
+		}
+	}
+	
+	private static final void deleteSampleObjects(final HavaloClient client,
+		final String prefix) {
+		for(int i = 0; i < OBJECTS; i++) {
+			assertTrue("Failed to delete sample object #" + i,
+				client.deleteObject(prefix, String.format("%03d", i))
+					.success());
+		}
+	}
+	
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.api;
+
+import com.kolich.common.functional.either.Either;
+import com.kolich.havalo.client.HavaloClientTestCase;
+import com.kolich.havalo.client.service.HavaloObjectInputStream;
+import com.kolich.http.common.response.HttpFailure;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.apache.commons.io.IOUtils.copyLarge;
+import static org.apache.http.HttpHeaders.CONTENT_LENGTH;
+import static org.apache.http.HttpStatus.SC_NOT_FOUND;
+import static org.junit.Assert.assertTrue;
+
+public class OpenObjectTest extends HavaloClientTestCase {
+	
+	private static final int OBJECT_SIZE = 1024 * 1024 + 17;
+	
+	public OpenObjectTest() throws Exception {
+		super();
+	}
+	
+	@Test(timeout=60000L)
+	public void openObject() throws Exception {
+		final String name = "open-" + System.currentTimeMillis();
+		final byte[] data = new byte[OBJECT_SIZE];
+		new Random(0L).nextBytes(data);
+		assertTrue("Failed to put object.",
+			client_.putObject(data, name).success());
+		try {
+			// As a stream, with a read ahead much smaller than the object
+			Either<HttpFailure,HavaloObjectInputStream> open =
+				client_.openObject(32 * 1024, name);
+			assertTrue("Failed to open object.", open.success());
+			final ByteArrayOutputStream os = new ByteArrayOutputStream();
+			try(final HavaloObjectInputStream is = open.right()) {
+				assertTrue("Content-Length did not match",
+					Integer.toString(OBJECT_SIZE).equals(is.getFirstHeader(
+						CONTENT_LENGTH).getValue()));
+				copyLarge(is, os);
+				assertTrue("Read past the end of the object",
+					is.read() == -1);
+			}
+			assertTrue("Streamed object did not match",
+				Arrays.equals(data, os.toByteArray()));
+			// As a channel
+			open = client_.openObject(name);
+			assertTrue("Failed to open object.", open.success());
+			final ByteBuffer buffer = ByteBuffer.allocate(OBJECT_SIZE + 1);
+			try(final HavaloObjectInputStream channel = open.right()) {
+				while(channel.read(buffer) >= 0) {
+					// Keep reading.
+				}
+			}
+			assertTrue("Channel object did not match",
+				buffer.position() == OBJECT_SIZE && Arrays.equals(data,
+					Arrays.copyOf(buffer.array(), OBJECT_SIZE)));
+			// Closed early, many more times than there are connections
+			// in the pool, any leak would eventually block
+			for(int i = 0; i < 50; i++) {
+				open = client_.openObject(16 * 1024, name);
+				assertTrue("Failed to open object.", open.success());
+				try(final HavaloObjectInputStream is = open.right()) {
+					assertTrue("First byte did not match",
+						is.read() == (data[0] & 0xff));
+				}
+			}
+			assertTrue("Failed to get object after early closes.",
+				client_.getObject(new ByteArrayOutputStream(), name)
+					.success());
+		} finally {
+			client_.deleteObject(name);
+		}
+	}
+	
+	@Test
+	public void openMissingObject() throws Exception {
+		final Either<HttpFailure,HavaloObjectInputStream> open =
+			client_.openObject("open-missing-" + System.currentTimeMillis());
+		assertTrue("Opened a missing object?", !open.success());
+		assertTrue("Expected a 404 Not Found, but got: " +
+			open.left().getStatusCode(),
+			open.left().getStatusCode() == SC_NOT_FOUND);
+	}
+	
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.api;
+
+import com.kolich.common.functional.either.Either;
+import com.kolich.havalo.client.HavaloClientTestCase;
+import com.kolich.havalo.client.entities.FileObject;
+import com.kolich.havalo.client.entities.ObjectList;
+import com.kolich.havalo.client.service.HavaloKey;
+import com.kolich.havalo.client.service.HavaloMergingIterator;
+import com.kolich.havalo.client.service.HavaloParallelLister;
+import com.kolich.http.common.response.HttpFailure;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.apache.commons.codec.binary.StringUtils.getBytesUtf8;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelListingTest extends HavaloClientTestCase {
+	
+	private static final String[] PARTITIONS = {"a", "b", "b-c", "d"};
+	private static final int OBJECTS = 7;
+	
+	public ParallelListingTest() throws Exception {
+		super();
+	}
+	
+	@Test
+	public void parallelListing() throws Exception {
+		final String base = "plist-" + System.currentTimeMillis();
+		final List<String[]> paths = putSampleObjects(base);
+		try {
+			final HavaloParallelLister.Builder builder =
+				new HavaloParallelLister.Builder().setClient(client_)
+					.setConcurrency(4).setPageSize(3);
+			// Partitions discovered from the first path component
+			final List<String> expected = getNames();
+			assertTrue("Discovered listing did not match", expected.equals(
+				getNames(builder.build().list())));
+			// Again, running out of partitions along the way
+			assertTrue("Bounded discovered listing did not match",
+				expected.equals(getNames(builder.setMaxPartitions(2).build()
+					.list())));
+			// Given, overlapping, partitions
+			final List<String> under = getNames(base);
+			assertTrue("Object count did not match",
+				under.size() == paths.size());
+			try(final HavaloMergingIterator it = builder.build().list(
+				HavaloKey.of(base + "-b"), HavaloKey.of(base),
+				HavaloKey.of(base + "-d"))) {
+				assertTrue("Partitioned listing did not match", under.equals(
+					it.stream().map(FileObject::getName)
+						.collect(Collectors.toList())));
+			}
+		} finally {
+			for(final String[] path : paths) {
+				assertTrue("Failed to delete sample object.",
+					client_.deleteObject(path).success());
+			}
+		}
+	}
+	
+	private final List<String> getNames(final String... path) {
+		final Either<HttpFailure,ObjectList> list = client_.listObjects(path);
+		assertTrue("Failed to list objects in repository.", list.success());
+		final List<String> names = new ArrayList<>();
+		for(final FileObject o : list.right()) {
+			names.add(o.getName());
+		}
+		return names;
+	}
+	
+	private static final List<String> getNames(
+		final HavaloMergingIterator it) {
+		final List<String> names = new ArrayList<>();
+		try {
+			while(it.hasNext()) {
+				names.add(it.next().getName());
+			}
+		} finally {
+			it.close();
+		}
+		return names;
+	}
+	
+	private final List<String[]> putSampleObjects(final String base) {
+		final List<String[]> paths = new ArrayList<>();
+		// A leaf, with no path component, at the top.
+		paths.add(new String[]{base + "-leaf"});
+		for(final String partition : PARTITIONS) {
+			for(int i = 0; i < OBJECTS; i++) {
+				paths.add(new String[]{base + "-" + partition,
+					"object-" + i});
+			}
+		}
+		for(final String[] path : paths) {
+			assertTrue("Failed to put sample object.", client_.putObject(
+				getBytesUtf8(path[path.length - 1]), path).success());
+		}
+		return paths;
+	}
+	
+}
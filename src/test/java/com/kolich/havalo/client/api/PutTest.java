@@ -29,13 +29,20 @@ package com.kolich.havalo.client.api;
 import com.kolich.common.functional.either.Either;
 import com.kolich.havalo.client.HavaloClientTestCase;
 import com.kolich.havalo.client.entities.FileObject;
+import com.kolich.havalo.client.service.HavaloClient;
+import com.kolich.havalo.client.service.HavaloClientConfig;
+import com.kolich.havalo.client.service.HavaloClientCredentials;
 import com.kolich.http.common.response.HttpFailure;
 import org.apache.http.Header;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.impl.client.HttpClients;
 import org.apache.http.message.BasicHeader;
 import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.apache.commons.codec.binary.StringUtils.getBytesUtf8;
 import static org.apache.commons.codec.binary.StringUtils.newStringUtf8;
@@ -230,6 +237,46 @@ public class PutTest extends HavaloClientTestCase {
 			"response code", delete.right() == SC_NO_CONTENT);
 	}
 
+	@Test
+	public void putExpectContinue() throws Exception {
+		// Record the Expect header, if any, of each request as it is sent.
+		final AtomicReference<String> expect = new AtomicReference<>();
+		final HttpRequestInterceptor recorder = (request, context) -> {
+			final Header h = request.getFirstHeader(EXPECT);
+			expect.set((h != null) ? h.getValue() : null);
+		};
+		final HavaloClient client = new HavaloClient(
+			HttpClients.custom().addInterceptorLast(recorder).build(),
+			new HavaloClientCredentials(UUID.fromString(apiKey_), apiSecret_),
+			apiUrl_, new HavaloClientConfig.Builder()
+				.setExpectContinueThreshold(1024L)
+				.setExpectContinueOnConditional(true).build());
+		// Below the threshold, the body goes out with the request.
+		final Either<HttpFailure,FileObject> small =
+			client.putObject(new byte[1023], "test", "expect");
+		assertTrue("Failed to PUT small object.", small.success());
+		assertNull("Small PUT asked to continue.", expect.get());
+		// At the threshold, the body waits for the API.
+		final Either<HttpFailure,FileObject> large =
+			client.putObject(new byte[1024], "test", "expect");
+		assertTrue("Failed to PUT large object.", large.success());
+		assertTrue("Large PUT did not ask to continue.",
+			"100-continue".equalsIgnoreCase(expect.get()));
+		// Any conditional PUT waits for the API, regardless of size.
+		final Either<HttpFailure,FileObject> conditional =
+			client.putObject(new byte[1], new Header[]{new BasicHeader(
+				IF_MATCH, large.right().getFirstHeader(ETAG))},
+				"test", "expect");
+		assertTrue("Failed to PUT conditional object.",
+			conditional.success());
+		assertTrue("Conditional PUT did not ask to continue.",
+			"100-continue".equalsIgnoreCase(expect.get()));
+		// Tear down
+		final Either<HttpFailure,Integer> delete =
+			client_.deleteObject("test", "expect");
+		assertTrue("Failed to DELETE sample object.", delete.success());
+	}
+	
 	private static final String[] getRandomPrefix(final int length) {
 		final String[] prefixes = new String[length];
 		for(int i = 0, l = prefixes.length; i < l; i++) {
@@ -241,7 +288,7 @@ public class PutTest extends HavaloClientTestCase {
 	private static final String getHeader(final List<Header> headers,
 		final String headerName) {
 		for(final Header h : headers) {
-			if(h.getName().equals(headerName)) {
+			if(h.getName().equalsIgnoreCase(headerName)) {
 				return h.getValue();
 			}
 		}
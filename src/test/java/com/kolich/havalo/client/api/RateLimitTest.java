@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.api;
+
+import com.kolich.havalo.client.HavaloClientTestCase;
+import com.kolich.havalo.client.service.HavaloClient;
+import com.kolich.havalo.client.service.HavaloClientConfig;
+import com.kolich.havalo.client.service.HavaloClientCredentials;
+import com.kolich.havalo.client.service.HavaloRateLimits;
+import com.kolich.havalo.client.service.HavaloTokenBucket;
+import com.kolich.common.functional.either.Either;
+import com.kolich.havalo.client.entities.FileObject;
+import com.kolich.http.common.response.HttpFailure;
+import org.apache.http.Header;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeoutException;
+
+import static com.kolich.havalo.client.service.HavaloOperation.GET_OBJECT;
+import static com.kolich.havalo.client.service.HavaloOperation.GET_OBJECT_METADATA;
+import static com.kolich.havalo.client.service.HavaloOperation.PUT_OBJECT;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.apache.commons.io.output.NullOutputStream.NULL_OUTPUT_STREAM;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimitTest extends HavaloClientTestCase {
+	
+	private static final int OBJECT_SIZE = 256 * 1024;
+	
+	public RateLimitTest() throws Exception {
+		super();
+	}
+	
+	@Test
+	public void tokenBucket() throws Exception {
+		final HavaloTokenBucket bucket = new HavaloTokenBucket(1000.0d,
+			100.0d);
+		long start = System.nanoTime();
+		// The burst is free, the rest arrives at 1000 per second.
+		bucket.acquire(100L);
+		bucket.acquire(300L);
+		long elapsed = NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue("Bucket was too fast: " + elapsed, elapsed >= 250L);
+		assertTrue("Bucket was too slow: " + elapsed, elapsed < 1000L);
+		// Reconfigured, on the fly.
+		bucket.setRate(100000.0d, 100.0d);
+		start = System.nanoTime();
+		bucket.acquire(10000L);
+		elapsed = NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue("Reconfigured bucket was too slow: " + elapsed,
+			elapsed < 250L);
+		// Only waits that fit within the timeout are taken.
+		final HavaloTokenBucket slow = new HavaloTokenBucket(10.0d, 1.0d);
+		assertTrue("Burst was not free.", slow.tryAcquire(1L, 0L));
+		assertTrue("Wait should not have fit the timeout.",
+			!slow.tryAcquire(1L, MILLISECONDS.toNanos(10L)));
+		assertTrue("Wait should have fit the timeout.",
+			slow.tryAcquire(1L, MILLISECONDS.toNanos(1000L)));
+	}
+	
+	@Test
+	public void limitsBoundedByDeadline() throws Exception {
+		final HavaloRateLimits limits = new HavaloRateLimits()
+			.setRequestRate(GET_OBJECT_METADATA, 0.5d, 1)
+			.setByteRate(PUT_OBJECT, 64 * 1024, 64 * 1024);
+		final HavaloClient client = new HavaloClient(
+			new HavaloClientCredentials(UUID.fromString(apiKey_),
+				apiSecret_),
+			apiUrl_, new HavaloClientConfig.Builder()
+				.setRateLimits(limits)
+				.setTimeout(300L, MILLISECONDS).build());
+		final String name = "test-rate-limit-deadline";
+		// Takes the only request permit for the next two seconds.
+		client.getObjectMetaData(name);
+		long start = System.nanoTime();
+		final Either<HttpFailure,List<Header>> meta =
+			client.getObjectMetaData(name);
+		long elapsed = NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue("Expected a timeout: " + meta,
+			!meta.success() &&
+			meta.left().getCause() instanceof TimeoutException);
+		assertTrue("Waited on the request limit: " + elapsed,
+			elapsed < 250L);
+		// A 1MB upload would take 16 seconds at this rate.
+		start = System.nanoTime();
+		final Either<HttpFailure,FileObject> put =
+			client.putObject(new byte[1024 * 1024], name);
+		elapsed = NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue("Expected a timeout: " + put,
+			!put.success() &&
+			put.left().getCause() instanceof TimeoutException);
+		assertTrue("Waited on the byte limit past the deadline: " +
+			elapsed, elapsed < 1000L);
+	}
+	
+	@Test
+	public void limitedClient() throws Exception {
+		final HavaloRateLimits limits = new HavaloRateLimits()
+			// Only object downloads are shaped ...
+			.setByteRate(GET_OBJECT, OBJECT_SIZE, 64 * 1024)
+			// ... and metadata lookups are limited to 20 per second.
+			.setRequestRate(GET_OBJECT_METADATA, 20.0d, 1);
+		final HavaloClient client = new HavaloClient(
+			new HavaloClientCredentials(UUID.fromString(apiKey_),
+				apiSecret_),
+			apiUrl_, new HavaloClientConfig.Builder()
+				.setRateLimits(limits).build());
+		final String name = "test-rate-limit";
+		final long start = System.nanoTime();
+		assertTrue("Failed to PUT object.",
+			client.putObject(new byte[2 * OBJECT_SIZE], name).success());
+		final long put = NANOSECONDS.toMillis(System.nanoTime() - start);
+		try {
+			assertTrue("Upload should not have been limited: " + put,
+				put < 750L);
+			long t = System.nanoTime();
+			assertTrue("Failed to GET object.",
+				client.getObject(NULL_OUTPUT_STREAM, name).success());
+			long elapsed = NANOSECONDS.toMillis(System.nanoTime() - t);
+			assertTrue("Download was not limited: " + elapsed,
+				elapsed >= 1500L);
+			// Lift the limit, with the client in use.
+			limits.setByteRate(GET_OBJECT, 0L, 0L);
+			t = System.nanoTime();
+			assertTrue("Failed to GET object.",
+				client.getObject(NULL_OUTPUT_STREAM, name).success());
+			elapsed = NANOSECONDS.toMillis(System.nanoTime() - t);
+			assertTrue("Download was still limited: " + elapsed,
+				elapsed < 750L);
+			t = System.nanoTime();
+			for(int i = 0; i < 11; i++) {
+				assertTrue("Failed to HEAD object.",
+					client.getObjectMetaData(name).success());
+			}
+			elapsed = NANOSECONDS.toMillis(System.nanoTime() - t);
+			assertTrue("Requests were not limited: " + elapsed,
+				elapsed >= 450L);
+		} finally {
+			assertTrue("Failed to DELETE object.",
+				client.deleteObject(name).success());
+		}
+	}
+	
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.api;
+
+import com.kolich.havalo.client.HavaloClientTestCase;
+import com.kolich.havalo.client.service.HavaloClient;
+import com.kolich.havalo.client.service.HavaloClientConfig;
+import com.kolich.havalo.client.service.HavaloClientCredentials;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertTrue;
+
+public class SpoolTest extends HavaloClientTestCase {
+	
+	private static final int SPOOL_THRESHOLD = 64 * 1024;
+	
+	public SpoolTest() throws Exception {
+		super();
+	}
+	
+	@Test
+	public void spooledUploads() throws Exception {
+		final File directory = Files.createTempDirectory(
+			"havalo-spool-test").toFile();
+		try {
+			final HavaloClient client = new HavaloClient(
+				new HavaloClientCredentials(UUID.fromString(apiKey_),
+					apiSecret_),
+				apiUrl_, new HavaloClientConfig.Builder()
+					.setSpoolThreshold(SPOOL_THRESHOLD)
+					.setSpoolDirectory(directory).build());
+			// Small enough to be spooled in memory
+			putAndVerify(client, 1024, "test-spool", "small");
+			// Large enough to spill over to a temporary file
+			putAndVerify(client, 1024 * 1024 + 17, "test-spool", "large");
+			// Empty streams are still uploaded, as empty objects
+			putAndVerify(client, 0, "test-spool", "empty");
+			assertTrue("Spool directory was not cleaned up.",
+				directory.list().length == 0);
+		} finally {
+			directory.delete();
+		}
+	}
+	
+	@Test
+	public void chunkedUploads() throws Exception {
+		final HavaloClient client = new HavaloClient(
+			new HavaloClientCredentials(UUID.fromString(apiKey_),
+				apiSecret_),
+			apiUrl_, new HavaloClientConfig.Builder()
+				.setChunkedUploads(true).build());
+		putAndVerify(client, 256 * 1024 + 3, "test-spool", "chunked");
+		// The caller's stream is left open, same as when spooled.
+		final AtomicBoolean closed = new AtomicBoolean(false);
+		final InputStream is = new ByteArrayInputStream(new byte[1024]) {
+			@Override
+			public void close() throws IOException {
+				closed.set(true);
+				super.close();
+			}
+		};
+		assertTrue("Failed to PUT chunked object.",
+			client.putObject(is, null, "test-spool", "open").success());
+		try {
+			assertTrue("Chunked upload closed the caller's stream.",
+				!closed.get());
+		} finally {
+			is.close();
+			assertTrue("Failed to DELETE object.",
+				client.deleteObject("test-spool", "open").success());
+		}
+	}
+	
+	private static final void putAndVerify(final HavaloClient client,
+		final int size, final String... path) throws Exception {
+		final byte[] data = new byte[size];
+		new Random(size).nextBytes(data);
+		assertTrue("Failed to PUT object of unknown length.",
+			client.putObject(new ByteArrayInputStream(data), null,
+				path).success());
+		try {
+			final ByteArrayOutputStream os = new ByteArrayOutputStream();
+			assertTrue("Failed to GET object.",
+				client.getObject(os, path).success());
+			assertTrue("Uploaded object did not match.",
+				Arrays.equals(data, os.toByteArray()));
+		} finally {
+			assertTrue("Failed to DELETE object.",
+				client.deleteObject(path).success());
+		}
+	}
+	
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.api;
+
+import com.kolich.common.functional.either.Either;
+import com.kolich.havalo.client.embedded.HavaloEmbeddedServer;
+import com.kolich.havalo.client.entities.KeyPair;
+import com.kolich.havalo.client.service.HavaloClient;
+import com.kolich.havalo.client.service.HavaloClientConfig;
+import com.kolich.havalo.client.service.HavaloClientCredentials;
+import com.kolich.havalo.client.service.HavaloObjectInputStream;
+import com.kolich.http.common.response.HttpFailure;
+import org.apache.http.Header;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.apache.commons.io.IOUtils.copyLarge;
+import static org.apache.commons.io.output.NullOutputStream.NULL_OUTPUT_STREAM;
+import static org.junit.Assert.assertTrue;
+
+public class TimeoutTest {
+	
+	@Test(timeout=60000L)
+	public void timeouts() throws Exception {
+		try(final HavaloEmbeddedServer server = new HavaloEmbeddedServer
+			.Builder().build().start()) {
+			final HavaloClient client = new HavaloClient(
+				new HavaloClientCredentials(
+					server.getAdminCredentials().getKey(),
+					server.getAdminCredentials().getSecret()),
+				server.getApiUrl(), new HavaloClientConfig.Builder()
+					.setTimeout(5000L, MILLISECONDS).build());
+			assertTrue("Failed to PUT object.",
+				client.putObject(new byte[8 * 1024 * 1024], "slow").success());
+			server.setLatency(1000L, 0L);
+			// Per call, shorter than the client-wide default.
+			long start = System.nanoTime();
+			final Either<HttpFailure,List<Header>> meta =
+				client.withTimeout(200L, MILLISECONDS)
+					.getObjectMetaData("slow");
+			long elapsed = NANOSECONDS.toMillis(System.nanoTime() - start);
+			assertTrue("Uh, call succeeded past its deadline?",
+				!meta.success());
+			assertTrue("Expected a timeout: " + meta.left().getCause(),
+				meta.left().getCause() instanceof TimeoutException);
+			assertTrue("Call was not aborted at its deadline: " + elapsed,
+				elapsed < 900L);
+			// The client-wide default is long enough.
+			final Either<HttpFailure,KeyPair> auth = client.authenticate();
+			assertTrue("Failed to authenticate within the deadline.",
+				auth.success());
+			server.setLatency(0L, 0L);
+			// The deadline covers reading the body too.
+			final Either<HttpFailure,HavaloObjectInputStream> open =
+				client.withTimeout(300L, MILLISECONDS).openObject(64 * 1024,
+					"slow");
+			assertTrue("Failed to open object.", open.success());
+			IOException error = null;
+			try(final HavaloObjectInputStream is = open.right()) {
+				Thread.sleep(600L);
+				copyLarge(is, NULL_OUTPUT_STREAM);
+			} catch (IOException e) {
+				error = e;
+			}
+			assertTrue("Expected the read to time out: " + error,
+				error != null &&
+				error.getCause() instanceof TimeoutException);
+			assertTrue("Failed to DELETE object.",
+				client.deleteObject("slow").success());
+		}
+	}
+	
+}
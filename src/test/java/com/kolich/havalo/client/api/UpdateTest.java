@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.kolich.havalo.client.api;
+
+import com.kolich.common.functional.either.Either;
+import com.kolich.havalo.client.HavaloClientTestCase;
+import com.kolich.havalo.client.entities.FileObject;
+import com.kolich.havalo.client.metrics.HavaloClientMetrics;
+import com.kolich.havalo.client.service.HavaloClient;
+import com.kolich.havalo.client.service.HavaloClientConfig;
+import com.kolich.havalo.client.service.HavaloClientCredentials;
+import com.kolich.http.common.response.HttpFailure;
+import org.apache.http.Header;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.commons.codec.binary.StringUtils.getBytesUtf8;
+import static org.apache.commons.codec.binary.StringUtils.newStringUtf8;
+import static org.apache.http.HttpStatus.SC_NOT_FOUND;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UpdateTest extends HavaloClientTestCase {
+	
+	private static final int WRITERS = 4;
+	private static final int INCREMENTS_PER_WRITER = 5;
+	
+	public UpdateTest() throws Exception {
+		super();
+	}
+	
+	@Test
+	public void concurrentIncrement() throws Exception {
+		final Either<HttpFailure,FileObject> put =
+			client_.putObject(getBytesUtf8("0"), "test", "counter");
+		assertTrue("Failed to PUT sample counter.", put.success());
+		final HavaloClientMetrics metrics = new HavaloClientMetrics();
+		final HavaloClient client = new HavaloClient(
+			new HavaloClientCredentials(UUID.fromString(apiKey_),
+				apiSecret_),
+			apiUrl_, new HavaloClientConfig.Builder()
+				.setMetricsListener(metrics).build());
+		// Several writers racing to increment the same counter object,
+		// none of the increments should be lost.  Half of the writers go
+		// through a view, whose conflicts must count against the client.
+		final ExecutorService pool = Executors.newFixedThreadPool(WRITERS);
+		try {
+			final Future<?>[] writers = new Future<?>[WRITERS];
+			for(int i = 0; i < WRITERS; i++) {
+				final HavaloClient writer = (i % 2 == 0) ? client :
+					client.withTimeout(60L, SECONDS);
+				writers[i] = pool.submit(() -> {
+					for(int j = 0; j < INCREMENTS_PER_WRITER; j++) {
+						final Either<HttpFailure,FileObject> update =
+							writer.update(current -> getBytesUtf8(Long.toString(
+								Long.parseLong(newStringUtf8(current)) + 1L)),
+								null, 100, "test", "counter");
+						assertTrue("Failed to update counter.",
+							update.success());
+					}
+				});
+			}
+			for(final Future<?> writer : writers) {
+				writer.get(60L, SECONDS);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		final Either<HttpFailure,List<Header>> get =
+			client_.getObject(os, "test", "counter");
+		assertTrue("Failed to GET counter after update.", get.success());
+		assertTrue("Lost an update (got " + newStringUtf8(os.toByteArray()) +
+			")", Long.parseLong(newStringUtf8(os.toByteArray())) ==
+				WRITERS * INCREMENTS_PER_WRITER);
+		assertTrue("Conflicts were not reported to the metrics listener.",
+			metrics.getUpdateConflictCount() ==
+				client.getUpdateConflictCount());
+		// Tear down
+		final Either<HttpFailure,Integer> delete =
+			client_.deleteObject("test", "counter");
+		assertTrue("Failed to DELETE counter.", delete.success());
+	}
+	
+	@Test
+	public void updateNotFound() throws Exception {
+		final Either<HttpFailure,FileObject> update =
+			client_.update(current -> current, "totallybogusobject.json");
+		assertFalse("Update of non-existent object was successful?",
+			update.success());
+		assertTrue("Update of non-existent object wasn't 404",
+			update.left().getStatusCode() == SC_NOT_FOUND);
+	}
+	
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.api;
+
+import com.kolich.common.functional.either.Either;
+import com.kolich.havalo.client.HavaloClientTestCase;
+import com.kolich.havalo.client.service.HavaloKey;
+import com.kolich.havalo.client.service.HavaloWriteBehindBuffer;
+import com.kolich.http.common.response.HttpFailure;
+import org.apache.http.Header;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import static org.apache.commons.codec.binary.StringUtils.getBytesUtf8;
+import static org.apache.commons.codec.binary.StringUtils.newStringUtf8;
+import static org.apache.http.HttpHeaders.CONTENT_LENGTH;
+import static org.apache.http.HttpHeaders.ETAG;
+import static org.junit.Assert.assertTrue;
+
+public class WriteBehindTest extends HavaloClientTestCase {
+	
+	private static final int OVERWRITES = 100;
+	
+	public WriteBehindTest() throws Exception {
+		super();
+	}
+	
+	@Test
+	public void coalesce() throws Exception {
+		final HavaloWriteBehindBuffer buffer =
+			new HavaloWriteBehindBuffer(client_, 2, 60000L);
+		final HavaloKey key = HavaloKey.of("test", "status");
+		final Either<HttpFailure,List<Header>> pending;
+		try {
+			for(int i = 0; i < OVERWRITES; i++) {
+				// Writes by key and by path land on the same pending write.
+				if(i % 2 == 0) {
+					buffer.putObject(getBytesUtf8(Integer.toString(i)),
+						"test", "status");
+				} else {
+					buffer.putObject(getBytesUtf8(Integer.toString(i)), key);
+				}
+				// Reads through the buffer see the pending write.
+				assertTrue("Read through buffer did not see pending write.",
+					getString(buffer, "test", "status").equals(
+						Integer.toString(i)));
+			}
+			// Pending writes carry the headers the API will give them.
+			pending = buffer.getObjectMetaData(key);
+			assertTrue("Failed to HEAD object through buffer.",
+				pending.success());
+			assertTrue("Pending write had the wrong Content-Length.",
+				Integer.toString(Integer.toString(OVERWRITES - 1).length())
+					.equals(getHeader(pending.right(), CONTENT_LENGTH)));
+			buffer.flush();
+			assertTrue("Pending writes were not coalesced.",
+				buffer.getCoalescedCount() == OVERWRITES - 1);
+			assertTrue("Flush left writes behind.", buffer.size() == 0);
+		} finally {
+			buffer.close();
+		}
+		// Only the newest write should have made it to the API.
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		final Either<HttpFailure,List<Header>> get =
+			client_.getObject(os, "test", "status");
+		assertTrue("Failed to GET object after flush.", get.success());
+		assertTrue("Newest write did not survive.",
+			newStringUtf8(os.toByteArray()).equals(
+				Integer.toString(OVERWRITES - 1)));
+		assertTrue("Pending write had the wrong ETag.",
+			getHeader(get.right(), ETAG).equals(
+				getHeader(pending.right(), ETAG)));
+		// Tear down
+		final Either<HttpFailure,Integer> delete =
+			client_.deleteObject("test", "status");
+		assertTrue("Failed to DELETE object.", delete.success());
+	}
+	
+	@Test
+	public void failingDestination() throws Exception {
+		final HavaloWriteBehindBuffer buffer =
+			new HavaloWriteBehindBuffer(client_, 2, 60000L);
+		try {
+			buffer.putObject(getBytesUtf8("pending"), "test", "failing");
+			// A destination that fails on read of a pending write is a
+			// failed GET, not an exception.
+			final Either<HttpFailure,List<Header>> get = buffer.getObject(
+				new OutputStream() {
+					@Override
+					public void write(final int b) throws IOException {
+						throw new IOException("Destination failed.");
+					}
+				}, "test", "failing");
+			assertTrue("GET into failing destination was successful?",
+				!get.success());
+			assertTrue("GET into failing destination had the wrong cause.",
+				get.left().getCause() instanceof IOException);
+		} finally {
+			buffer.close();
+		}
+		// Tear down
+		final Either<HttpFailure,Integer> delete =
+			client_.deleteObject("test", "failing");
+		assertTrue("Failed to DELETE object.", delete.success());
+	}
+	
+	private static final String getHeader(final List<Header> headers,
+		final String name) {
+		for(final Header header : headers) {
+			if(name.equalsIgnoreCase(header.getName())) {
+				return header.getValue();
+			}
+		}
+		return null;
+	}
+	
+	private static final String getString(
+		final HavaloWriteBehindBuffer buffer, final String... path) {
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		final Either<HttpFailure,List<Header>> get =
+			buffer.getObject(os, path);
+		assertTrue("Failed to GET object through buffer.", get.success());
+		return newStringUtf8(os.toByteArray());
+	}
+	
+}
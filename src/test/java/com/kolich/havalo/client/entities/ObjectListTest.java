@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.entities;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertTrue;
+
+public class ObjectListTest {
+	
+	private static final ObjectList getObjectList(final String... names) {
+		final ObjectList.Builder builder = new ObjectList.Builder();
+		for(final String name : names) {
+			builder.addObject(name)
+				.addHeader("Content-Type").addHeaderValue("text/plain")
+				.addHeader("ETag").addHeaderValue("etag-" + name);
+		}
+		return builder.build();
+	}
+	
+	@Test
+	public void iteratesInFileObjectOrder() throws Exception {
+		final String[] names = {"b/2", "a/1", "c", "b/1", "a/2", "b/10"};
+		final ObjectList list = getObjectList(names);
+		final TreeSet<FileObject> expected = new TreeSet<>();
+		for(final String name : names) {
+			expected.add(new FileObject(name, null));
+		}
+		assertTrue("Listing size did not match",
+			list.size() == expected.size());
+		final Iterator<FileObject> it = list.iterator();
+		int i = 0;
+		for(final FileObject e : expected) {
+			final FileObject o = it.next();
+			assertTrue("Listing order did not match",
+				e.getName().equals(o.getName()) &&
+				e.getName().equals(list.getName(i)) &&
+				e.getName().equals(list.get(i++).getName()));
+			assertTrue("Headers did not match", ("etag-" + o.getName())
+				.equals(o.getFirstHeader("ETag")) &&
+				"text/plain".equals(o.getFirstHeader("Content-Type")));
+		}
+	}
+	
+	@Test
+	public void firstDuplicateWins() throws Exception {
+		final ObjectList list = new ObjectList.Builder()
+			.addObject("b").addHeader("ETag").addHeaderValue("first")
+			.addObject("a")
+			.addObject("b").addHeader("ETag").addHeaderValue("second")
+			.build();
+		assertTrue("Listing size did not match", list.size() == 2);
+		assertTrue("Duplicate did not match",
+			"first".equals(list.getObject("b").getFirstHeader("ETag")));
+		assertTrue("Object without headers did not match",
+			list.getObject("a").getAllHeaders().isEmpty());
+	}
+	
+	@Test
+	public void lookupByNameAndPrefix() throws Exception {
+		final ObjectList list = getObjectList("a/1", "a/2", "ab", "b/1",
+			"b/2", "b/3", "c");
+		assertTrue("Lookup by name did not match",
+			"b/2".equals(list.getObject("b/2").getName()) &&
+			list.getObject("b") == null && list.getObject("d") == null);
+		assertTrue("Contains did not match",
+			list.getObjectList().contains(new FileObject("ab", null)) &&
+			!list.getObjectList().contains(new FileObject("a", null)));
+		final ObjectList b = list.getObjectsWithPrefix("b/");
+		assertTrue("Prefix size did not match", b.size() == 3);
+		assertTrue("Prefix order did not match", "b/3".equals(b.getName(0))
+			&& "b/1".equals(b.getName(2)));
+		assertTrue("Prefix of prefix did not match",
+			list.getObjectsWithPrefix("a").size() == 3 &&
+			list.getObjectsWithPrefix("a").getObjectsWithPrefix("a/")
+				.size() == 2);
+		assertTrue("Missing prefix did not match",
+			list.getObjectsWithPrefix("0").isEmpty() &&
+			list.getObjectsWithPrefix("bb").isEmpty() &&
+			list.getObjectsWithPrefix("d").isEmpty());
+		assertTrue("Lookup outside prefix did not match",
+			b.getObject("c") == null && b.getObject("b/1") != null);
+	}
+	
+	@Test
+	public void parallelStreamMatchesIteration() throws Exception {
+		final String[] names = new String[10000];
+		for(int i = 0; i < names.length; i++) {
+			names[i] = String.format("%05d", (i * 7919) % names.length);
+		}
+		final ObjectList list = getObjectList(names);
+		final List<String> iterated = new ArrayList<>();
+		for(final FileObject o : list.getObjectList()) {
+			iterated.add(o.getName());
+		}
+		final List<String> streamed = list.parallelStream()
+			.map(FileObject::getName)
+			.collect(Collectors.toList());
+		assertTrue("Parallel stream did not match", iterated.equals(streamed));
+		assertTrue("Sequential stream did not match", list.stream()
+			.filter(o -> o.getName().startsWith("01")).count() == 1000L);
+	}
+	
+	@Test
+	public void serializable() throws Exception {
+		final ObjectList list = getObjectList("a", "b", "c")
+			.getObjectsWithPrefix("b");
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try(final ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+			oos.writeObject(list);
+		}
+		try(final ObjectInputStream ois = new ObjectInputStream(
+			new ByteArrayInputStream(bos.toByteArray()))) {
+			final ObjectList read = (ObjectList)ois.readObject();
+			assertTrue("Serialized listing did not match",
+				list.equals(read) && read.size() == 1 &&
+				"etag-b".equals(read.get(0).getFirstHeader("ETag")));
+		}
+	}
+	
+	@Test(expected=UnsupportedOperationException.class)
+	public void objectListIsImmutable() throws Exception {
+		getObjectList("a").getObjectList().add(new FileObject("b", null));
+	}
+	
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.entities;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.junit.Test;
+
+import java.util.Iterator;
+
+import static com.kolich.havalo.client.entities.HavaloTypeAdapters.registerTypeAdapters;
+import static org.junit.Assert.assertTrue;
+
+public class TypeAdaptersTest {
+	
+	private static final String OBJECT_LIST_JSON = "{\"objects\":[" +
+		"{\"name\":\"a.json\",\"headers\":{\"Content-Type\":" +
+			"[\"application/json\"],\"X-Multi\":[\"1\",\"2\"]}}," +
+		"{\"name\":\"b.json\",\"headers\":{\"ETag\":[\"abc\"]}," +
+			"\"unknown\":{\"ignored\":true}}" +
+		"]}";
+	
+	private final Gson gson_ = registerTypeAdapters(
+		new GsonBuilder()).create();
+	
+	@Test
+	public void parseObjectList() throws Exception {
+		final ObjectList streamed = gson_.fromJson(OBJECT_LIST_JSON,
+			ObjectList.class);
+		assertTrue("Listing size did not match", streamed.size() == 2);
+		// FileObject's sort in reverse name order
+		final Iterator<FileObject> it = streamed.getObjectList().iterator();
+		final FileObject b = it.next(), a = it.next();
+		assertTrue("Listing order did not match", "b.json".equals(b.getName())
+			&& "a.json".equals(a.getName()));
+		assertTrue("Header did not match",
+			"application/json".equals(a.getFirstHeader("Content-Type")) &&
+			"abc".equals(b.getFirstHeader("ETag")));
+		assertTrue("Multi-valued header did not match",
+			a.getHeader("X-Multi").size() == 2);
+		// Round trip
+		assertTrue("Round trip did not match", streamed.equals(gson_.fromJson(
+			gson_.toJson(streamed), ObjectList.class)));
+	}
+	
+	@Test(expected=UnsupportedOperationException.class)
+	public void objectListIsImmutable() throws Exception {
+		gson_.fromJson(OBJECT_LIST_JSON, ObjectList.class).getObjectList()
+			.clear();
+	}
+	
+	@Test(expected=UnsupportedOperationException.class)
+	public void headersAreImmutable() throws Exception {
+		gson_.fromJson(OBJECT_LIST_JSON, ObjectList.class).getObjectList()
+			.iterator().next().getHeader("ETag").add("def");
+	}
+	
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.events;
+
+import com.kolich.common.functional.either.Either;
+import com.kolich.havalo.client.HavaloClientTestCase;
+import com.kolich.havalo.client.embedded.HavaloEmbeddedServer;
+import com.kolich.havalo.client.entities.FileObject;
+import com.kolich.havalo.client.service.HavaloClient;
+import com.kolich.havalo.client.service.HavaloClientConfig;
+import com.kolich.havalo.client.service.HavaloClientCredentials;
+import com.kolich.http.common.response.HttpFailure;
+import org.apache.http.Header;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static com.kolich.havalo.client.events.HavaloRequestEvent.NOT_REACHED;
+import static com.kolich.havalo.client.events.HavaloRequestEvent.NO_STATUS;
+import static org.apache.commons.codec.binary.StringUtils.getBytesUtf8;
+import static org.apache.http.HttpStatus.SC_NOT_FOUND;
+import static org.apache.http.HttpStatus.SC_OK;
+import static org.junit.Assert.assertTrue;
+
+public class RequestListenerTest extends HavaloClientTestCase {
+	
+	private static final List<String> ALL_CALLBACKS = Arrays.asList(
+		"onStart", "onSigned", "onResponse", "onConverted", "onComplete");
+	
+	public RequestListenerTest() throws Exception {
+		super();
+	}
+	
+	@Test
+	public void successfulRequest() throws Exception {
+		final RecordingListener listener = new RecordingListener();
+		final HavaloClient client = getClient(apiUrl_, listener);
+		final Either<HttpFailure,FileObject> put =
+			client.putObject(getBytesUtf8("listened"), "test", "listener");
+		assertTrue("Failed to PUT sample object.", put.success());
+		assertTrue("Callbacks out of order: " + listener.callbacks_,
+			listener.callbacks_.equals(ALL_CALLBACKS));
+		assertTrue("Request was not a successful PUT",
+			"PUT".equals(listener.method_) && listener.success_ &&
+				listener.status_ == SC_OK && listener.uri_ != null);
+		assertIncreasing(listener.phases_);
+		// Tear down
+		assertTrue("Failed to DELETE sample object.",
+			client_.deleteObject("test", "listener").success());
+	}
+	
+	@Test
+	public void failedRequest() throws Exception {
+		final RecordingListener listener = new RecordingListener();
+		final Either<HttpFailure,List<Header>> get =
+			getClient(apiUrl_, listener).getObject(
+				new ByteArrayOutputStream(), "totallybogusobject.json");
+		assertTrue("GET of non-existent object was successful?",
+			!get.success());
+		// A failed request still receives and converts a response.
+		assertTrue("Callbacks out of order: " + listener.callbacks_,
+			listener.callbacks_.equals(ALL_CALLBACKS));
+		assertTrue("Request was not a failed GET",
+			"GET".equals(listener.method_) && !listener.success_ &&
+				listener.status_ == SC_NOT_FOUND);
+		assertIncreasing(listener.phases_);
+	}
+	
+	@Test
+	public void noResponse() throws Exception {
+		// Nothing listening on the other end, so the request never gets
+		// a response.
+		final String apiUrl;
+		try(final HavaloEmbeddedServer server = new HavaloEmbeddedServer
+			.Builder().build().start()) {
+			apiUrl = server.getApiUrl();
+		}
+		final RecordingListener listener = new RecordingListener();
+		final Either<HttpFailure,List<Header>> get =
+			getClient(apiUrl, listener).getObject(new ByteArrayOutputStream(),
+				"unreachable.json");
+		assertTrue("GET against a stopped server was successful?",
+			!get.success());
+		assertTrue("Callbacks out of order: " + listener.callbacks_,
+			listener.callbacks_.equals(Arrays.asList("onStart", "onSigned",
+				"onConverted", "onComplete")));
+		assertTrue("Request without a response had a status code",
+			!listener.success_ && listener.status_ == NO_STATUS);
+		final long response = listener.phases_.remove(3);
+		assertTrue("Response phase was reached without a response",
+			response == NOT_REACHED);
+		assertIncreasing(listener.phases_);
+	}
+	
+	@Test
+	public void slowRequestLogger() throws Exception {
+		// Every request is "slow" at a zero threshold, the logger must
+		// cope with requests that do, and don't, reach every phase.
+		final HavaloClient client = getClient(apiUrl_,
+			new HavaloSlowRequestLogger(0L));
+		assertTrue("Failed to PUT sample object.", client.putObject(
+			getBytesUtf8("slow"), "test", "slow").success());
+		assertTrue("GET of non-existent object was successful?",
+			!client.getObject(new ByteArrayOutputStream(),
+				"totallybogusobject.json").success());
+		assertTrue("Failed to DELETE sample object.",
+			client.deleteObject("test", "slow").success());
+		IllegalArgumentException error = null;
+		try {
+			new HavaloSlowRequestLogger(-1L);
+		} catch (IllegalArgumentException e) {
+			error = e;
+		}
+		assertTrue("Negative slow request threshold was accepted.",
+			error != null);
+	}
+	
+	private final HavaloClient getClient(final String apiUrl,
+		final HavaloRequestListener listener) {
+		return new HavaloClient(new HavaloClientCredentials(
+			UUID.fromString(apiKey_), apiSecret_), apiUrl,
+			new HavaloClientConfig.Builder().setRequestListener(listener)
+				.build());
+	}
+	
+	private static final void assertIncreasing(final List<Long> phases) {
+		for(int i = 0, l = phases.size(); i < l; i++) {
+			assertTrue("Phase #" + i + " was not reached: " + phases,
+				phases.get(i) != NOT_REACHED);
+			assertTrue("Phase #" + i + " went back in time: " + phases,
+				i == 0 || phases.get(i) >= phases.get(i - 1));
+		}
+	}
+	
+	/**
+	 * The event is only valid for the duration of each callback, so
+	 * everything of interest is copied out as it arrives.
+	 */
+	private static final class RecordingListener
+		implements HavaloRequestListener {
+		private final List<String> callbacks_ = new ArrayList<>();
+		private final List<Long> phases_ = new ArrayList<>();
+		private String method_ = null;
+		private URI uri_ = null;
+		private int status_ = NO_STATUS;
+		private boolean success_ = false;
+		@Override
+		public void onStart(final HavaloRequestEvent event) {
+			callbacks_.add("onStart");
+		}
+		@Override
+		public void onSigned(final HavaloRequestEvent event) {
+			callbacks_.add("onSigned");
+		}
+		@Override
+		public void onResponse(final HavaloRequestEvent event) {
+			callbacks_.add("onResponse");
+		}
+		@Override
+		public void onConverted(final HavaloRequestEvent event) {
+			callbacks_.add("onConverted");
+		}
+		@Override
+		public void onComplete(final HavaloRequestEvent event) {
+			callbacks_.add("onComplete");
+			phases_.addAll(Arrays.asList(event.getStartNanos(),
+				event.getSigningNanos(), event.getSignedNanos(),
+				event.getResponseNanos(), event.getConvertingNanos(),
+				event.getConvertedNanos(), event.getCompleteNanos()));
+			method_ = event.getMethod();
+			uri_ = event.getUri();
+			status_ = event.getStatusCode();
+			success_ = event.isSuccess();
+		}
+	}
+	
+}
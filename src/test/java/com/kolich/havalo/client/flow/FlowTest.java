@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.flow;
+
+import com.kolich.common.functional.either.Either;
+import com.kolich.havalo.client.HavaloClientTestCase;
+import com.kolich.havalo.client.entities.FileObject;
+import com.kolich.havalo.client.service.HavaloObject;
+import com.kolich.http.common.response.HttpFailure;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.commons.codec.binary.StringUtils.getBytesUtf8;
+import static org.apache.commons.codec.binary.StringUtils.newStringUtf8;
+import static org.junit.Assert.assertTrue;
+
+public class FlowTest extends HavaloClientTestCase {
+	
+	private static final int OBJECTS = 30;
+	
+	public FlowTest() throws Exception {
+		super();
+	}
+	
+	@Test(timeout=60000L)
+	public void listAndFetch() throws Exception {
+		final String prefix = "flow-" + System.currentTimeMillis();
+		putSampleObjects(prefix);
+		try {
+			final AtomicInteger listed = new AtomicInteger(0);
+			final HavaloFlow.Publisher<FileObject> listing =
+				counting(new HavaloListingPublisher(client_, 7, prefix),
+					listed);
+			final HavaloFetchPublisher fetch =
+				new HavaloFetchPublisher(client_, listing, 4);
+			// Take a few, and make sure no more than that were listed
+			final Collector some = new Collector(5L);
+			fetch.subscribe(some);
+			some.await(5);
+			Thread.sleep(250L);
+			assertTrue("Listed more objects than were requested: " +
+				listed.get(), listed.get() == 5);
+			// Then the rest, one at a time
+			some.requestOneAtATime();
+			some.awaitDone();
+			assertTrue("Pipeline failed: " + some.error_, some.error_ == null);
+			assertTrue("Object count did not match",
+				some.results_.size() == OBJECTS);
+			// In listing (reverse name) order
+			for(int i = 0; i < OBJECTS; i++) {
+				final Either<HttpFailure,HavaloObject> o =
+					some.results_.get(i);
+				assertTrue("Failed to fetch object.", o.success());
+				assertTrue("Object did not match", Integer.toString(
+					OBJECTS - 1 - i).equals(newStringUtf8(o.right()
+						.getData())));
+			}
+		} finally {
+			for(int i = 0; i < OBJECTS; i++) {
+				client_.deleteObject(prefix, String.format("%03d", i));
+			}
+		}
+	}
+	
+	@Test(timeout=60000L)
+	public void emptyListing() throws Exception {
+		final Collector all = new Collector(Long.MAX_VALUE);
+		new HavaloFetchPublisher(client_, new HavaloListingPublisher(client_,
+			10, "flow-empty-" + System.currentTimeMillis()), 4)
+				.subscribe(all);
+		all.awaitDone();
+		assertTrue("Empty pipeline did not complete cleanly",
+			all.error_ == null && all.results_.isEmpty());
+	}
+	
+	private final void putSampleObjects(final String prefix) {
+		for(int i = 0; i < OBJECTS; i++) {
+			assertTrue("Failed to put sample object #" + i,
+				client_.putObject(getBytesUtf8(Integer.toString(i)), prefix,
+					String.format("%03d", i)).success());
+		}
+	}
+	
+	/**
+	 * Counts every object the given publisher publishes.
+	 */
+	private static final HavaloFlow.Publisher<FileObject> counting(
+		final HavaloFlow.Publisher<FileObject> publisher,
+		final AtomicInteger count) {
+		return subscriber -> publisher.subscribe(
+			new HavaloFlow.Subscriber<FileObject>() {
+			@Override
+			public void onSubscribe(final HavaloFlow.Subscription s) {
+				subscriber.onSubscribe(s);
+			}
+			@Override
+			public void onNext(final FileObject item) {
+				count.incrementAndGet();
+				subscriber.onNext(item);
+			}
+			@Override
+			public void onError(final Throwable throwable) {
+				subscriber.onError(throwable);
+			}
+			@Override
+			public void onComplete() {
+				subscriber.onComplete();
+			}
+		});
+	}
+	
+	private static final class Collector implements
+		HavaloFlow.Subscriber<Either<HttpFailure,HavaloObject>> {
+		private final long initial_;
+		private final List<Either<HttpFailure,HavaloObject>> results_ =
+			new ArrayList<>();
+		private final CountDownLatch done_ = new CountDownLatch(1);
+		private volatile HavaloFlow.Subscription subscription_;
+		private volatile boolean oneAtATime_ = false;
+		private volatile Throwable error_ = null;
+		private Collector(final long initial) {
+			initial_ = initial;
+		}
+		@Override
+		public void onSubscribe(final HavaloFlow.Subscription subscription) {
+			subscription_ = subscription;
+			subscription.request(initial_);
+		}
+		@Override
+		public void onNext(final Either<HttpFailure,HavaloObject> item) {
+			synchronized(results_) {
+				results_.add(item);
+				results_.notifyAll();
+			}
+			if(oneAtATime_) {
+				subscription_.request(1L);
+			}
+		}
+		@Override
+		public void onError(final Throwable throwable) {
+			error_ = throwable;
+			done_.countDown();
+		}
+		@Override
+		public void onComplete() {
+			done_.countDown();
+		}
+		private void await(final int count) throws InterruptedException {
+			synchronized(results_) {
+				while(results_.size() < count) {
+					results_.wait();
+				}
+			}
+		}
+		private void requestOneAtATime() {
+			oneAtATime_ = true;
+			subscription_.request(1L);
+		}
+		private void awaitDone() throws InterruptedException {
+			assertTrue("Pipeline did not complete",
+				done_.await(30L, SECONDS));
+		}
+	}
+	
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.load;
+
+import com.kolich.common.functional.either.Either;
+import com.kolich.havalo.client.HavaloClientTestCase;
+import com.kolich.havalo.client.entities.FileObject;
+import com.kolich.havalo.client.entities.ObjectList;
+import com.kolich.http.common.response.HttpFailure;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertTrue;
+
+public class HavaloLoadGeneratorTest extends HavaloClientTestCase {
+	
+	public HavaloLoadGeneratorTest() throws Exception {
+		super();
+	}
+	
+	@Test
+	public void mixedWorkload() throws Exception {
+		final HavaloLoadReport report = new HavaloLoadGenerator.Builder()
+			.setClient(client_)
+			.setPrefix("test-loadgen")
+			.setWeight(HavaloLoadOperation.READ, 6)
+			.setWeight(HavaloLoadOperation.WRITE, 2)
+			.setWeight(HavaloLoadOperation.LIST, 1)
+			.setWeight(HavaloLoadOperation.DELETE, 1)
+			.setObjectSize(16, 256)
+			.setZipfianKeys(20, 0.99d)
+			.setConcurrency(4)
+			.setWarmup(100L, MILLISECONDS)
+			.setDuration(500L, MILLISECONDS)
+			.build().run();
+		long count = 0L;
+		for(final HavaloLoadReport.OperationReport op :
+			report.getOperations().values()) {
+			count += op.getCount();
+		}
+		assertTrue("Load generator ran no operations.", count > 0L);
+		assertTrue("Total doesn't add up.",
+			count == report.getTotal().getCount());
+		assertTrue("Percentiles out of order.", report.getTotal().getP50Ms()
+			<= report.getTotal().getP999Ms());
+		assertTrue("JSON report is missing the total.",
+			report.toJson().contains("\"TOTAL\""));
+		// Tear down
+		final Either<HttpFailure,ObjectList> list =
+			client_.listObjects("test-loadgen");
+		assertTrue("Failed to list load generator objects.", list.success());
+		for(final FileObject object : list.right().getObjectList()) {
+			assertTrue("Failed to DELETE load generator object.",
+				client_.deleteObject(object.getName().split("/")).success());
+		}
+	}
+	
+	@Test
+	public void zipfianFavorsFirstItems() throws Exception {
+		final ZipfianGenerator zipfian = new ZipfianGenerator(1000);
+		final Random random = new Random(0L);
+		final int[] counts = new int[1000];
+		for(int i = 0; i < 100000; i++) {
+			counts[zipfian.next(random)]++;
+		}
+		assertTrue("Item 0 isn't the most popular.", counts[0] > counts[1] &&
+			counts[1] > counts[10] && counts[10] > counts[999]);
+	}
+	
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+	
+	@Test
+	public void percentiles() throws Exception {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		for(long i = 1L; i <= 10000L; i++) {
+			histogram.record(i * 1000L);
+		}
+		assertTrue("Count did not match", histogram.getCount() == 10000L);
+		assertTrue("Max did not match", histogram.getMax() == 10000000L);
+		assertWithin("p50", 5000000L, histogram.getValueAtPercentile(50.0d));
+		assertWithin("p99", 9900000L, histogram.getValueAtPercentile(99.0d));
+		assertWithin("p99.9", 9990000L,
+			histogram.getValueAtPercentile(99.9d));
+		assertTrue("p100 was not the max",
+			histogram.getValueAtPercentile(100.0d) == histogram.getMax());
+	}
+	
+	@Test
+	public void smallAndLargeValues() throws Exception {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		assertTrue("Empty histogram percentile was not zero",
+			histogram.getValueAtPercentile(99.0d) == 0L);
+		histogram.record(0L);
+		histogram.record(7L);
+		histogram.record(Long.MAX_VALUE);
+		assertTrue("Small values are not exact",
+			histogram.getValueAtPercentile(33.0d) == 0L &&
+			histogram.getValueAtPercentile(66.0d) == 7L);
+		assertTrue("Large value was lost",
+			histogram.getValueAtPercentile(100.0d) == Long.MAX_VALUE);
+	}
+	
+	private static final void assertWithin(final String message,
+		final long expected, final long actual) {
+		// Log-linear buckets with 32 sub-buckets are accurate to ~3%.
+		assertTrue(message + " (expected=" + expected + ", actual=" +
+			actual + ")", Math.abs(actual - expected) <= expected * 0.04d);
+	}
+	
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.kolich.havalo.client.service;
+
+import com.kolich.havalo.client.HavaloClientTestCase;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeoutException;
+
+import static com.kolich.havalo.client.service.HavaloPriority.BULK;
+import static com.kolich.havalo.client.service.HavaloPriority.DEFAULT;
+import static com.kolich.havalo.client.service.HavaloPriority.INTERACTIVE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertTrue;
+
+public class SchedulerTest extends HavaloClientTestCase {
+	
+	public SchedulerTest() throws Exception {
+		super();
+	}
+	
+	@Test(timeout=30000L)
+	public void priorities() throws Exception {
+		final HavaloRequestScheduler scheduler =
+			new HavaloRequestScheduler.Builder()
+				.setMaxConcurrency(3)
+				.setReserved(INTERACTIVE, 1)
+				.setReserved(BULK, 1)
+				.build();
+		// Bulk takes its reserved slot and the only unreserved one ...
+		scheduler.acquire(BULK, 0L);
+		scheduler.acquire(BULK, 0L);
+		// ... but never the slot reserved for interactive requests.
+		final CountDownLatch bulk = acquireAsync(scheduler, BULK);
+		final CountDownLatch normal = acquireAsync(scheduler, DEFAULT);
+		awaitQueued(scheduler, BULK);
+		awaitQueued(scheduler, DEFAULT);
+		scheduler.acquire(INTERACTIVE, SECONDS.toNanos(1L));
+		try {
+			scheduler.acquire(INTERACTIVE, MILLISECONDS.toNanos(50L));
+			assertTrue("Uh, got a slot past the max concurrency?", false);
+		} catch (TimeoutException e) {
+			// Expected
+		}
+		assertTrue("Timed out waiter was not dequeued.",
+			scheduler.getQueueDepth(INTERACTIVE) == 0);
+		// A bulk slot frees up, but the default request goes first.
+		scheduler.release(BULK);
+		assertTrue("Default request was not served first.",
+			normal.await(5L, SECONDS) && bulk.getCount() == 1L);
+		// The interactive slot stays reserved, so bulk keeps waiting ...
+		scheduler.release(INTERACTIVE);
+		assertTrue("Bulk took a reserved slot.", bulk.getCount() == 1L &&
+			scheduler.getInFlight(BULK) == 1);
+		// ... until it drops below its own reserved share.
+		scheduler.release(BULK);
+		assertTrue("Bulk request was starved.", bulk.await(5L, SECONDS));
+		scheduler.release(BULK);
+		scheduler.release(DEFAULT);
+		assertTrue("Slots leaked.", scheduler.getInFlight(BULK) == 0 &&
+			scheduler.getInFlight(DEFAULT) == 0 &&
+			scheduler.getInFlight(INTERACTIVE) == 0);
+		assertTrue("Wait times not recorded.",
+			scheduler.getWaitTimes(BULK).getCount() == 3L &&
+			scheduler.getWaitTimes(BULK).getMax() > 0L);
+	}
+	
+	@Test
+	public void scheduledClient() throws Exception {
+		final HavaloRequestScheduler scheduler =
+			new HavaloRequestScheduler.Builder().setMaxConcurrency(4)
+				.build();
+		final HavaloClient client = new HavaloClient(
+			new HavaloClientCredentials(UUID.fromString(apiKey_),
+				apiSecret_),
+			apiUrl_, new HavaloClientConfig.Builder()
+				.setScheduler(scheduler).build());
+		assertTrue("Failed to PUT object.", client.withPriority(BULK)
+			.putObject(new byte[1024], "test-scheduler").success());
+		assertTrue("Failed to GET object.", client.withPriority(INTERACTIVE)
+			.getObject("test-scheduler").success());
+		assertTrue("Failed to DELETE object.",
+			client.deleteObject("test-scheduler").success());
+		for(final HavaloPriority priority : HavaloPriority.values()) {
+			assertTrue("Requests were not scheduled: " + priority,
+				scheduler.getWaitTimes(priority).getCount() == 1L &&
+				scheduler.getInFlight(priority) == 0);
+		}
+	}
+	
+	private static final CountDownLatch acquireAsync(
+		final HavaloRequestScheduler scheduler,
+		final HavaloPriority priority) {
+		final CountDownLatch acquired = new CountDownLatch(1);
+		final Thread t = new Thread(() -> {
+			try {
+				scheduler.acquire(priority, 0L);
+				acquired.countDown();
+			} catch (Exception e) {
+				// Left as is, the test fails on the latch.
+			}
+		});
+		t.setDaemon(true);
+		t.start();
+		return acquired;
+	}
+	
+	private static final void awaitQueued(
+		final HavaloRequestScheduler scheduler,
+		final HavaloPriority priority) throws InterruptedException {
+		while(scheduler.getQueueDepth(priority) == 0) {
+			Thread.sleep(10L);
+		}
+	}
+	
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.havalo.client.trace;
+
+import com.kolich.havalo.client.HavaloClientTestCase;
+import com.kolich.havalo.client.load.HavaloLoadReport;
+import com.kolich.havalo.client.service.HavaloClient;
+import com.kolich.havalo.client.service.HavaloClientConfig;
+import com.kolich.havalo.client.service.HavaloClientCredentials;
+import com.kolich.havalo.client.service.HavaloOperation;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.UUID;
+
+import static org.apache.commons.io.output.NullOutputStream.NULL_OUTPUT_STREAM;
+import static org.apache.http.HttpStatus.SC_NOT_FOUND;
+import static org.junit.Assert.assertTrue;
+
+public class TraceTest extends HavaloClientTestCase {
+	
+	public TraceTest() throws Exception {
+		super();
+	}
+	
+	@Test
+	public void recordAndReplay() throws Exception {
+		final ByteArrayOutputStream trace = new ByteArrayOutputStream();
+		final HavaloTraceRecorder recorder = new HavaloTraceRecorder(trace);
+		final HavaloClient client = new HavaloClient(
+			new HavaloClientCredentials(UUID.fromString(apiKey_), apiSecret_),
+			apiUrl_, new HavaloClientConfig.Builder()
+				.setTraceRecorder(recorder).build());
+		// Larger than the payload buffer the replay streams objects from.
+		final byte[] data = new byte[200 * 1024];
+		assertTrue("Failed to PUT traced object.",
+			client.putObject(data, "test-trace", "a").success());
+		assertTrue("Failed to GET traced object.",
+			client.getObject(NULL_OUTPUT_STREAM, "test-trace", "a").success());
+		assertTrue("Uh, successfully GET a non-existent object?",
+			!client.getObject(NULL_OUTPUT_STREAM, "test-trace", "b").success());
+		assertTrue("Failed to DELETE traced object.",
+			client.deleteObject("test-trace", "a").success());
+		assertTrue("Failed to list traced objects.",
+			client.listObjects("test-trace").success());
+		recorder.close();
+		// Read the trace back
+		final List<HavaloTraceRecord> records = new HavaloTraceReader(
+			new ByteArrayInputStream(trace.toByteArray())).readAll();
+		assertTrue("Trace record count did not match", records.size() == 5);
+		assertTrue("Traced operations did not match",
+			records.get(0).getOperation() == HavaloOperation.PUT_OBJECT &&
+			records.get(1).getOperation() == HavaloOperation.GET_OBJECT &&
+			records.get(3).getOperation() == HavaloOperation.DELETE_OBJECT &&
+			records.get(4).getOperation() == HavaloOperation.LIST_OBJECTS);
+		assertTrue("Traced sizes did not match",
+			records.get(0).getSize() == data.length &&
+			records.get(1).getSize() == data.length);
+		assertTrue("Same object, but different path hashes",
+			records.get(0).getPathHash() == records.get(1).getPathHash() &&
+			records.get(1).getPathHash() != records.get(2).getPathHash());
+		assertTrue("Traced status code did not match",
+			records.get(2).getStatusCode() == SC_NOT_FOUND);
+		for(int i = 1; i < records.size(); i++) {
+			assertTrue("Trace records out of order",
+				records.get(i).getOffsetMicros() >=
+					records.get(i - 1).getOffsetMicros());
+		}
+		// Replay it, as fast as possible but one request at a time so
+		// the GET can't overtake the PUT.
+		final HavaloLoadReport report = new HavaloTraceReplayer.Builder()
+			.setClient(client_)
+			.setPrefix("test-replay")
+			.setTimeScale(0.0d)
+			.setConcurrency(1)
+			.build().replay(records);
+		// The listing is not replayed.
+		assertTrue("Replayed request count did not match",
+			report.getTotal().getCount() == 4L);
+		// Only the GET of the object that never existed should fail
+		assertTrue("Replayed error count did not match",
+			report.getTotal().getErrors() == 1L);
+	}
+	
+}